@@ -0,0 +1,57 @@
+package org.example.portfolio.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.portfolio.model.Cash;
+import org.example.portfolio.model.Holding;
+import org.example.portfolio.model.Portfolio;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic synthetic portfolios, holdings and cash used by the benchmarks.
+ */
+public final class BenchmarkData {
+
+    public static final int DISTINCT_STOCKS = 5_000;
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private BenchmarkData() {
+    }
+
+    public static String portfolioName(int index) {
+        return "PORTFOLIO_" + index;
+    }
+
+    public static List<Portfolio> portfolios(int count) {
+        List<Portfolio> portfolios = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            portfolios.add(new Portfolio(portfolioName(i), false));
+        }
+        return portfolios;
+    }
+
+    public static List<Holding> holdings(int portfolioIndex, int count) {
+        Random random = new Random(portfolioIndex);
+        List<Holding> holdings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            holdings.add(new Holding("STK" + random.nextInt(DISTINCT_STOCKS), 1 + random.nextInt(100_000) / 100.0));
+        }
+        return holdings;
+    }
+
+    public static Cash cash(int portfolioIndex) {
+        return new Cash(portfolioIndex % 10 == 0 ? 0.0 : 1000.0 + portfolioIndex);
+    }
+
+    public static byte[] json(Object value) {
+        try {
+            return mapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
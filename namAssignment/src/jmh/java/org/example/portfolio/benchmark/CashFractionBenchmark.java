@@ -0,0 +1,62 @@
+package org.example.portfolio.benchmark;
+
+import org.example.portfolio.controller.PortfolioController;
+import org.example.portfolio.model.PortfolioCashFraction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cash-fraction pipeline of the controller over an in-memory service: per-portfolio calculation
+ * and merge of the results into the response map.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CashFractionBenchmark {
+
+    @Param({"100", "10000"})
+    public int portfolios;
+
+    @Param({"10", "1000"})
+    public int holdingsPerPortfolio;
+
+    private PortfolioController controller;
+    private List<PortfolioCashFraction> fractions;
+
+    @Setup
+    public void setUp() {
+        controller = Controllers.create(new InMemoryPortfolioService(portfolios, holdingsPerPortfolio));
+        fractions = new ArrayList<>(portfolios);
+        for (int i = 0; i < portfolios; i++) {
+            fractions.add(new PortfolioCashFraction(BenchmarkData.portfolioName(i), i / (double) portfolios));
+        }
+    }
+
+    @Benchmark
+    public Map<String, Double> cashFraction() {
+        return controller.getCashFraction(null, null, false).block();
+    }
+
+    @Benchmark
+    public Map<String, Double> mergeFractions() {
+        return Flux.fromIterable(fractions)
+                .reduceWith(HashMap<String, Double>::new, (map, f) -> {
+                    map.put(f.getPortfolio(), f.getFraction());
+                    return map;
+                })
+                .block();
+    }
+}
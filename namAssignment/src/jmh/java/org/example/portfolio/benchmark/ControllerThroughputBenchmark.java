@@ -0,0 +1,76 @@
+package org.example.portfolio.benchmark;
+
+import org.example.portfolio.Application;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end throughput of the controller endpoints: the application runs in-process on a random port
+ * against an in-process stub of the remote API, and is called over HTTP by several client threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(8)
+public class ControllerThroughputBenchmark {
+
+    @Param({"100", "1000"})
+    public int portfolios;
+
+    @Param({"100"})
+    public int holdingsPerPortfolio;
+
+    @Param({"false", "true"})
+    public boolean cacheEnabled;
+
+    private StubUpstream upstream;
+    private ConfigurableApplicationContext context;
+    private WebClient client;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        upstream = new StubUpstream(portfolios, holdingsPerPortfolio);
+        context = new SpringApplicationBuilder(Application.class)
+                .properties("server.port=0",
+                        "server.base.uri=" + upstream.baseUri(),
+                        "portfolio.index.enabled=false",
+                        "portfolio.cache.enabled=" + cacheEnabled,
+                        "logging.level.org.example.portfolio=WARN")
+                .run();
+        String port = context.getEnvironment().getProperty("local.server.port");
+        client = WebClient.builder()
+                .baseUrl("http://127.0.0.1:" + port)
+                .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(16 * 1024 * 1024))
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+        upstream.close();
+    }
+
+    @Benchmark
+    public byte[] cashFraction() {
+        return client.get().uri("/portfolios/portfolio-cash-fraction").retrieve().bodyToMono(byte[].class).block();
+    }
+
+    @Benchmark
+    public byte[] portfoliosByStock() {
+        return client.get().uri("/portfolios/stock/STK42").retrieve().bodyToMono(byte[].class).block();
+    }
+}
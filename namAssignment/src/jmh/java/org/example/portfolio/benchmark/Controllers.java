@@ -0,0 +1,48 @@
+package org.example.portfolio.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.portfolio.cluster.ClusterRing;
+import org.example.portfolio.controller.PortfolioController;
+import org.example.portfolio.metrics.PortfolioMetrics;
+import org.example.portfolio.service.CashFractionView;
+import org.example.portfolio.service.ExposureAggregator;
+import org.example.portfolio.service.PerPortfolioExecutor;
+import org.example.portfolio.service.PortfolioService;
+import org.example.portfolio.service.PortfolioStockIndex;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Field;
+import java.time.Duration;
+
+/**
+ * Wires a PortfolioController outside of a Spring context, with the stock index and the cash fraction view
+ * disabled so that every request goes through the fan-out.
+ */
+final class Controllers {
+
+    private Controllers() {
+    }
+
+    static PortfolioController create(PortfolioService portfolioService) {
+        return create(portfolioService, PerPortfolioExecutor.reactive());
+    }
+
+    static PortfolioController create(PortfolioService portfolioService, PerPortfolioExecutor executor) {
+        PortfolioController controller = new PortfolioController();
+        inject(controller, "portfolioService", portfolioService);
+        inject(controller, "stockIndex", new PortfolioStockIndex(portfolioService, false, Duration.ZERO, 1));
+        inject(controller, "cashFractionView", new CashFractionView(portfolioService, ClusterRing.standalone(), false, Duration.ZERO, 0.0,
+                Duration.ZERO, Duration.ZERO, 1, Duration.ZERO));
+        inject(controller, "exposureAggregator", new ExposureAggregator(portfolioService, 0));
+        inject(controller, "executor", executor);
+        inject(controller, "metrics", new PortfolioMetrics(new SimpleMeterRegistry()));
+        inject(controller, "ring", ClusterRing.standalone());
+        return controller;
+    }
+
+    static void inject(Object target, String fieldName, Object value) {
+        Field field = ReflectionUtils.findField(target.getClass(), fieldName);
+        ReflectionUtils.makeAccessible(field);
+        ReflectionUtils.setField(field, target, value);
+    }
+}
@@ -0,0 +1,67 @@
+package org.example.portfolio.benchmark;
+
+import org.example.portfolio.controller.PortfolioController;
+import org.example.portfolio.service.PerPortfolioExecutor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cash-fraction and stock-search fan-outs in the reactive and virtual thread execution modes, over an in-memory
+ * service answering after a simulated upstream latency. Throughput and the latency distribution come from the
+ * benchmark modes, memory from the gc profiler. The virtual-threads mode needs a Java 21 toolchain:
+ * gradlew jmh -PjavaVersion=21 -PjmhIncludes=ExecutionMode
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ExecutionModeBenchmark {
+
+    @Param({"reactive", "virtual-threads"})
+    public String mode;
+
+    @Param({"1000", "10000"})
+    public int portfolios;
+
+    @Param({"0", "5"})
+    public int upstreamLatencyMs;
+
+    private PerPortfolioExecutor executor;
+    private PortfolioController controller;
+    private String stockId;
+
+    @Setup
+    public void setUp() {
+        InMemoryPortfolioService portfolioService = new InMemoryPortfolioService(portfolios, 100,
+                Duration.ofMillis(upstreamLatencyMs));
+        executor = new PerPortfolioExecutor(mode);
+        controller = Controllers.create(portfolioService, executor);
+        stockId = BenchmarkData.holdings(0, 1).get(0).getStockId();
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.dispose();
+    }
+
+    @Benchmark
+    public Map<String, Double> cashFraction() {
+        return controller.getCashFraction(null, null, false).block();
+    }
+
+    @Benchmark
+    public List<String> stockSearch() {
+        return controller.getPortfoliosByStock(stockId, null, null, false).block();
+    }
+}
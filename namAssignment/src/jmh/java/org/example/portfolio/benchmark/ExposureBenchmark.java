@@ -0,0 +1,77 @@
+package org.example.portfolio.benchmark;
+
+import org.example.portfolio.model.Holding;
+import org.example.portfolio.model.Portfolio;
+import org.example.portfolio.model.PortfolioHolding;
+import org.example.portfolio.service.ExposureAggregator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exposure aggregation over an in-memory service: the per-rail parallel reduction used by
+ * {@link ExposureAggregator} against a baseline merging every holding into one shared concurrent map.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ExposureBenchmark {
+
+    @Param({"1000", "10000"})
+    public int portfolios;
+
+    @Param({"100", "1000"})
+    public int holdingsPerPortfolio;
+
+    private InMemoryPortfolioService portfolioService;
+    private ExposureAggregator aggregator;
+
+    @Setup
+    public void setUp() {
+        portfolioService = new InMemoryPortfolioService(portfolios, holdingsPerPortfolio);
+        aggregator = new ExposureAggregator(portfolioService, 0);
+    }
+
+    @Benchmark
+    public Map<String, Double> parallelReduction() {
+        return aggregator.exposureByStock(portfolioService.getAllPortfolios()).block();
+    }
+
+    @Benchmark
+    public Map<String, Double> sharedConcurrentMap() {
+        Map<String, Double> exposure = new ConcurrentHashMap<>();
+        return portfolioService.getAllPortfolios()
+                .flatMapMany(Flux::fromIterable)
+                .map(Portfolio::getName)
+                .flatMap(portfolioService::getHoldings)
+                .parallel()
+                .runOn(Schedulers.parallel())
+                .doOnNext(holdings -> {
+                    for (Holding h : holdings) {
+                        exposure.merge(h.getStockId().toUpperCase(Locale.ROOT), h.getValue(), Double::sum);
+                    }
+                })
+                .sequential()
+                .then()
+                .thenReturn(exposure)
+                .block();
+    }
+
+    @Benchmark
+    public List<PortfolioHolding> top100() {
+        return aggregator.topHoldings(portfolioService.getAllPortfolios(), 100).block();
+    }
+}
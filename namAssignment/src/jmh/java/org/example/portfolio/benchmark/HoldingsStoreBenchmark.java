@@ -0,0 +1,73 @@
+package org.example.portfolio.benchmark;
+
+import org.example.portfolio.model.Holding;
+import org.example.portfolio.store.CompactHoldings;
+import org.example.portfolio.store.StockSymbols;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sums and membership tests over the holdings of one portfolio: a list of Holding objects against
+ * {@link CompactHoldings} on and off the heap. Run with -prof gc to compare allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class HoldingsStoreBenchmark {
+
+    @Param({"100", "10000"})
+    public int holdingsPerPortfolio;
+
+    private List<Holding> holdings;
+    private CompactHoldings onHeap;
+    private CompactHoldings offHeap;
+    private String stockId;
+
+    @Setup
+    public void setUp() {
+        StockSymbols symbols = new StockSymbols();
+        holdings = BenchmarkData.holdings(0, holdingsPerPortfolio);
+        onHeap = CompactHoldings.of(holdings, symbols, false);
+        offHeap = CompactHoldings.of(holdings, symbols, true);
+        stockId = holdings.get(holdings.size() - 1).getStockId();
+    }
+
+    @Benchmark
+    public double listTotalValue() {
+        return holdings.stream().mapToDouble(Holding::getValue).sum();
+    }
+
+    @Benchmark
+    public double onHeapTotalValue() {
+        return onHeap.totalValue();
+    }
+
+    @Benchmark
+    public double offHeapTotalValue() {
+        return offHeap.totalValue();
+    }
+
+    @Benchmark
+    public boolean listContains() {
+        return holdings.stream().anyMatch(h -> h.getStockId().equals(stockId));
+    }
+
+    @Benchmark
+    public boolean onHeapContains() {
+        return onHeap.contains(stockId);
+    }
+
+    @Benchmark
+    public boolean offHeapContains() {
+        return offHeap.contains(stockId);
+    }
+}
@@ -0,0 +1,77 @@
+package org.example.portfolio.benchmark;
+
+import org.example.portfolio.model.Cash;
+import org.example.portfolio.model.Holding;
+import org.example.portfolio.model.Portfolio;
+import org.example.portfolio.service.PortfolioService;
+import org.example.portfolio.store.CompactHoldings;
+import org.example.portfolio.store.HoldingsStore;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * PortfolioService answering from memory, to benchmark the controller pipelines without any I/O.
+ */
+public class InMemoryPortfolioService extends PortfolioService {
+
+    private final List<Portfolio> portfolios;
+    private final Map<String, List<Holding>> holdings = new HashMap<>();
+    private final Map<String, CompactHoldings> compactHoldings = new HashMap<>();
+    private final Map<String, Cash> cash = new HashMap<>();
+    private final Duration latency;
+
+    public InMemoryPortfolioService(int portfolioCount, int holdingsPerPortfolio) {
+        this(portfolioCount, holdingsPerPortfolio, Duration.ZERO);
+    }
+
+    /**
+     * @param latency delay of every holdings and cash call, as a stand-in for the round trip to the remote API
+     */
+    public InMemoryPortfolioService(int portfolioCount, int holdingsPerPortfolio, Duration latency) {
+        super(WebClient.builder());
+        this.latency = latency;
+        this.portfolios = BenchmarkData.portfolios(portfolioCount);
+        HoldingsStore store = HoldingsStore.onHeap();
+        for (int i = 0; i < portfolioCount; i++) {
+            List<Holding> portfolioHoldings = BenchmarkData.holdings(i, holdingsPerPortfolio);
+            holdings.put(BenchmarkData.portfolioName(i), portfolioHoldings);
+            compactHoldings.put(BenchmarkData.portfolioName(i), store.compact(portfolioHoldings));
+            cash.put(BenchmarkData.portfolioName(i), BenchmarkData.cash(i));
+        }
+    }
+
+    @Override
+    public Mono<List<Portfolio>> getAllPortfolios() {
+        return Mono.just(portfolios);
+    }
+
+    @Override
+    public Mono<List<Holding>> getHoldings(String portfolioName) {
+        return delayed(Mono.just(holdings.get(portfolioName)));
+    }
+
+    @Override
+    public Mono<CompactHoldings> getCompactHoldings(String portfolioName) {
+        return delayed(Mono.just(compactHoldings.get(portfolioName)));
+    }
+
+    @Override
+    public Flux<Holding> streamHoldings(String portfolioName) {
+        return delayed(Mono.just(holdings.get(portfolioName))).flatMapMany(Flux::fromIterable);
+    }
+
+    @Override
+    public Mono<Cash> getCash(String portfolioName) {
+        return delayed(Mono.just(cash.get(portfolioName)));
+    }
+
+    private <T> Mono<T> delayed(Mono<T> value) {
+        return latency.isZero() ? value : value.delayElement(latency);
+    }
+}
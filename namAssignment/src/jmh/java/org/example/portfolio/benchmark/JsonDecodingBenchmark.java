@@ -0,0 +1,74 @@
+package org.example.portfolio.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.portfolio.model.Holding;
+import org.example.portfolio.model.Portfolio;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of the remote API payloads: whole-list decoding as done by bodyToMono,
+ * and incremental element decoding as done by bodyToFlux.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class JsonDecodingBenchmark {
+
+    private static final TypeReference<List<Holding>> HOLDINGS = new TypeReference<>() {
+    };
+    private static final TypeReference<List<Portfolio>> PORTFOLIOS = new TypeReference<>() {
+    };
+
+    @Param({"10", "1000", "100000"})
+    public int size;
+
+    private ObjectMapper mapper;
+    private Jackson2JsonDecoder decoder;
+    private byte[] holdingsJson;
+    private byte[] portfoliosJson;
+
+    @Setup
+    public void setUp() {
+        mapper = new ObjectMapper();
+        decoder = new Jackson2JsonDecoder(mapper);
+        holdingsJson = BenchmarkData.json(BenchmarkData.holdings(0, size));
+        portfoliosJson = BenchmarkData.json(BenchmarkData.portfolios(size));
+    }
+
+    @Benchmark
+    public List<Holding> decodeHoldingsList() throws IOException {
+        return mapper.readValue(holdingsJson, HOLDINGS);
+    }
+
+    @Benchmark
+    public List<Portfolio> decodePortfoliosList() throws IOException {
+        return mapper.readValue(portfoliosJson, PORTFOLIOS);
+    }
+
+    @Benchmark
+    public Long streamHoldings() {
+        return decoder.decode(Flux.<DataBuffer>just(DefaultDataBufferFactory.sharedInstance.wrap(holdingsJson)),
+                        ResolvableType.forClass(Holding.class), MediaType.APPLICATION_JSON, Collections.emptyMap())
+                .count()
+                .block();
+    }
+}
@@ -0,0 +1,83 @@
+package org.example.portfolio.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.portfolio.config.JacksonFormats;
+import org.example.portfolio.model.Holding;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialisation of the cash fraction map of the whole book and of the holdings of one portfolio in each format
+ * served by the controllers. The payload sizes of each format are printed once per trial in the benchmark output,
+ * next to the average time of writing and reading them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SerializationFormatBenchmark {
+
+    private static final TypeReference<Map<String, Double>> FRACTIONS = new TypeReference<>() {
+    };
+    private static final TypeReference<List<Holding>> HOLDINGS = new TypeReference<>() {
+    };
+
+    @Param({"application/json", "application/cbor", "application/x-jackson-smile"})
+    public String format;
+
+    @Param({"1000", "100000"})
+    public int portfolios;
+
+    private ObjectMapper mapper;
+    private Map<String, Double> fractions;
+    private List<Holding> holdings;
+    private byte[] fractionsBytes;
+    private byte[] holdingsBytes;
+
+    @Setup
+    public void setUp() throws IOException {
+        mapper = new JacksonFormats(new ObjectMapper()).mapperFor(MediaType.parseMediaType(format));
+        fractions = new LinkedHashMap<>();
+        for (int i = 0; i < portfolios; i++) {
+            fractions.put(BenchmarkData.portfolioName(i), BenchmarkData.cash(i).getValue() / (1000.0 + 50.0 * i));
+        }
+        holdings = BenchmarkData.holdings(0, Math.min(portfolios, 10_000));
+        fractionsBytes = mapper.writeValueAsBytes(fractions);
+        holdingsBytes = mapper.writeValueAsBytes(holdings);
+        System.out.printf("%n%s payload: %d bytes for %d cash fractions, %d bytes for %d holdings%n",
+                format, fractionsBytes.length, fractions.size(), holdingsBytes.length, holdings.size());
+    }
+
+    @Benchmark
+    public byte[] writeCashFractions() throws IOException {
+        return mapper.writeValueAsBytes(fractions);
+    }
+
+    @Benchmark
+    public Map<String, Double> readCashFractions() throws IOException {
+        return mapper.readValue(fractionsBytes, FRACTIONS);
+    }
+
+    @Benchmark
+    public byte[] writeHoldings() throws IOException {
+        return mapper.writeValueAsBytes(holdings);
+    }
+
+    @Benchmark
+    public List<Holding> readHoldings() throws IOException {
+        return mapper.readValue(holdingsBytes, HOLDINGS);
+    }
+}
@@ -0,0 +1,45 @@
+package org.example.portfolio.benchmark;
+
+import org.example.portfolio.controller.PortfolioController;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stock-match filter of getPortfoliosByStock over an in-memory service, for a stock held by many portfolios
+ * (early exit) and for a stock held by none (full scan).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class StockSearchBenchmark {
+
+    @Param({"1000"})
+    public int portfolios;
+
+    @Param({"100", "10000"})
+    public int holdingsPerPortfolio;
+
+    @Param({"STK42", "ABSENT"})
+    public String stockId;
+
+    private PortfolioController controller;
+
+    @Setup
+    public void setUp() {
+        controller = Controllers.create(new InMemoryPortfolioService(portfolios, holdingsPerPortfolio));
+    }
+
+    @Benchmark
+    public List<String> portfoliosByStock() {
+        return controller.getPortfoliosByStock(stockId, null, null, false).block();
+    }
+}
@@ -0,0 +1,56 @@
+package org.example.portfolio.benchmark;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerResponse;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * In-process HTTP stub of the remote portfolio API serving pre-serialised responses.
+ */
+final class StubUpstream implements AutoCloseable {
+
+    private final DisposableServer server;
+
+    StubUpstream(int portfolioCount, int holdingsPerPortfolio) {
+        byte[] portfolios = BenchmarkData.json(BenchmarkData.portfolios(portfolioCount));
+        Map<String, byte[]> holdings = new HashMap<>();
+        Map<String, byte[]> cash = new HashMap<>();
+        for (int i = 0; i < portfolioCount; i++) {
+            holdings.put(BenchmarkData.portfolioName(i), BenchmarkData.json(BenchmarkData.holdings(i, holdingsPerPortfolio)));
+            cash.put(BenchmarkData.portfolioName(i), BenchmarkData.json(BenchmarkData.cash(i)));
+        }
+
+        server = HttpServer.create()
+                .host("127.0.0.1")
+                .port(0)
+                .route(routes -> routes
+                        .get("/portfolios", (request, response) -> json(response, portfolios))
+                        .get("/{name}/holdings", (request, response) -> json(response, holdings.get(request.param("name"))))
+                        .get("/{name}/cash", (request, response) -> json(response, cash.get(request.param("name")))))
+                .bindNow();
+    }
+
+    String baseUri() {
+        return "http://127.0.0.1:" + server.port();
+    }
+
+    @Override
+    public void close() {
+        server.disposeNow();
+    }
+
+    private static Publisher<Void> json(HttpServerResponse response, byte[] body) {
+        if (body == null) {
+            return response.status(HttpResponseStatus.NOT_FOUND).send();
+        }
+        return response.header(HttpHeaderNames.CONTENT_TYPE, "application/json")
+                .sendByteArray(Mono.just(body));
+    }
+}
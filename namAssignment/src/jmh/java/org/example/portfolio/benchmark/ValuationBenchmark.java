@@ -0,0 +1,68 @@
+package org.example.portfolio.benchmark;
+
+import org.example.portfolio.model.Holding;
+import org.example.portfolio.store.CompactHoldings;
+import org.example.portfolio.store.StockSymbols;
+import org.example.portfolio.valuation.Valuation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cash fraction of one portfolio: the double sum of the holdings stream the controller used, against the
+ * fixed-point sums of {@link Valuation} over the list, a primitive array and {@link CompactHoldings}.
+ * The largest sizes run over several chunks. Run with -prof gc to compare allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ValuationBenchmark {
+
+    @Param({"100", "10000", "1000000"})
+    public int holdingsPerPortfolio;
+
+    private List<Holding> holdings;
+    private double[] values;
+    private CompactHoldings compact;
+    private double cash;
+
+    @Setup
+    public void setUp() {
+        holdings = BenchmarkData.holdings(0, holdingsPerPortfolio);
+        values = new double[holdings.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = holdings.get(i).getValue();
+        }
+        compact = CompactHoldings.of(holdings, new StockSymbols(), false);
+        cash = BenchmarkData.cash(1).getValue();
+    }
+
+    @Benchmark
+    public double doubleStream() {
+        double holdingsValue = holdings.stream().mapToDouble(Holding::getValue).sum();
+        return cash / (cash + holdingsValue);
+    }
+
+    @Benchmark
+    public double fixedPointList() {
+        return Valuation.fraction(Valuation.toMicros(cash), Valuation.sumMicros(holdings));
+    }
+
+    @Benchmark
+    public double fixedPointArray() {
+        return Valuation.fraction(Valuation.toMicros(cash), Valuation.sumMicros(values));
+    }
+
+    @Benchmark
+    public double fixedPointCompact() {
+        return Valuation.fraction(Valuation.toMicros(cash), compact.totalValueMicros());
+    }
+}
@@ -0,0 +1,173 @@
+package org.example.portfolio.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.example.portfolio.Application;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Closed-loop load driver for the controller endpoints: each of the concurrent workers sends its next request
+ * as soon as the previous one is answered, for the configured duration after a warm-up period.
+ * Reports throughput, error count and p50/p99/p999 latency per endpoint.
+ * <p>
+ * Run it with: gradlew loadTest [-Pload.target=http://127.0.0.1:8080] [-Pload.concurrency=32] ...
+ * With -Pload.in-process=true the simulator and the application are started in the same JVM on random ports,
+ * so that one command gives a reproducible run on a laptop; -Psim.* properties then configure the simulator.
+ */
+public final class LoadDriver {
+
+    private static final long MAX_LATENCY_NANOS = TimeUnit.MINUTES.toNanos(2);
+
+    private final WebClient webClient;
+    private final int concurrency;
+    private final Duration warmup;
+    private final Duration duration;
+
+    public LoadDriver(String target, int concurrency, Duration warmup, Duration duration) {
+        ConnectionProvider provider = ConnectionProvider.builder("load-driver")
+                .maxConnections(concurrency)
+                .pendingAcquireMaxCount(-1)
+                .build();
+        this.webClient = WebClient.builder()
+                .baseUrl(target)
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.create(provider)))
+                .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(-1))
+                .build();
+        this.concurrency = concurrency;
+        this.warmup = warmup;
+        this.duration = duration;
+    }
+
+    public static void main(String[] args) {
+        int concurrency = Integer.getInteger("load.concurrency", 32);
+        Duration warmup = Duration.ofSeconds(Long.getLong("load.warmup-seconds", 5L));
+        Duration duration = Duration.ofSeconds(Long.getLong("load.duration-seconds", 30L));
+        List<String> stocks = Arrays.asList(System.getProperty("load.stocks", "STK1,STK42,STK4999,NOT_HELD").split(","));
+        List<String> endpoints = Arrays.asList(System.getProperty("load.endpoints", "cash-fraction,stock").split(","));
+
+        UpstreamSimulator simulator = null;
+        ConfigurableApplicationContext application = null;
+        String target = System.getProperty("load.target", "http://127.0.0.1:8080");
+        if (Boolean.getBoolean("load.in-process")) {
+            System.setProperty("sim.port", System.getProperty("sim.port", "0"));
+            simulator = new UpstreamSimulator(new SimulatorSettings());
+            application = new SpringApplicationBuilder(Application.class)
+                    .properties("server.port=0", "server.base.uri=" + simulator.baseUri())
+                    .run();
+            target = "http://127.0.0.1:" + application.getEnvironment().getProperty("local.server.port");
+        }
+
+        try {
+            LoadDriver driver = new LoadDriver(target, concurrency, warmup, duration);
+            System.out.printf("Driving %s with %d workers, %ds warm-up, %ds measured%n",
+                    target, concurrency, warmup.toSeconds(), duration.toSeconds());
+            System.out.printf("%-14s %10s %8s %10s %10s %10s %10s%n",
+                    "endpoint", "req/s", "errors", "p50 ms", "p99 ms", "p999 ms", "max ms");
+            for (String endpoint : endpoints) {
+                Supplier<String> uri = switch (endpoint.trim()) {
+                    case "cash-fraction" -> () -> "/portfolios/portfolio-cash-fraction";
+                    case "stock" -> () -> "/portfolios/stock/" + stocks.get(ThreadLocalRandom.current().nextInt(stocks.size()));
+                    default -> throw new IllegalArgumentException("Unknown endpoint " + endpoint);
+                };
+                driver.run(endpoint.trim(), uri).print();
+            }
+        } finally {
+            if (application != null) {
+                application.close();
+            }
+            if (simulator != null) {
+                simulator.close();
+            }
+        }
+    }
+
+    /**
+     * Drives one endpoint through the warm-up and the measured period.
+     *
+     * @param endpoint the name reported for the endpoint
+     * @param uri      the supplier of the request URI, called for every request
+     * @return the result of the measured period
+     */
+    public Result run(String endpoint, Supplier<String> uri) {
+        drive(uri, warmup, new Recorder(MAX_LATENCY_NANOS, 3), new AtomicLong());
+
+        Recorder recorder = new Recorder(MAX_LATENCY_NANOS, 3);
+        AtomicLong errors = new AtomicLong();
+        long start = System.nanoTime();
+        drive(uri, duration, recorder, errors);
+        long elapsed = System.nanoTime() - start;
+        return new Result(endpoint, recorder.getIntervalHistogram(), errors.get(), elapsed);
+    }
+
+    private void drive(Supplier<String> uri, Duration period, Recorder recorder, AtomicLong errors) {
+        long deadline = System.nanoTime() + period.toNanos();
+        Flux.range(0, concurrency)
+                .flatMap(worker -> Mono.defer(() -> request(uri.get(), recorder, errors))
+                        .repeat(() -> System.nanoTime() < deadline), concurrency)
+                .blockLast();
+    }
+
+    private Mono<Void> request(String uri, Recorder recorder, AtomicLong errors) {
+        long start = System.nanoTime();
+        return webClient.get()
+                .uri(uri)
+                .retrieve()
+                .toBodilessEntity()
+                .doOnError(error -> errors.incrementAndGet())
+                .onErrorComplete()
+                .doFinally(signal -> recorder.recordValue(Math.min(MAX_LATENCY_NANOS, System.nanoTime() - start)))
+                .then();
+    }
+
+    public static final class Result {
+
+        private final String endpoint;
+        private final Histogram histogram;
+        private final long errors;
+        private final long elapsedNanos;
+
+        Result(String endpoint, Histogram histogram, long errors, long elapsedNanos) {
+            this.endpoint = endpoint;
+            this.histogram = histogram;
+            this.errors = errors;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public Histogram getHistogram() {
+            return histogram;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public double getThroughput() {
+            return histogram.getTotalCount() / (elapsedNanos / 1e9);
+        }
+
+        void print() {
+            System.out.printf("%-14s %10.1f %8d %10.2f %10.2f %10.2f %10.2f%n", endpoint, getThroughput(), errors,
+                    millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(99)),
+                    millis(histogram.getValueAtPercentile(99.9)), millis(histogram.getMaxValue()));
+        }
+
+        private static double millis(long nanos) {
+            return nanos / 1e6;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package org.example.portfolio.loadtest;
+
+import java.time.Duration;
+
+/**
+ * Settings of the {@link UpstreamSimulator}, read from system properties prefixed with sim.
+ */
+public final class SimulatorSettings {
+
+    int port = Integer.getInteger("sim.port", 5000);
+    long seed = Long.getLong("sim.seed", 42L);
+
+    /* book shape */
+    int portfolios = Integer.getInteger("sim.portfolios", 10_000);
+    double disabledFraction = doubleProperty("sim.disabled-fraction", 0.1);
+    int distinctStocks = Integer.getInteger("sim.stocks", 5_000);
+    /* holdings per portfolio follow a log-normal distribution with this median and shape, capped at max */
+    int holdingsMedian = Integer.getInteger("sim.holdings.median", 100);
+    double holdingsSigma = doubleProperty("sim.holdings.sigma", 1.0);
+    int holdingsMax = Integer.getInteger("sim.holdings.max", 50_000);
+    double zeroCashFraction = doubleProperty("sim.zero-cash-fraction", 0.1);
+
+    /* latency is log-normal around the median, plus a tail of slow responses with the given probability */
+    Duration latencyMedian = Duration.ofMillis(Long.getLong("sim.latency.median-ms", 5L));
+    double latencySigma = doubleProperty("sim.latency.sigma", 0.5);
+    double tailProbability = doubleProperty("sim.latency.tail-probability", 0.01);
+    Duration tailLatency = Duration.ofMillis(Long.getLong("sim.latency.tail-ms", 1_000L));
+
+    /* failure injection: 500 responses, and requests never answered so that the caller times out */
+    double errorRate = doubleProperty("sim.error-rate", 0.0);
+    double timeoutRate = doubleProperty("sim.timeout-rate", 0.0);
+
+    /* probability that a per-portfolio request finds the portfolio changed, 0 for a static book */
+    double changeRate = doubleProperty("sim.change-rate", 0.0);
+
+    boolean bulkSupported = Boolean.parseBoolean(System.getProperty("sim.bulk", "false"));
+
+    private static double doubleProperty(String name, double defaultValue) {
+        String value = System.getProperty(name);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+
+    @Override
+    public String toString() {
+        return "portfolios=" + portfolios + ", disabledFraction=" + disabledFraction
+                + ", holdingsMedian=" + holdingsMedian + ", holdingsSigma=" + holdingsSigma
+                + ", latencyMedian=" + latencyMedian.toMillis() + "ms, latencySigma=" + latencySigma
+                + ", tailProbability=" + tailProbability + ", tailLatency=" + tailLatency.toMillis() + "ms"
+                + ", errorRate=" + errorRate + ", timeoutRate=" + timeoutRate + ", changeRate=" + changeRate
+                + ", bulk=" + bulkSupported;
+    }
+}
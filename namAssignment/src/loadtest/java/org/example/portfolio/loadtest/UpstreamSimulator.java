@@ -0,0 +1,204 @@
+package org.example.portfolio.loadtest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import org.example.portfolio.model.Cash;
+import org.example.portfolio.model.Holding;
+import org.example.portfolio.model.Portfolio;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Synthetic simulator of the remote portfolio API: GET /portfolios, GET /{name}/holdings and GET /{name}/cash,
+ * plus POST /holdings:batch and POST /cash:batch when bulk support is enabled.
+ * The book is generated deterministically from the seed, while latency, errors and timeouts are drawn per request.
+ * Per-portfolio responses carry an ETag and honour If-None-Match with a 304; with a change rate, each request may
+ * move the portfolio to a new version of its holdings and cash.
+ * Run it with: gradlew runSimulator -Psim.portfolios=10000 -Psim.latency.tail-probability=0.01 ...
+ */
+public final class UpstreamSimulator implements AutoCloseable {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final TypeReference<List<String>> NAMES = new TypeReference<>() {
+    };
+
+    private final SimulatorSettings settings;
+    private final byte[] portfoliosJson;
+    private final Map<String, Integer> indexByName = new ConcurrentHashMap<>();
+    private final Map<String, List<Holding>> holdings = new ConcurrentHashMap<>();
+    private final Map<String, Cash> cash = new ConcurrentHashMap<>();
+    private final Map<String, Integer> versions = new ConcurrentHashMap<>();
+    private final DisposableServer server;
+
+    public UpstreamSimulator(SimulatorSettings settings) {
+        this.settings = settings;
+
+        Random random = new Random(settings.seed);
+        List<Portfolio> portfolios = new ArrayList<>(settings.portfolios);
+        for (int i = 0; i < settings.portfolios; i++) {
+            String name = "PORTFOLIO_" + i;
+            portfolios.add(new Portfolio(name, random.nextDouble() < settings.disabledFraction));
+            indexByName.put(name, i);
+        }
+        this.portfoliosJson = json(portfolios);
+
+        this.server = HttpServer.create()
+                .host("127.0.0.1")
+                .port(settings.port)
+                .route(routes -> routes
+                        .get("/portfolios", (request, response) -> respond(response, () -> portfoliosJson))
+                        .get("/{name}/holdings", (request, response) ->
+                                respondFor(request, response, name -> json(holdingsOf(name))))
+                        .get("/{name}/cash", (request, response) ->
+                                respondFor(request, response, name -> json(cashOf(name))))
+                        .post("/holdings:batch", (request, response) -> bulk(request, response, this::holdingsOf))
+                        .post("/cash:batch", (request, response) -> bulk(request, response, this::cashOf)))
+                .bindNow();
+    }
+
+    public static void main(String[] args) {
+        SimulatorSettings settings = new SimulatorSettings();
+        UpstreamSimulator simulator = new UpstreamSimulator(settings);
+        System.out.println("Upstream simulator listening on " + simulator.baseUri() + " with " + settings);
+        simulator.server.onDispose().block();
+    }
+
+    public String baseUri() {
+        return "http://127.0.0.1:" + server.port();
+    }
+
+    @Override
+    public void close() {
+        server.disposeNow();
+    }
+
+    private Publisher<Void> respondFor(HttpServerRequest request, HttpServerResponse response,
+                                       Function<String, byte[]> body) {
+        String name = request.param("name");
+        if (!indexByName.containsKey(name)) {
+            return response.status(HttpResponseStatus.NOT_FOUND).send();
+        }
+        if (ThreadLocalRandom.current().nextDouble() < settings.changeRate) {
+            versions.merge(name, 1, Integer::sum);
+            holdings.remove(name);
+            cash.remove(name);
+        }
+        byte[] bytes = body.apply(name);
+        String etag = "\"" + Integer.toHexString(Arrays.hashCode(bytes)) + "\"";
+        response.header(HttpHeaderNames.ETAG, etag);
+        if (etag.equals(request.requestHeaders().get(HttpHeaderNames.IF_NONE_MATCH))) {
+            return respond(response.status(HttpResponseStatus.NOT_MODIFIED), null);
+        }
+        return respond(response, () -> bytes);
+    }
+
+    private Publisher<Void> bulk(HttpServerRequest request, HttpServerResponse response, Function<String, Object> lookup) {
+        if (!settings.bulkSupported) {
+            return response.status(HttpResponseStatus.NOT_FOUND).send();
+        }
+        return request.receive().aggregate().asString()
+                .flatMap(body -> {
+                    Map<String, Object> results = new LinkedHashMap<>();
+                    for (String name : readNames(body)) {
+                        if (indexByName.containsKey(name)) {
+                            results.put(name, lookup.apply(name));
+                        }
+                    }
+                    return Mono.from(respond(response, () -> json(results)));
+                });
+    }
+
+    /* applies the injected latency, errors and timeouts before sending the body, if any */
+    private Publisher<Void> respond(HttpServerResponse response, Supplier<byte[]> body) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextDouble() < settings.timeoutRate) {
+            return Mono.never();
+        }
+        Mono<Void> delay = Mono.delay(latency(random)).then();
+        if (random.nextDouble() < settings.errorRate) {
+            return delay.then(Mono.from(response.status(HttpResponseStatus.INTERNAL_SERVER_ERROR).send()));
+        }
+        if (body == null) {
+            return delay.then(Mono.from(response.send()));
+        }
+        return delay.then(Mono.from(response
+                .header(HttpHeaderNames.CONTENT_TYPE, "application/json")
+                .sendByteArray(Mono.fromSupplier(body))));
+    }
+
+    private Duration latency(ThreadLocalRandom random) {
+        if (random.nextDouble() < settings.tailProbability) {
+            return settings.tailLatency;
+        }
+        double millis = settings.latencyMedian.toMillis() * Math.exp(settings.latencySigma * random.nextGaussian());
+        return Duration.of((long) (millis * 1000), ChronoUnit.MICROS);
+    }
+
+    private List<Holding> holdingsOf(String name) {
+        return holdings.computeIfAbsent(name, key -> {
+            SplittableRandom random = new SplittableRandom(seedOf(key, 31));
+            double gaussian = gaussian(random);
+            int count = (int) Math.min(settings.holdingsMax, Math.round(settings.holdingsMedian * Math.exp(settings.holdingsSigma * gaussian)));
+            List<Holding> result = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                result.add(new Holding("STK" + random.nextInt(settings.distinctStocks), random.nextInt(1, 1_000_000) / 100.0));
+            }
+            return result;
+        });
+    }
+
+    private Cash cashOf(String name) {
+        return cash.computeIfAbsent(name, key -> {
+            SplittableRandom random = new SplittableRandom(seedOf(key, 17));
+            return new Cash(random.nextDouble() < settings.zeroCashFraction ? 0.0 : random.nextInt(1, 10_000_000) / 100.0);
+        });
+    }
+
+    private long seedOf(String name, int salt) {
+        return (settings.seed * salt + indexByName.get(name)) * 1_000_003L + versions.getOrDefault(name, 0);
+    }
+
+    private static double gaussian(SplittableRandom random) {
+        // Box-Muller, SplittableRandom has no nextGaussian on Java 17
+        double u1 = 1.0 - random.nextDouble();
+        double u2 = random.nextDouble();
+        return Math.sqrt(-2 * Math.log(u1)) * Math.cos(2 * Math.PI * u2);
+    }
+
+    private static List<String> readNames(String body) {
+        try {
+            return mapper.readValue(body, NAMES);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Invalid list of portfolio names", e);
+        }
+    }
+
+    private static byte[] json(Object value) {
+        try {
+            return mapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -3,17 +3,13 @@ package org.example.portfolio;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.web.client.RestTemplate;
-import org.springframework.web.reactive.function.client.WebClient;
 
 @SpringBootApplication
+@EnableScheduling
 public class Application {
 
-    @Bean
-    public WebClient.Builder getWebClientBuilder()
-    {
-        return WebClient.builder();
-    }
     @Bean
     public RestTemplate getRestTemplate()
     {
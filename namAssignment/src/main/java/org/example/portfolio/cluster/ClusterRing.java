@@ -0,0 +1,161 @@
+package org.example.portfolio.cluster;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/**
+ * Consistent-hash ring of the instances of a cluster, configured with a static list of base URLs.
+ * Each instance is placed at virtual-nodes points of the ring, and a portfolio is owned by the instance at the first
+ * point clockwise from the hash of its name, so adding or removing an instance only moves the portfolios of its arcs.
+ * Every instance must be configured with the same members for all of them to agree on the owners.
+ * When cluster mode is disabled the ring has a single member, this instance, which owns every portfolio.
+ */
+@Component
+public class ClusterRing {
+
+    private final boolean enabled;
+    private final String self;
+    private final List<String> members;
+    private final long[] points;
+    private final String[] owners;
+
+    @Autowired
+    public ClusterRing(@Value("${portfolio.cluster.enabled:false}") boolean enabled,
+                       @Value("${portfolio.cluster.self:}") String self,
+                       @Value("${portfolio.cluster.peers:}") String peers,
+                       @Value("${portfolio.cluster.virtual-nodes:128}") int virtualNodes) {
+        this(enabled, self, Arrays.asList(StringUtils.commaDelimitedListToStringArray(peers)), virtualNodes);
+    }
+
+    public ClusterRing(boolean enabled, String self, Collection<String> peers, int virtualNodes) {
+        if (enabled && !StringUtils.hasText(self)) {
+            throw new IllegalStateException("portfolio.cluster.self must be set to the base URL of this instance in cluster mode");
+        }
+        this.enabled = enabled;
+        this.self = enabled ? normalize(self) : "";
+        TreeSet<String> distinct = new TreeSet<>();
+        distinct.add(this.self);
+        if (enabled) {
+            for (String peer : peers) {
+                if (StringUtils.hasText(peer)) {
+                    distinct.add(normalize(peer));
+                }
+            }
+        }
+        this.members = List.copyOf(distinct);
+
+        // a TreeMap keeps the points sorted, and the first member placed wins the rare collision of two points
+        TreeMap<Long, String> ring = new TreeMap<>();
+        for (String member : members) {
+            for (int i = 0; i < Math.max(1, virtualNodes); i++) {
+                ring.putIfAbsent(hash(member + "#" + i), member);
+            }
+        }
+        this.points = new long[ring.size()];
+        this.owners = new String[ring.size()];
+        int i = 0;
+        for (Map.Entry<Long, String> point : ring.entrySet()) {
+            points[i] = point.getKey();
+            owners[i] = point.getValue();
+            i++;
+        }
+    }
+
+    /**
+     * @return the ring of a single instance owning every portfolio
+     */
+    public static ClusterRing standalone() {
+        return new ClusterRing(false, null, Collections.emptyList(), 1);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the base URL of this instance, empty when cluster mode is disabled
+     */
+    public String getSelf() {
+        return self;
+    }
+
+    /**
+     * @return the base URLs of every instance, this one included, sorted
+     */
+    public List<String> getMembers() {
+        return members;
+    }
+
+    public boolean isSelf(String member) {
+        return self.equals(member);
+    }
+
+    /**
+     * @param name the name of a portfolio
+     * @return the base URL of the instance owning the portfolio
+     */
+    public String ownerOf(String name) {
+        int index = Arrays.binarySearch(points, hash(name));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    /**
+     * @param name the name of a portfolio
+     * @return true if this instance owns the portfolio, always true when cluster mode is disabled
+     */
+    public boolean owns(String name) {
+        return !enabled || isSelf(ownerOf(name));
+    }
+
+    /**
+     * Splits items by the instance owning them, keeping their order within each slice.
+     *
+     * @param items the items to split, e.g. portfolios
+     * @param name  the portfolio name of an item
+     * @return the slice of each instance owning at least one item
+     */
+    public <T> Map<String, List<T>> partition(Collection<T> items, Function<T, String> name) {
+        Map<String, List<T>> slices = new LinkedHashMap<>();
+        for (T item : items) {
+            slices.computeIfAbsent(ownerOf(name.apply(item)), owner -> new ArrayList<>()).add(item);
+        }
+        return slices;
+    }
+
+    private static String normalize(String member) {
+        String trimmed = member.trim();
+        return trimmed.endsWith("/") ? trimmed.substring(0, trimmed.length() - 1) : trimmed;
+    }
+
+    /* FNV-1a over the UTF-8 bytes, then the murmur3 finalizer: stable across JVMs and well spread over the ring */
+    static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb3f98ba8c6d9L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
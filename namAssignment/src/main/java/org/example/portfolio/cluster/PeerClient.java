@@ -0,0 +1,159 @@
+package org.example.portfolio.cluster;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.example.portfolio.config.JacksonFormats;
+import org.example.portfolio.controller.RequestDeadlineFilter;
+import org.example.portfolio.model.CashFractionReport;
+import org.example.portfolio.service.RequestDeadline;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Client of the other instances of a cluster, asking each for the cash fractions of the portfolios it owns.
+ * Calls are bounded by portfolio.cluster.peer-timeout, or by portfolio.cluster.peer-deadline-share of what remains of
+ * the deadline of the request when shorter, so that the portfolios of a peer failing late can still be computed
+ * locally in time. The peer is given a slightly shorter deadline so that it answers with what it computed in time
+ * rather than not at all.
+ * A peer that cannot be reached, answers with a server error or does not answer within the full
+ * portfolio.cluster.peer-timeout is considered down for portfolio.cluster.peer-retry-interval, during which its
+ * portfolios are computed by the calling instance without trying it. A call timing out because the request had
+ * little time left, or failing otherwise, says nothing of the health of the peer and does not mark it down. Peers exchange Smile, the binary form of the JSON model.
+ * Calls are timed in portfolio.cluster.peer.requests, tagged by peer and outcome (success, error).
+ */
+@Component
+public class PeerClient {
+
+    public static final String CASH_FRACTIONS_PATH = "/cluster/cash-fractions";
+    /** Most portfolios asked for in one call, larger slices being split across calls. */
+    public static final int MAX_PORTFOLIOS_PER_CALL = 10000;
+
+    private static final String OUTCOME_SUCCESS = "success";
+    private static final String OUTCOME_ERROR = "error";
+
+    private final WebClient webClient;
+    private final Duration timeout;
+    private final double deadlineShare;
+    private final long retryIntervalMillis;
+    private final MeterRegistry meterRegistry;
+    private final Clock clock;
+
+    private final Map<String, Long> downUntilMillis = new ConcurrentHashMap<>();
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    @Autowired
+    public PeerClient(WebClient.Builder webClientBuilder,
+                      @Value("${portfolio.cluster.peer-timeout:3s}") Duration timeout,
+                      @Value("${portfolio.cluster.peer-retry-interval:10s}") Duration retryInterval,
+                      @Value("${portfolio.cluster.peer-deadline-share:0.5}") double deadlineShare,
+                      MeterRegistry meterRegistry) {
+        this(webClientBuilder, timeout, retryInterval, deadlineShare, meterRegistry, Clock.systemUTC());
+    }
+
+    PeerClient(WebClient.Builder webClientBuilder, Duration timeout, Duration retryInterval, double deadlineShare,
+               MeterRegistry meterRegistry, Clock clock) {
+        if (!(deadlineShare > 0 && deadlineShare <= 1)) {
+            throw new IllegalArgumentException("portfolio.cluster.peer-deadline-share must be in (0, 1]");
+        }
+        this.webClient = webClientBuilder.build();
+        this.timeout = timeout;
+        this.deadlineShare = deadlineShare;
+        this.retryIntervalMillis = retryInterval.toMillis();
+        this.meterRegistry = meterRegistry;
+        this.clock = clock;
+    }
+
+    /**
+     * @param peer the base URL of a peer
+     * @return false while the peer is considered down after a failed call
+     */
+    public boolean isAvailable(String peer) {
+        Long downUntil = downUntilMillis.get(peer);
+        return downUntil == null || clock.millis() >= downUntil;
+    }
+
+    /**
+     * Asks a peer for the cash fractions of portfolios it owns.
+     *
+     * @param peer       the base URL of the peer
+     * @param portfolios the names of the portfolios
+     * @return a Mono with the fractions the peer computed and the portfolios it could not compute
+     */
+    public Mono<CashFractionReport> cashFractions(String peer, List<String> portfolios) {
+        return Mono.deferContextual(context -> {
+            Duration budget = RequestDeadline.current(context)
+                    .map(deadline -> peerBudget(deadline.remaining()))
+                    .filter(share -> share.compareTo(timeout) < 0)
+                    .orElse(timeout);
+            boolean fullTimeout = budget.equals(timeout);
+            // the peer answers before the call times out, with the portfolios it did not compute in time as missing
+            long peerBudgetMillis = Math.max(1, budget.toMillis() * 9 / 10);
+            long start = System.nanoTime();
+            return webClient
+                    .post()
+                    .uri(peer + CASH_FRACTIONS_PATH)
+                    .contentType(JacksonFormats.APPLICATION_SMILE)
+                    .accept(JacksonFormats.APPLICATION_SMILE)
+                    .header(RequestDeadlineFilter.DEADLINE_HEADER, Long.toString(peerBudgetMillis))
+                    .bodyValue(portfolios)
+                    .retrieve()
+                    .bodyToMono(CashFractionReport.class)
+                    .timeout(budget)
+                    .doOnSuccess(report -> {
+                        downUntilMillis.remove(peer);
+                        record(peer, OUTCOME_SUCCESS, start);
+                    })
+                    .doOnError(error -> {
+                        if (marksDown(error, fullTimeout)) {
+                            downUntilMillis.put(peer, clock.millis() + retryIntervalMillis);
+                        }
+                        record(peer, OUTCOME_ERROR, start);
+                    });
+        });
+    }
+
+    /**
+     * @param remaining what remains of the deadline of the request
+     * @return the share of it given to a peer, the rest being left to compute its portfolios locally if it fails
+     */
+    Duration peerBudget(Duration remaining) {
+        return Duration.ofMillis(Math.max(1, (long) (remaining.toMillis() * deadlineShare)));
+    }
+
+    /* only a failure of the peer itself marks it down, not a budget cut short by the deadline of the request */
+    static boolean marksDown(Throwable error, boolean fullTimeout) {
+        if (error instanceof TimeoutException) {
+            return fullTimeout;
+        }
+        if (error instanceof WebClientResponseException) {
+            return ((WebClientResponseException) error).getStatusCode().is5xxServerError();
+        }
+        return error instanceof WebClientRequestException;
+    }
+
+    private void record(String peer, String outcome, long startNanos) {
+        if (meterRegistry == null) {
+            return;
+        }
+        // peers come from a static list, so the peer tag is bounded
+        timers.computeIfAbsent(peer + '|' + outcome, key -> Timer.builder("portfolio.cluster.peer.requests")
+                        .description("Latency of the calls to the other instances of the cluster")
+                        .tag("peer", peer)
+                        .tag("outcome", outcome)
+                        .register(meterRegistry))
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+}
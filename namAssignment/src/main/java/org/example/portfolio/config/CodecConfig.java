@@ -0,0 +1,52 @@
+package org.example.portfolio.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.CodecConfigurer;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.http.codec.cbor.Jackson2CborDecoder;
+import org.springframework.http.codec.cbor.Jackson2CborEncoder;
+import org.springframework.http.codec.json.Jackson2SmileDecoder;
+import org.springframework.http.codec.json.Jackson2SmileEncoder;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+
+/**
+ * Registers the CBOR (application/cbor) and Smile (application/x-jackson-smile) codecs next to JSON, so that every
+ * controller endpoint answers in the format asked for in the Accept header and reads request bodies in any of them.
+ * The same codecs are registered on the client of the remote API, see {@link UpstreamClientConfig}.
+ * CBOR is encoded and decoded as whole values only, streaming endpoints and streamed upstream bodies use JSON or Smile.
+ */
+@Configuration
+public class CodecConfig implements WebFluxConfigurer {
+
+    private final JacksonFormats formats;
+
+    @Autowired
+    public CodecConfig(JacksonFormats formats) {
+        this.formats = formats;
+    }
+
+    @Override
+    public void configureHttpMessageCodecs(ServerCodecConfigurer configurer) {
+        registerBinaryCodecs(configurer, formats);
+    }
+
+    /**
+     * Registers the CBOR and Smile codecs, backed by the binary mappers of the formats.
+     *
+     * @param configurer the codecs of a server or of a client
+     * @param formats    the mappers of each format
+     */
+    public static void registerBinaryCodecs(CodecConfigurer configurer, JacksonFormats formats) {
+        configurer.defaultCodecs().jackson2SmileEncoder(new Jackson2SmileEncoder(formats.getSmileMapper(),
+                JacksonFormats.APPLICATION_SMILE));
+        configurer.defaultCodecs().jackson2SmileDecoder(new Jackson2SmileDecoder(formats.getSmileMapper(),
+                JacksonFormats.APPLICATION_SMILE));
+        // not among the default codecs, registered with their settings so that max-in-memory-size applies too
+        configurer.customCodecs().registerWithDefaultConfig(new Jackson2CborEncoder(formats.getCborMapper(),
+                MediaType.APPLICATION_CBOR));
+        configurer.customCodecs().registerWithDefaultConfig(new Jackson2CborDecoder(formats.getCborMapper(),
+                MediaType.APPLICATION_CBOR));
+    }
+}
@@ -0,0 +1,89 @@
+package org.example.portfolio.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The formats the model is exchanged in, with the controllers' clients and with the remote API: JSON, and the
+ * binary CBOR and Smile encodings of the same Jackson model for JVM consumers that do not need text.
+ * The binary mappers are copies of the application's JSON mapper, so all three share its modules and settings.
+ */
+@Component
+public class JacksonFormats {
+
+    public static final MediaType APPLICATION_SMILE = new MediaType("application", "x-jackson-smile");
+
+    /* in order of preference when a client accepts several of them */
+    public static final List<MediaType> MEDIA_TYPES = List.of(MediaType.APPLICATION_JSON, MediaType.APPLICATION_CBOR,
+            APPLICATION_SMILE);
+
+    private final ObjectMapper json;
+    private final ObjectMapper cbor;
+    private final ObjectMapper smile;
+
+    @Autowired
+    public JacksonFormats(ObjectMapper objectMapper) {
+        this.json = objectMapper;
+        this.cbor = objectMapper.copyWith(new CBORFactory());
+        this.smile = objectMapper.copyWith(new SmileFactory());
+    }
+
+    public ObjectMapper getJsonMapper() {
+        return json;
+    }
+
+    public ObjectMapper getCborMapper() {
+        return cbor;
+    }
+
+    public ObjectMapper getSmileMapper() {
+        return smile;
+    }
+
+    /**
+     * @param mediaType one of {@link #MEDIA_TYPES}
+     * @return the mapper reading and writing the media type
+     */
+    public ObjectMapper mapperFor(MediaType mediaType) {
+        if (MediaType.APPLICATION_CBOR.equalsTypeAndSubtype(mediaType)) {
+            return cbor;
+        }
+        if (APPLICATION_SMILE.equalsTypeAndSubtype(mediaType)) {
+            return smile;
+        }
+        return json;
+    }
+
+    /**
+     * Picks the format of a response from the Accept header of the request, by quality then specificity.
+     *
+     * @param accepted the media types of the Accept header, JSON being picked when empty
+     * @return the format of the response, null if the request accepts none of them
+     */
+    public MediaType negotiate(List<MediaType> accepted) {
+        if (accepted.isEmpty()) {
+            return MediaType.APPLICATION_JSON;
+        }
+        List<MediaType> sorted = new ArrayList<>(accepted);
+        MimeTypeUtils.sortBySpecificity(sorted);
+        for (MediaType type : sorted) {
+            if (type.getQualityValue() == 0) {
+                continue;
+            }
+            for (MediaType format : MEDIA_TYPES) {
+                if (type.isCompatibleWith(format)) {
+                    return format;
+                }
+            }
+        }
+        return null;
+    }
+}
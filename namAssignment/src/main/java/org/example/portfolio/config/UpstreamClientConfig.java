@@ -0,0 +1,84 @@
+package org.example.portfolio.config;
+
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.util.StringUtils;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+/**
+ * Configuration of the HTTP client used to call the remote portfolio API.
+ * All calls share one connection pool, whose size and lifecycle are configurable, so that
+ * connections are reused across the per-portfolio fan-out instead of being set up for every call.
+ * Pool utilisation is published to Micrometer under reactor.netty.connection.provider.*
+ * Responses are decoded from JSON, CBOR or Smile, whichever the remote API answers with; upstream.http.accept sets
+ * the Accept header of every call, e.g. to ask for Smile, and is left out when empty.
+ */
+@Configuration
+public class UpstreamClientConfig {
+
+    public static final String POOL_NAME = "portfolio-upstream";
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider upstreamConnectionProvider(
+            @Value("${upstream.pool.max-connections:500}") int maxConnections,
+            @Value("${upstream.pool.pending-acquire-max-count:1000}") int pendingAcquireMaxCount,
+            @Value("${upstream.pool.pending-acquire-timeout:5s}") Duration pendingAcquireTimeout,
+            @Value("${upstream.pool.max-idle-time:30s}") Duration maxIdleTime,
+            @Value("${upstream.pool.max-life-time:5m}") Duration maxLifeTime,
+            @Value("${upstream.pool.evict-in-background:30s}") Duration evictInBackground) {
+        return ConnectionProvider.builder(POOL_NAME)
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMaxCount)
+                .pendingAcquireTimeout(pendingAcquireTimeout)
+                .maxIdleTime(maxIdleTime)
+                .maxLifeTime(maxLifeTime)
+                .evictInBackground(evictInBackground)
+                .metrics(true)
+                .build();
+    }
+
+    @Bean
+    public HttpClient upstreamHttpClient(
+            ConnectionProvider upstreamConnectionProvider,
+            @Value("${upstream.http.keep-alive:true}") boolean keepAlive,
+            @Value("${upstream.http.h2c:false}") boolean h2c,
+            @Value("${upstream.http.connect-timeout:2s}") Duration connectTimeout) {
+        HttpClient httpClient = HttpClient.create(upstreamConnectionProvider)
+                .keepAlive(keepAlive)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis());
+        if (h2c) {
+            // prior-knowledge HTTP/2 over cleartext, falling back to HTTP/1.1
+            httpClient = httpClient.protocol(HttpProtocol.H2C, HttpProtocol.HTTP11);
+        }
+        return httpClient;
+    }
+
+    @Bean
+    public WebClient.Builder getWebClientBuilder(
+            HttpClient upstreamHttpClient,
+            JacksonFormats formats,
+            @Value("${upstream.http.max-in-memory-size:16MB}") DataSize maxInMemorySize,
+            @Value("${upstream.http.accept:}") String accept) {
+        WebClient.Builder builder = WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(upstreamHttpClient))
+                .codecs(codecs -> {
+                    // the default 256KB is exceeded by the holdings of large portfolios
+                    codecs.defaultCodecs().maxInMemorySize((int) maxInMemorySize.toBytes());
+                    CodecConfig.registerBinaryCodecs(codecs, formats);
+                });
+        if (StringUtils.hasText(accept)) {
+            builder.defaultHeader(HttpHeaders.ACCEPT, accept);
+        }
+        return builder;
+    }
+}
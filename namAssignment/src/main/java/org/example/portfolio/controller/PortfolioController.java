@@ -1,26 +1,51 @@
 package org.example.portfolio.controller;
 
+import org.example.portfolio.cluster.ClusterRing;
+import org.example.portfolio.cluster.PeerClient;
+import org.example.portfolio.metrics.PortfolioMetrics;
 import org.example.portfolio.model.Cash;
-import org.example.portfolio.model.Holding;
+import org.example.portfolio.model.CashFractionReport;
 import org.example.portfolio.model.Portfolio;
+import org.example.portfolio.model.PortfolioCashFraction;
+import org.example.portfolio.model.PortfolioHolding;
+import org.example.portfolio.model.PortfolioMatch;
+import org.example.portfolio.service.CashFractionView;
+import org.example.portfolio.service.DeadlineExceededException;
+import org.example.portfolio.service.ExposureAggregator;
+import org.example.portfolio.service.PerPortfolioExecutor;
+import org.example.portfolio.service.PortfolioFilter;
 import org.example.portfolio.service.PortfolioService;
+import org.example.portfolio.service.PortfolioStockIndex;
+import org.example.portfolio.store.CompactHoldings;
+import org.example.portfolio.valuation.Valuation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
 
 
 /**
@@ -28,13 +53,49 @@ import reactor.core.scheduler.Schedulers;
  * This class provides endpoints to retrieve
  *  1. List of portfolios that contain a given stock
  *  2. Cash as a fraction of full portfolio value for all portfolios as a single call
+ *  3. Portfolios containing each of a set of stocks, with one traversal of the holdings of every portfolio
+ *  4. Total exposure per stock and the largest holdings across portfolios
+ * The lookup of a single stock (1) and the cash fractions (2) are also available as streams (NDJSON or server-sent
+ * events) emitting each result as soon as it is computed.
+ * Every request is bounded by a deadline (see {@link RequestDeadlineFilter}): what is computed by then is returned,
+ * and the cash fraction report lists the portfolios that were missing or defaulted.
+ * Stock lookups and cash fractions are served from memory by the stock index and the cash fraction view
+ * while those are fresh, and computed from the remote API otherwise.
+ * The portfolios of a fan-out can be selected with the portfolios (names), prefix and includeDisabled parameters,
+ * applied to the portfolio list before any call for the portfolios left out. Disabled portfolios are left out unless
+ * includeDisabled is true.
+ * While they are served from memory, the cash fractions and single stock lookups are answered by
+ * {@link SerializedResponseFilter} with JSON serialised once per change of the data and tagged with an ETag.
+ * In cluster mode (see {@link ClusterRing}) the cash fractions are scattered to the instance owning each portfolio
+ * and gathered, the portfolios of an instance that does not answer being computed locally instead. The internal
+ * endpoint the instances call each other on only exists in cluster mode and only serves the portfolios this instance
+ * owns; it must be reachable by the peers only, e.g. blocked for other clients at the load balancer.
  */
 @RestController
 public class PortfolioController {
 
     private static final Logger log = LoggerFactory.getLogger(PortfolioController.class);
+    private static final int MAX_STOCK_IDS = 1000;
+    private static final int MAX_TOP_HOLDINGS = 1000;
+    private static final String PORTFOLIOS_DESCRIPTION = "Comma-separated portfolio names to select, all portfolios if absent";
+    private static final String PREFIX_DESCRIPTION = "Prefix of the names of the portfolios to select";
+    private static final String INCLUDE_DISABLED_DESCRIPTION = "Include disabled portfolios, left out by default";
     @Autowired
     private PortfolioService portfolioService;
+    @Autowired
+    private PortfolioStockIndex stockIndex;
+    @Autowired
+    private CashFractionView cashFractionView;
+    @Autowired
+    private ExposureAggregator exposureAggregator;
+    @Autowired
+    private PerPortfolioExecutor executor;
+    @Autowired
+    private PortfolioMetrics metrics;
+    @Autowired
+    private ClusterRing ring;
+    @Autowired
+    private PeerClient peerClient;
 
 
 
@@ -43,82 +104,482 @@ public class PortfolioController {
             description = "Returns list of portfolios containing stock")
     public Mono<List<String>> getPortfoliosByStock(
             @Parameter(description = "Stock symbol to search for", required = true)
-            @PathVariable String stockId) {
-        return portfolioService.getAllPortfolios()
-                .doOnSuccess(portfolios -> log.info("Retrieved {} portfolios", portfolios.size()))
-                .onErrorResume(error -> {
-                    log.error("Timeout or error occurred while retrieving portfolios, returning an empty list.");
-                    return Mono.just(Collections.emptyList());
-                })
-                .flatMapMany(Flux::fromIterable)
-                .flatMap(p -> portfolioService.getHoldings(p.getName())
-                        .subscribeOn(Schedulers.boundedElastic())
-                        .flatMapMany(Flux::fromIterable)
-                        .filter(h -> h.getStockId().equalsIgnoreCase(stockId))
-                        .take(1) //stop further processing as soon as a match is found
-                        .map(b -> p.getName()))
+            @PathVariable String stockId,
+            @Parameter(description = PORTFOLIOS_DESCRIPTION)
+            @RequestParam(value = "portfolios", required = false) List<String> portfolios,
+            @Parameter(description = PREFIX_DESCRIPTION)
+            @RequestParam(value = "prefix", required = false) String prefix,
+            @Parameter(description = INCLUDE_DISABLED_DESCRIPTION)
+            @RequestParam(value = "includeDisabled", defaultValue = "false") boolean includeDisabled) {
+        PortfolioFilter filter = selection(portfolios, prefix, includeDisabled);
+        // the index only holds enabled portfolios
+        if (filter.excludesDisabled() && stockIndex.isFresh()) {
+            return metrics.timeEndpoint("stock", Mono.just(filter.selectNames(stockIndex.lookup(stockId))));
+        }
+        // index is cold or stale, fall back to querying the holdings of every portfolio
+        return metrics.timeEndpoint("stock", findPortfoliosByStock("stock", stockId, filter)
                 .collectList()
                 .doOnError(error -> log.error("Error processing request for stockId: {}", stockId, error))
-                .onErrorReturn(Collections.emptyList());
+                .onErrorReturn(Collections.emptyList()));
+    }
+
+    @GetMapping("/portfolios/stocks")
+    @Operation(summary = "Get portfolio Names containing each of several stocks",
+            description = "Returns, for each stock, the list of portfolios containing it")
+    public Mono<Map<String, List<String>>> getPortfoliosByStocks(
+            @Parameter(description = "Comma-separated stock symbols to search for", required = true)
+            @RequestParam("ids") List<String> stockIds,
+            @Parameter(description = PORTFOLIOS_DESCRIPTION)
+            @RequestParam(value = "portfolios", required = false) List<String> portfolios,
+            @Parameter(description = PREFIX_DESCRIPTION)
+            @RequestParam(value = "prefix", required = false) String prefix,
+            @Parameter(description = INCLUDE_DISABLED_DESCRIPTION)
+            @RequestParam(value = "includeDisabled", defaultValue = "false") boolean includeDisabled) {
+        return portfoliosByStocks("stocks", stockIds, selection(portfolios, prefix, includeDisabled));
+    }
+
+    @PostMapping("/portfolios/stocks")
+    @Operation(summary = "Get portfolio Names containing each of several stocks",
+            description = "Takes a JSON array of stock symbols and returns, for each stock, the list of portfolios containing it")
+    public Mono<Map<String, List<String>>> postPortfoliosByStocks(
+            @RequestBody List<String> stockIds,
+            @Parameter(description = PORTFOLIOS_DESCRIPTION)
+            @RequestParam(value = "portfolios", required = false) List<String> portfolios,
+            @Parameter(description = PREFIX_DESCRIPTION)
+            @RequestParam(value = "prefix", required = false) String prefix,
+            @Parameter(description = INCLUDE_DISABLED_DESCRIPTION)
+            @RequestParam(value = "includeDisabled", defaultValue = "false") boolean includeDisabled) {
+        return portfoliosByStocks("stocks", stockIds, selection(portfolios, prefix, includeDisabled));
+    }
+
+    @GetMapping("/portfolios/exposure")
+    @Operation(summary = "Get the total value held in each stock across portfolios",
+            description = "Returns stock id and the sum of the value of its holdings in the selected portfolios")
+    public Mono<Map<String, Double>> getExposure(
+            @Parameter(description = "Comma-separated portfolio names to aggregate, all portfolios if absent")
+            @RequestParam(value = "portfolios", required = false) List<String> portfolios,
+            @Parameter(description = PREFIX_DESCRIPTION)
+            @RequestParam(value = "prefix", required = false) String prefix,
+            @Parameter(description = INCLUDE_DISABLED_DESCRIPTION)
+            @RequestParam(value = "includeDisabled", defaultValue = "false") boolean includeDisabled) {
+        return metrics.timeEndpoint("exposure", exposureAggregator.exposureByStock(
+                selectedPortfolios("exposure", selection(portfolios, prefix, includeDisabled))));
+    }
+
+    @GetMapping("/portfolios/top-holdings")
+    @Operation(summary = "Get the largest holdings by value across portfolios",
+            description = "Returns at most k holdings with their portfolio, largest first")
+    public Mono<List<PortfolioHolding>> getTopHoldings(
+            @Parameter(description = "Number of holdings to return")
+            @RequestParam(value = "k", defaultValue = "10") int k,
+            @Parameter(description = "Comma-separated portfolio names to aggregate, all portfolios if absent")
+            @RequestParam(value = "portfolios", required = false) List<String> portfolios,
+            @Parameter(description = PREFIX_DESCRIPTION)
+            @RequestParam(value = "prefix", required = false) String prefix,
+            @Parameter(description = INCLUDE_DISABLED_DESCRIPTION)
+            @RequestParam(value = "includeDisabled", defaultValue = "false") boolean includeDisabled) {
+        if (k < 1 || k > MAX_TOP_HOLDINGS) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "k must be between 1 and " + MAX_TOP_HOLDINGS));
+        }
+        return metrics.timeEndpoint("top_holdings", exposureAggregator.topHoldings(
+                selectedPortfolios("top_holdings", selection(portfolios, prefix, includeDisabled)), k));
+    }
+
+    @GetMapping(value = "/portfolios/stock/{stockId}/stream",
+            produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE})
+    @Operation(summary = "Stream portfolio Names containing a specific stock",
+            description = "Emits each portfolio containing stock as soon as it is found")
+    public Flux<PortfolioMatch> streamPortfoliosByStock(
+            @Parameter(description = "Stock symbol to search for", required = true)
+            @PathVariable String stockId,
+            @Parameter(description = PORTFOLIOS_DESCRIPTION)
+            @RequestParam(value = "portfolios", required = false) List<String> portfolios,
+            @Parameter(description = PREFIX_DESCRIPTION)
+            @RequestParam(value = "prefix", required = false) String prefix,
+            @Parameter(description = INCLUDE_DISABLED_DESCRIPTION)
+            @RequestParam(value = "includeDisabled", defaultValue = "false") boolean includeDisabled) {
+        PortfolioFilter filter = selection(portfolios, prefix, includeDisabled);
+        Flux<String> names = filter.excludesDisabled() && stockIndex.isFresh()
+                ? Flux.fromIterable(filter.selectNames(stockIndex.lookup(stockId)))
+                : findPortfoliosByStock("stock_stream", stockId, filter);
+        return metrics.timeEndpointMany("stock_stream", names
+                .map(name -> new PortfolioMatch(name, stockId))
+                .doOnError(error -> log.error("Error streaming request for stockId: {}", stockId, error))
+                .onErrorResume(error -> Flux.empty()));
     }
 
     @GetMapping("/portfolios/portfolio-cash-fraction")
     @Operation(summary = "Get cash as a fraction of full portfolio value for all portfolios",
             description = "Returns portfolio and its cash as a fraction of full portfolio value")
-    public Mono<Map<String, Double>> getCashFraction() {
+    public Mono<Map<String, Double>> getCashFraction(
+            @Parameter(description = PORTFOLIOS_DESCRIPTION)
+            @RequestParam(value = "portfolios", required = false) List<String> portfolios,
+            @Parameter(description = PREFIX_DESCRIPTION)
+            @RequestParam(value = "prefix", required = false) String prefix,
+            @Parameter(description = INCLUDE_DISABLED_DESCRIPTION)
+            @RequestParam(value = "includeDisabled", defaultValue = "false") boolean includeDisabled) {
+        PortfolioFilter filter = selection(portfolios, prefix, includeDisabled);
+        if (servesFromView(filter)) {
+            return metrics.timeEndpoint("cash_fraction",
+                    Mono.fromSupplier(() -> selectFractions(filter, cashFractionView.getFractions())));
+        }
+        return metrics.timeEndpoint("cash_fraction", cashFractions("cash_fraction", filter, Completeness.defaulting())
+                .reduceWith(HashMap::new, (map, f) -> {
+                    map.put(f.getPortfolio(), f.getFraction());
+                    return map; //combine the result into a single map
+                }));
+    }
+
+    @GetMapping("/portfolios/portfolio-cash-fraction/report")
+    @Operation(summary = "Get cash as a fraction of full portfolio value for all portfolios, with the completeness of the result",
+            description = "Returns the fractions computed within the deadline of the request (X-Request-Deadline-Ms header "
+                    + "or deadlineMs query parameter) and the portfolios that were missing or defaulted to 0.0")
+    public Mono<CashFractionReport> getCashFractionReport(
+            @Parameter(description = PORTFOLIOS_DESCRIPTION)
+            @RequestParam(value = "portfolios", required = false) List<String> portfolios,
+            @Parameter(description = PREFIX_DESCRIPTION)
+            @RequestParam(value = "prefix", required = false) String prefix,
+            @Parameter(description = INCLUDE_DISABLED_DESCRIPTION)
+            @RequestParam(value = "includeDisabled", defaultValue = "false") boolean includeDisabled) {
+        PortfolioFilter filter = selection(portfolios, prefix, includeDisabled);
+        if (servesFromView(filter)) {
+            return metrics.timeEndpoint("cash_fraction_report", Mono.fromSupplier(() -> new CashFractionReport(
+                    selectFractions(filter, cashFractionView.getFractions()), true, Collections.emptyList(), Collections.emptyList(),
+                    cashFractionView.getDataAge().toMillis())));
+        }
+        Completeness completeness = Completeness.reporting();
+        return metrics.timeEndpoint("cash_fraction_report", cashFractions("cash_fraction_report", filter, completeness)
+                .collectMap(PortfolioCashFraction::getPortfolio, PortfolioCashFraction::getFraction)
+                .map(fractions -> completeness.report(fractions)));
+    }
+
+    @GetMapping(value = "/portfolios/portfolio-cash-fraction/stream",
+            produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE})
+    @Operation(summary = "Stream cash as a fraction of full portfolio value for all portfolios",
+            description = "Emits each portfolio and its cash fraction as soon as it is computed")
+    public Flux<PortfolioCashFraction> streamCashFraction(
+            @Parameter(description = PORTFOLIOS_DESCRIPTION)
+            @RequestParam(value = "portfolios", required = false) List<String> portfolios,
+            @Parameter(description = PREFIX_DESCRIPTION)
+            @RequestParam(value = "prefix", required = false) String prefix,
+            @Parameter(description = INCLUDE_DISABLED_DESCRIPTION)
+            @RequestParam(value = "includeDisabled", defaultValue = "false") boolean includeDisabled) {
+        PortfolioFilter filter = selection(portfolios, prefix, includeDisabled);
+        Flux<PortfolioCashFraction> fractions = servesFromView(filter)
+                ? Flux.defer(() -> Flux.fromIterable(selectFractions(filter, cashFractionView.getFractions()).entrySet()))
+                        .map(e -> new PortfolioCashFraction(e.getKey(), e.getValue()))
+                : cashFractions("cash_fraction_stream", filter, Completeness.defaulting());
+        return metrics.timeEndpointMany("cash_fraction_stream", fractions);
+    }
+
+    @PostMapping(PeerClient.CASH_FRACTIONS_PATH)
+    @Operation(summary = "Get the cash fractions of the given portfolios as computed by this instance",
+            description = "Internal endpoint of cluster mode, called by the other instances for the portfolios this one "
+                    + "owns, and to be exposed to them only. Takes an array of portfolio names, all owned by this "
+                    + "instance, and never forwards them to another instance")
+    public Mono<CashFractionReport> getOwnedCashFractions(@RequestBody List<String> portfolios) {
+        if (!ring.isEnabled()) {
+            return Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND));
+        }
+        if (portfolios.size() > PeerClient.MAX_PORTFOLIOS_PER_CALL) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "At most " + PeerClient.MAX_PORTFOLIOS_PER_CALL + " portfolios are expected"));
+        }
+        for (String name : portfolios) {
+            if (!ring.owns(name)) {
+                return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        "Portfolio " + name + " is not owned by this instance"));
+            }
+        }
+        List<Portfolio> owned = new ArrayList<>(portfolios.size());
+        for (String name : portfolios) {
+            // selected by the calling instance, disabled portfolios included only if asked for there
+            owned.add(new Portfolio(name, false));
+        }
+        Completeness completeness = Completeness.reporting();
+        return metrics.timeEndpoint("cluster_cash_fraction", ownedCashFractions(owned, completeness)
+                .collectMap(PortfolioCashFraction::getPortfolio, PortfolioCashFraction::getFraction)
+                .map(fractions -> completeness.report(fractions)));
+    }
+
+    private Mono<Map<String, List<String>>> portfoliosByStocks(String endpoint, List<String> stockIds,
+                                                               PortfolioFilter filter) {
+        // stock ids as requested, by their case-insensitive form
+        Map<String, String> requested = new HashMap<>();
+        for (String stockId : stockIds) {
+            if (!stockId.isBlank()) {
+                requested.putIfAbsent(stockId.trim().toUpperCase(Locale.ROOT), stockId.trim());
+            }
+        }
+        if (requested.isEmpty() || requested.size() > MAX_STOCK_IDS) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Between 1 and " + MAX_STOCK_IDS + " stock ids are expected"));
+        }
+        if (filter.excludesDisabled() && stockIndex.isFresh()) {
+            return metrics.timeEndpoint(endpoint, Mono.fromSupplier(() -> {
+                Map<String, List<String>> result = new HashMap<>();
+                requested.values().forEach(stockId -> result.put(stockId, filter.selectNames(stockIndex.lookup(stockId))));
+                return result;
+            }));
+        }
+        return metrics.timeEndpoint(endpoint, findPortfoliosByStocks(endpoint, requested, filter));
+    }
+
+    /* one traversal of the holdings of each portfolio, testing every holding against the requested set */
+    private Mono<Map<String, List<String>>> findPortfoliosByStocks(String endpoint, Map<String, String> requested,
+                                                                   PortfolioFilter filter) {
+        return Mono.defer(() -> {
+            Map<String, Set<String>> matches = new ConcurrentHashMap<>();
+            return selectedPortfolios(endpoint, filter)
+                    .flatMapMany(Flux::fromIterable)
+                    .flatMap(p -> executor.run(() -> portfolioService.getCompactHoldings(p.getName()))
+                            .doOnNext(holdings -> {
+                                for (int i = 0, n = holdings.size(); i < n; i++) {
+                                    String stockId = requested.get(holdings.stockIdAt(i).toUpperCase(Locale.ROOT));
+                                    if (stockId != null) {
+                                        matches.computeIfAbsent(stockId, k -> ConcurrentHashMap.newKeySet()).add(p.getName());
+                                    }
+                                }
+                            })
+                            .onErrorResume(error -> {
+                                log.warn("Holdings of portfolio {} could not be searched: {}", p.getName(), error.getMessage());
+                                return Mono.empty();
+                            }))
+                    .then(Mono.fromSupplier(() -> {
+                        Map<String, List<String>> result = new HashMap<>();
+                        for (String stockId : requested.values()) {
+                            List<String> names = new ArrayList<>(matches.getOrDefault(stockId, Collections.emptySet()));
+                            Collections.sort(names);
+                            result.put(stockId, names);
+                        }
+                        return result;
+                    }));
+        });
+    }
+
+    private Flux<String> findPortfoliosByStock(String endpoint, String stockId, PortfolioFilter filter) {
         return portfolioService.getAllPortfolios()
-                .doOnSuccess(portfolios -> log.info("Retrieved {} portfolios for cash fraction calculation ", portfolios.size()))
+                .map(portfolios -> select(endpoint, filter, portfolios))
+                .doOnSuccess(portfolios -> {
+                    log.info("Retrieved {} portfolios", portfolios.size());
+                    metrics.recordFanOut(endpoint, portfolios.size());
+                })
                 .onErrorResume(error -> {
                     log.error("Timeout or error occurred while retrieving portfolios, returning an empty list.");
                     return Mono.just(Collections.emptyList());
                 })
                 .flatMapMany(Flux::fromIterable)
+                .flatMap(p -> executor.runMany(() -> portfolioService.streamHoldings(p.getName())
+                                .filter(h -> h.getStockId().equalsIgnoreCase(stockId))
+                                .take(1)) //cancel the download of the holdings as soon as a match is found
+                        .map(b -> p.getName())
+                        // a portfolio that cannot be searched in time does not discard the matches found so far
+                        .onErrorResume(error -> {
+                            log.warn("Holdings of portfolio {} could not be searched: {}", p.getName(), error.getMessage());
+                            return Flux.empty();
+                        }));
+    }
+
+    private Flux<PortfolioCashFraction> cashFractions(String endpoint, PortfolioFilter filter, Completeness completeness) {
+        return portfolioService.getAllPortfolios()
+                .map(portfolios -> select(endpoint, filter, portfolios))
+                .doOnSuccess(portfolios -> {
+                    log.info("Retrieved {} portfolios for cash fraction calculation ", portfolios.size());
+                    metrics.recordFanOut(endpoint, portfolios.size());
+                })
+                .onErrorResume(error -> {
+                    log.error("Timeout or error occurred while retrieving portfolios, returning an empty list.");
+                    completeness.portfoliosMissing = true;
+                    return Mono.just(Collections.emptyList());
+                })
+                .flatMapMany(portfolios -> ring.isEnabled()
+                        ? scatterCashFractions(portfolios, completeness)
+                        : localCashFractions(portfolios, completeness));
+    }
+
+    /* each slice is computed by the instance owning it, or here when its owner is down or fails to answer */
+    private Flux<PortfolioCashFraction> scatterCashFractions(List<Portfolio> portfolios, Completeness completeness) {
+        return Flux.fromIterable(ring.partition(portfolios, Portfolio::getName).entrySet())
+                .flatMap(slice -> {
+                    String owner = slice.getKey();
+                    List<Portfolio> owned = slice.getValue();
+                    if (ring.isSelf(owner)) {
+                        return ownedCashFractions(owned, completeness);
+                    }
+                    if (!peerClient.isAvailable(owner)) {
+                        return localCashFractions(owned, completeness);
+                    }
+                    List<List<Portfolio>> calls = new ArrayList<>();
+                    for (int from = 0; from < owned.size(); from += PeerClient.MAX_PORTFOLIOS_PER_CALL) {
+                        calls.add(owned.subList(from, Math.min(owned.size(), from + PeerClient.MAX_PORTFOLIOS_PER_CALL)));
+                    }
+                    return Flux.fromIterable(calls).flatMap(call -> peerCashFractions(owner, call, completeness));
+                });
+    }
+
+    private Flux<PortfolioCashFraction> peerCashFractions(String owner, List<Portfolio> owned, Completeness completeness) {
+        List<String> names = new ArrayList<>(owned.size());
+        owned.forEach(p -> names.add(p.getName()));
+        return peerClient.cashFractions(owner, names)
+                .flatMapMany(report -> Flux.fromIterable(completeness.merge(report).entrySet())
+                        .map(e -> new PortfolioCashFraction(e.getKey(), e.getValue())))
+                .onErrorResume(error -> {
+                    log.warn("Peer {} failed to compute the cash fractions of {} portfolios, computing them locally: {}",
+                            owner, owned.size(), error.getMessage());
+                    return localCashFractions(owned, completeness);
+                });
+    }
+
+    /* the view of this instance holds the enabled portfolios it owns, the others are computed on demand */
+    private Flux<PortfolioCashFraction> ownedCashFractions(List<Portfolio> owned, Completeness completeness) {
+        if (!cashFractionView.isFresh()) {
+            return localCashFractions(owned, completeness);
+        }
+        Map<String, Double> fractions = cashFractionView.getFractions();
+        List<PortfolioCashFraction> fromView = new ArrayList<>(owned.size());
+        List<Portfolio> notInView = new ArrayList<>();
+        for (Portfolio p : owned) {
+            Double fraction = fractions.get(p.getName());
+            if (fraction != null) {
+                fromView.add(new PortfolioCashFraction(p.getName(), fraction));
+            } else {
+                notInView.add(p);
+            }
+        }
+        return Flux.fromIterable(fromView).concatWith(localCashFractions(notInView, completeness));
+    }
+
+    private Flux<PortfolioCashFraction> localCashFractions(List<Portfolio> portfolios, Completeness completeness) {
+        return Flux.fromIterable(portfolios)
                 .flatMap(p -> {
-                    return calculateCashFraction(p)
+                    return executor.run(() -> calculateCashFraction(p))
+                            // only a result reporting its completeness leaves out the portfolios past the deadline
+                            .onErrorResume(e -> e instanceof DeadlineExceededException && completeness.reportsMissing, e -> {
+                                completeness.missing.add(p.getName());
+                                return Mono.empty();
+                            })
                             .onErrorResume( e-> {
                                 log.error("Error processing cash-fraction for portfolio:" + p.getName(), e);
-                                Map<String,Double> result = new HashMap<>();
-                                result.put(p.getName(), 0.0);
-                                return Mono.just(result);
+                                completeness.defaulted.add(p.getName());
+                                return Mono.just(new PortfolioCashFraction(p.getName(), 0.0));
                             });
-                })
-                .reduce(new HashMap<>(), (map1, map2) -> {
-                    map1.putAll(map2);
-                    return map1; //combine the result into a single map
                 });
     }
 
-    private Mono<Map<String, Double>> calculateCashFraction(Portfolio p) {
-        Mono<Cash> cashMono = portfolioService.getCash(p.getName())
-                .subscribeOn(Schedulers.boundedElastic());
+    /* the view only holds enabled portfolios, and in cluster mode only those this instance owns */
+    private boolean servesFromView(PortfolioFilter filter) {
+        return !ring.isEnabled() && filter.excludesDisabled() && cashFractionView.isFresh();
+    }
+
+    private static PortfolioFilter selection(List<String> portfolios, String prefix, boolean includeDisabled) {
+        return PortfolioFilter.of(portfolios, prefix, !includeDisabled);
+    }
+
+    /* the portfolios a fan-out goes to, none when the portfolio list cannot be retrieved */
+    private Mono<List<Portfolio>> selectedPortfolios(String endpoint, PortfolioFilter filter) {
+        return portfolioService.getAllPortfolios()
+                .map(portfolios -> select(endpoint, filter, portfolios))
+                .doOnSuccess(portfolios -> metrics.recordFanOut(endpoint, portfolios.size()))
+                .onErrorResume(error -> {
+                    log.error("Timeout or error occurred while retrieving portfolios, returning an empty list.");
+                    return Mono.just(Collections.emptyList());
+                });
+    }
+
+    /* applied to the portfolio list, so that no call is made for the portfolios left out */
+    private List<Portfolio> select(String endpoint, PortfolioFilter filter, List<Portfolio> portfolios) {
+        List<Portfolio> selected = new ArrayList<>(portfolios.size());
+        Map<String, Integer> dropped = new HashMap<>();
+        for (Portfolio p : portfolios) {
+            String reason = filter.reasonToDrop(p);
+            if (reason == null) {
+                selected.add(p);
+            } else {
+                dropped.merge(reason, 1, Integer::sum);
+            }
+        }
+        dropped.forEach((reason, count) -> metrics.recordDropped(endpoint, reason, count));
+        return selected;
+    }
+
+    private static Map<String, Double> selectFractions(PortfolioFilter filter, Map<String, Double> fractions) {
+        if (!filter.selectsAllNames()) {
+            fractions.keySet().removeIf(name -> !filter.testName(name));
+        }
+        return fractions;
+    }
+
+    private Mono<PortfolioCashFraction> calculateCashFraction(Portfolio p) {
+        // calls are non-blocking, concurrency towards the remote API is bounded by the service
+        Mono<Cash> cashMono = portfolioService.getCash(p.getName());
 
         return cashMono.flatMap(cash -> {
-            double cashValue = cash.getValue() != null ? cash.getValue() : 0.0;
+            long cashMicros = Valuation.cashMicros(cash);
 
             // Only fetch holdings if cashValue is greater than zero to reduce api call time
-            if (cashValue > 0) {
-                Mono<List<Holding>> holdingsMono = portfolioService.getHoldings(p.getName())
-                        .subscribeOn(Schedulers.boundedElastic());
-
-                return holdingsMono.map(holdings -> {
-                    double holdingsValue = holdings.stream()
-                            .mapToDouble(Holding::getValue)
-                            .sum();
-                    double totalValue = cashValue + holdingsValue;
-                    double fraction = totalValue > 0 ? cashValue / totalValue : 0.0;
-
-                    Map<String, Double> result = new HashMap<>();
-                    result.put(p.getName(), fraction);
-                    return result;
-                });
+            if (cashMicros > 0) {
+                Mono<CompactHoldings> holdingsMono = portfolioService.getCompactHoldings(p.getName());
+
+                // fixed-point sum over the cached columns, the same whatever the order the holdings were received in
+                return holdingsMono.map(holdings -> new PortfolioCashFraction(p.getName(),
+                        Valuation.fraction(cashMicros, holdings.totalValueMicros())));
             } else {
                 // If there's no cash, return default value
-                Map<String, Double> result = new HashMap<>();
-                result.put(p.getName(), 0.0);
-                return Mono.just(result);
+                return Mono.just(new PortfolioCashFraction(p.getName(), 0.0));
             }
         });
     }
 
+    /*
+     * portfolios left out of a cash fraction result, collected while the result is computed. A result without
+     * completeness metadata defaults the portfolios past the deadline to 0.0 instead, like any other failed portfolio
+     */
+    private static final class Completeness {
+
+        private final boolean reportsMissing;
+        private final Queue<String> missing = new ConcurrentLinkedQueue<>();
+        private final Queue<String> defaulted = new ConcurrentLinkedQueue<>();
+        private volatile boolean portfoliosMissing;
+
+        private Completeness(boolean reportsMissing) {
+            this.reportsMissing = reportsMissing;
+        }
 
+        static Completeness reporting() {
+            return new Completeness(true);
+        }
+
+        static Completeness defaulting() {
+            return new Completeness(false);
+        }
+
+        /*
+         * folds in the portfolios another instance of the cluster left out of its part of the result
+         * @return the fractions of that part, the missing portfolios defaulted to 0.0 if they are not reported
+         */
+        Map<String, Double> merge(CashFractionReport report) {
+            if (report.getDefaulted() != null) {
+                defaulted.addAll(report.getDefaulted());
+            }
+            if (report.getMissing() == null || report.getMissing().isEmpty()) {
+                return report.getFractions();
+            }
+            if (reportsMissing) {
+                missing.addAll(report.getMissing());
+                return report.getFractions();
+            }
+            Map<String, Double> fractions = new HashMap<>(report.getFractions());
+            for (String name : report.getMissing()) {
+                defaulted.add(name);
+                fractions.put(name, 0.0);
+            }
+            return fractions;
+        }
+
+        CashFractionReport report(Map<String, Double> fractions) {
+            boolean complete = !portfoliosMissing && missing.isEmpty();
+            return new CashFractionReport(fractions, complete, new ArrayList<>(missing), new ArrayList<>(defaulted));
+        }
+    }
 }
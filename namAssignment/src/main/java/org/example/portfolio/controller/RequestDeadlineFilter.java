@@ -0,0 +1,69 @@
+package org.example.portfolio.controller;
+
+import org.example.portfolio.service.RequestDeadline;
+import org.example.portfolio.service.UpstreamPriority;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * Starts the deadline of every request when it arrives and puts it in the Reactor context of the request.
+ * The budget is taken from the X-Request-Deadline-Ms header or the deadlineMs query parameter, in milliseconds,
+ * and defaults to portfolio.request.deadline.default. It is capped by portfolio.request.deadline.max.
+ * Calls to the remote API made on behalf of the request are marked as interactive, ahead of background traffic.
+ */
+@Component
+public class RequestDeadlineFilter implements WebFilter {
+
+    public static final String DEADLINE_HEADER = "X-Request-Deadline-Ms";
+    public static final String DEADLINE_PARAM = "deadlineMs";
+
+    private final Duration defaultDeadline;
+    private final Duration maxDeadline;
+
+    @Autowired
+    public RequestDeadlineFilter(@Value("${portfolio.request.deadline.default:5s}") Duration defaultDeadline,
+                                 @Value("${portfolio.request.deadline.max:30s}") Duration maxDeadline) {
+        this.defaultDeadline = defaultDeadline;
+        this.maxDeadline = maxDeadline;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        Duration budget;
+        try {
+            budget = budgetOf(exchange.getRequest());
+        } catch (NumberFormatException e) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "The deadline must be a number of milliseconds", e));
+        }
+        RequestDeadline deadline = RequestDeadline.after(budget);
+        return chain.filter(exchange)
+                .contextWrite(context -> UpstreamPriority.INTERACTIVE.attachTo(deadline.attachTo(context)));
+    }
+
+    private Duration budgetOf(ServerHttpRequest request) {
+        String value = request.getHeaders().getFirst(DEADLINE_HEADER);
+        if (value == null) {
+            value = request.getQueryParams().getFirst(DEADLINE_PARAM);
+        }
+        if (value == null) {
+            return defaultDeadline;
+        }
+        long millis = Long.parseLong(value.trim());
+        if (millis <= 0) {
+            throw new NumberFormatException("Deadline must be positive: " + millis);
+        }
+        Duration requested = Duration.ofMillis(millis);
+        return requested.compareTo(maxDeadline) > 0 ? maxDeadline : requested;
+    }
+}
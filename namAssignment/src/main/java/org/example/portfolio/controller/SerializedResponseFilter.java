@@ -0,0 +1,147 @@
+package org.example.portfolio.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.example.portfolio.cluster.ClusterRing;
+import org.example.portfolio.config.JacksonFormats;
+import org.example.portfolio.metrics.PortfolioMetrics;
+import org.example.portfolio.service.CashFractionView;
+import org.example.portfolio.service.PortfolioStockIndex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.UriUtils;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Answers GET /portfolios/portfolio-cash-fraction and GET /portfolios/stock/{stockId} from bytes serialised
+ * once per version of the data they are read from and per format (JSON, CBOR or Smile, negotiated from the Accept
+ * header), while the cash fraction view or the stock index is fresh.
+ * Each response carries an ETag computed from its bytes, and a request whose If-None-Match matches it gets a 304
+ * without a body. A cached response is replaced as soon as the version of its source changes.
+ * Requests that the view or index cannot serve, that select portfolios with query parameters, or that accept none
+ * of the formats, go through to the controller, and so do all cash fraction requests in cluster mode, the view
+ * then holding the portfolios of this instance only.
+ */
+@Component
+public class SerializedResponseFilter implements WebFilter {
+
+    static final String CASH_FRACTION_PATH = "/portfolios/portfolio-cash-fraction";
+    static final String STOCK_PATH_PREFIX = "/portfolios/stock/";
+    static final Set<String> SELECTION_PARAMS = Set.of("portfolios", "prefix", "includeDisabled");
+
+    private final CashFractionView cashFractionView;
+    private final PortfolioStockIndex stockIndex;
+    private final ClusterRing ring;
+    private final JacksonFormats formats;
+    private final PortfolioMetrics metrics;
+    private final boolean enabled;
+    private final Cache<String, SerializedResponse> responses;
+
+    @Autowired
+    public SerializedResponseFilter(CashFractionView cashFractionView, PortfolioStockIndex stockIndex, ClusterRing ring,
+                                    JacksonFormats formats, PortfolioMetrics metrics, MeterRegistry meterRegistry,
+                                    @Value("${portfolio.response-cache.enabled:true}") boolean enabled,
+                                    @Value("${portfolio.response-cache.max-entries:10000}") long maxEntries) {
+        this.cashFractionView = cashFractionView;
+        this.stockIndex = stockIndex;
+        this.ring = ring;
+        this.formats = formats;
+        this.metrics = metrics;
+        this.enabled = enabled;
+        this.responses = Caffeine.newBuilder().maximumSize(maxEntries).recordStats().build();
+        if (meterRegistry != null) {
+            CaffeineCacheMetrics.monitor(meterRegistry, responses, "portfolio.responses");
+        }
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        if (!enabled || request.getMethod() != HttpMethod.GET
+                || request.getQueryParams().keySet().stream().anyMatch(SELECTION_PARAMS::contains)) {
+            return chain.filter(exchange);
+        }
+        MediaType format = formats.negotiate(request.getHeaders().getAccept());
+        if (format == null) {
+            return chain.filter(exchange);
+        }
+        String path = request.getPath().pathWithinApplication().value();
+        if (path.equals(CASH_FRACTION_PATH) && !ring.isEnabled() && cashFractionView.isFresh()) {
+            return metrics.timeEndpoint("cash_fraction", Mono.defer(() -> write(exchange, format,
+                    response(format, "cash_fraction", cashFractionView.getVersion(), cashFractionView::getFractions))));
+        }
+        if (path.startsWith(STOCK_PATH_PREFIX) && path.indexOf('/', STOCK_PATH_PREFIX.length()) < 0
+                && path.length() > STOCK_PATH_PREFIX.length() && stockIndex.isFresh()) {
+            String stockId = UriUtils.decode(path.substring(STOCK_PATH_PREFIX.length()), StandardCharsets.UTF_8);
+            // lookups are case-insensitive, so are their cached responses
+            String key = "stock/" + stockId.toUpperCase(Locale.ROOT);
+            return metrics.timeEndpoint("stock", Mono.defer(() -> write(exchange, format,
+                    response(format, key, stockIndex.getVersion(), () -> stockIndex.lookup(stockId)))));
+        }
+        return chain.filter(exchange);
+    }
+
+    /* the version is read before the data, so bytes are never cached under a version newer than their content */
+    private SerializedResponse response(MediaType format, String key, long version, Supplier<Object> body) {
+        String formatKey = format.getSubtype() + ":" + key;
+        SerializedResponse cached = responses.getIfPresent(formatKey);
+        if (cached != null && cached.version == version) {
+            return cached;
+        }
+        SerializedResponse serialized = new SerializedResponse(version, serialize(format, body.get()));
+        responses.put(formatKey, serialized);
+        return serialized;
+    }
+
+    private byte[] serialize(MediaType format, Object body) {
+        try {
+            return formats.mapperFor(format).writeValueAsBytes(body);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialise response", e);
+        }
+    }
+
+    private static Mono<Void> write(ServerWebExchange exchange, MediaType format, SerializedResponse serialized) {
+        ServerHttpResponse response = exchange.getResponse();
+        // the same URL has a body per format, caches must not serve one for another
+        response.getHeaders().setVary(List.of(HttpHeaders.ACCEPT));
+        if (exchange.checkNotModified(serialized.etag)) {
+            return response.setComplete();
+        }
+        response.getHeaders().setContentType(format);
+        response.getHeaders().setContentLength(serialized.body.length);
+        return response.writeWith(Mono.fromSupplier(() -> response.bufferFactory().wrap(serialized.body)));
+    }
+
+    private static final class SerializedResponse {
+
+        private final long version;
+        private final byte[] body;
+        private final String etag;
+
+        SerializedResponse(long version, byte[] body) {
+            this.version = version;
+            this.body = body;
+            this.etag = "\"" + DigestUtils.md5DigestAsHex(body) + "\"";
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package org.example.portfolio.controller;
+
+import org.example.portfolio.service.PortfolioService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/**
+ * Marks responses with the X-Data-Stale header while the service still serves values restored from an on-disk
+ * snapshot at startup, i.e. until the background refresh of the snapshot has caught up.
+ * It runs first, so that responses answered by other filters are marked too.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class SnapshotStalenessFilter implements WebFilter {
+
+    public static final String STALE_HEADER = "X-Data-Stale";
+
+    private final PortfolioService portfolioService;
+
+    @Autowired
+    public SnapshotStalenessFilter(PortfolioService portfolioService) {
+        this.portfolioService = portfolioService;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        exchange.getResponse().beforeCommit(() -> {
+            if (portfolioService.isServingRestored()) {
+                exchange.getResponse().getHeaders().set(STALE_HEADER, "snapshot");
+            }
+            return Mono.empty();
+        });
+        return chain.filter(exchange);
+    }
+}
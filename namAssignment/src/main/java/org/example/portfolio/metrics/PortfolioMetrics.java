@@ -0,0 +1,172 @@
+package org.example.portfolio.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.example.portfolio.service.PortfolioServiceException;
+import org.example.portfolio.service.UpstreamThrottledException;
+import org.example.portfolio.service.UpstreamUnavailableException;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Micrometer instrumentation of the calls to the remote API and of the controller endpoints.
+ *  - portfolio.upstream.requests: latency of each remote API call, tagged by endpoint and outcome
+ *    (success, timeout, client_error, server_error, error, cancelled, unavailable when a circuit breaker rejects it,
+ *    throttled when the rate limiter sheds it)
+ *  - portfolio.fanout.width: number of portfolios fanned out to per request, tagged by controller endpoint
+ *  - portfolio.fanout.dropped: portfolios left out of a fan-out by its filter, tagged by controller endpoint and reason
+ *    (disabled, name, prefix)
+ *  - portfolio.endpoint.requests: end-to-end latency of each controller endpoint
+ * Tags only ever carry endpoint names, outcomes and reasons, never portfolio names, so cardinality stays bounded.
+ */
+@Component
+public class PortfolioMetrics {
+
+    public static final String OUTCOME_SUCCESS = "success";
+    public static final String OUTCOME_TIMEOUT = "timeout";
+    public static final String OUTCOME_CLIENT_ERROR = "client_error";
+    public static final String OUTCOME_SERVER_ERROR = "server_error";
+    public static final String OUTCOME_ERROR = "error";
+    public static final String OUTCOME_CANCELLED = "cancelled";
+    public static final String OUTCOME_UNAVAILABLE = "unavailable";
+    public static final String OUTCOME_THROTTLED = "throttled";
+
+    private static final double[] PERCENTILES = {0.5, 0.95, 0.99};
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<String, DistributionSummary> fanOutWidths = new ConcurrentHashMap<>();
+    private final Map<String, Counter> droppedCounters = new ConcurrentHashMap<>();
+
+    public PortfolioMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Times a call to the remote API.
+     *
+     * @param endpoint the remote endpoint name, e.g. holdings
+     * @param call     the call
+     * @return the call, recording its latency and outcome when it terminates
+     */
+    public <T> Mono<T> timeUpstream(String endpoint, Mono<T> call) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return call
+                    .doOnSuccess(value -> recordUpstream(endpoint, OUTCOME_SUCCESS, start))
+                    .doOnError(error -> recordUpstream(endpoint, outcomeOf(error), start))
+                    .doOnCancel(() -> recordUpstream(endpoint, OUTCOME_CANCELLED, start));
+        });
+    }
+
+    /**
+     * Times a streaming call to the remote API, until its last element or its cancellation.
+     */
+    public <T> Flux<T> timeUpstreamMany(String endpoint, Flux<T> call) {
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            return call
+                    .doOnComplete(() -> recordUpstream(endpoint, OUTCOME_SUCCESS, start))
+                    .doOnError(error -> recordUpstream(endpoint, outcomeOf(error), start))
+                    .doOnCancel(() -> recordUpstream(endpoint, OUTCOME_CANCELLED, start));
+        });
+    }
+
+    /**
+     * Times a controller endpoint from subscription to termination.
+     */
+    public <T> Mono<T> timeEndpoint(String endpoint, Mono<T> response) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return response.doFinally(signal -> record("portfolio.endpoint.requests", endpoint, outcomeOf(signal), start));
+        });
+    }
+
+    public <T> Flux<T> timeEndpointMany(String endpoint, Flux<T> response) {
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            return response.doFinally(signal -> record("portfolio.endpoint.requests", endpoint, outcomeOf(signal), start));
+        });
+    }
+
+    /**
+     * Records the number of portfolios a controller endpoint fans out to.
+     */
+    public void recordFanOut(String endpoint, int width) {
+        fanOutWidths.computeIfAbsent(endpoint, key -> DistributionSummary.builder("portfolio.fanout.width")
+                        .description("Number of portfolios fanned out to per request")
+                        .tag("endpoint", key)
+                        .publishPercentiles(PERCENTILES)
+                        .register(meterRegistry))
+                .record(width);
+    }
+
+    /**
+     * Records portfolios left out of the fan-out of a controller endpoint before any call for them.
+     */
+    public void recordDropped(String endpoint, String reason, int count) {
+        droppedCounters.computeIfAbsent(endpoint + '|' + reason, key -> Counter.builder("portfolio.fanout.dropped")
+                        .description("Portfolios left out of a fan-out by its filter")
+                        .tag("endpoint", endpoint)
+                        .tag("reason", reason)
+                        .register(meterRegistry))
+                .increment(count);
+    }
+
+    public static String outcomeOf(Throwable error) {
+        if (error instanceof TimeoutException) {
+            return OUTCOME_TIMEOUT;
+        }
+        if (error instanceof UpstreamUnavailableException) {
+            return OUTCOME_UNAVAILABLE;
+        }
+        if (error instanceof UpstreamThrottledException) {
+            return OUTCOME_THROTTLED;
+        }
+        if (error instanceof PortfolioServiceException) {
+            return OUTCOME_CLIENT_ERROR;
+        }
+        if (error instanceof WebClientResponseException
+                && ((WebClientResponseException) error).getStatusCode().is5xxServerError()) {
+            return OUTCOME_SERVER_ERROR;
+        }
+        return OUTCOME_ERROR;
+    }
+
+    private static String outcomeOf(SignalType signal) {
+        switch (signal) {
+            case ON_COMPLETE:
+                return OUTCOME_SUCCESS;
+            case CANCEL:
+                return OUTCOME_CANCELLED;
+            default:
+                return OUTCOME_ERROR;
+        }
+    }
+
+    private void recordUpstream(String endpoint, String outcome, long start) {
+        record("portfolio.upstream.requests", endpoint, outcome, start);
+    }
+
+    private void record(String name, String endpoint, String outcome, long start) {
+        timers.computeIfAbsent(name + '|' + endpoint + '|' + outcome, key -> Timer.builder(name)
+                        .tag("endpoint", endpoint)
+                        .tag("outcome", outcome)
+                        .publishPercentiles(PERCENTILES)
+                        .publishPercentileHistogram()
+                        .maximumExpectedValue(Duration.ofSeconds(30))
+                        .register(meterRegistry))
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+}
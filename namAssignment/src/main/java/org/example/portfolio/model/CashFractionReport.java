@@ -0,0 +1,94 @@
+package org.example.portfolio.model;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Cash fractions computed within the deadline of the request, with the completeness of the result:
+ * missing lists the portfolios not computed in time and defaulted the ones reported as 0.0 after an error.
+ * complete is false whenever a portfolio is missing, including when the list of portfolios itself was not retrieved.
+ * dataAgeMs is the age of the oldest fraction when served from the materialized view, 0 when computed on demand.
+ */
+public class CashFractionReport {
+
+    private Map<String, Double> fractions;
+    private boolean complete;
+    private List<String> missing;
+    private List<String> defaulted;
+    private long dataAgeMs;
+
+    public CashFractionReport() {
+    }
+
+    public CashFractionReport(Map<String, Double> fractions, boolean complete, List<String> missing, List<String> defaulted) {
+        this(fractions, complete, missing, defaulted, 0);
+    }
+
+    public CashFractionReport(Map<String, Double> fractions, boolean complete, List<String> missing, List<String> defaulted,
+                              long dataAgeMs) {
+        this.fractions = fractions;
+        this.complete = complete;
+        this.missing = missing;
+        this.defaulted = defaulted;
+        this.dataAgeMs = dataAgeMs;
+    }
+
+    public Map<String, Double> getFractions() {
+        return fractions;
+    }
+
+    public void setFractions(Map<String, Double> fractions) {
+        this.fractions = fractions;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public void setComplete(boolean complete) {
+        this.complete = complete;
+    }
+
+    public List<String> getMissing() {
+        return missing;
+    }
+
+    public void setMissing(List<String> missing) {
+        this.missing = missing;
+    }
+
+    public List<String> getDefaulted() {
+        return defaulted;
+    }
+
+    public void setDefaulted(List<String> defaulted) {
+        this.defaulted = defaulted;
+    }
+
+    public long getDataAgeMs() {
+        return dataAgeMs;
+    }
+
+    public void setDataAgeMs(long dataAgeMs) {
+        this.dataAgeMs = dataAgeMs;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if (!(obj instanceof CashFractionReport)) {
+            return false;
+        }
+
+        CashFractionReport r = (CashFractionReport) obj;
+        return this.complete == r.complete
+                && this.dataAgeMs == r.dataAgeMs
+                && Objects.equals(this.fractions, r.fractions)
+                && Objects.equals(this.missing, r.missing)
+                && Objects.equals(this.defaulted, r.defaulted);
+    }
+}
@@ -31,6 +31,6 @@ public class Portfolio {
     }
 
     public void setDisabled(boolean isDisabled) {
-        isDisabled = isDisabled;
+        this.isDisabled = isDisabled;
     }
 }
@@ -0,0 +1,46 @@
+package org.example.portfolio.model;
+
+public class PortfolioCashFraction {
+
+    private String portfolio;
+    private double fraction;
+
+    public PortfolioCashFraction() {
+    }
+
+    public PortfolioCashFraction(String portfolio, double fraction) {
+        this.portfolio = portfolio;
+        this.fraction = fraction;
+    }
+
+    public String getPortfolio() {
+        return portfolio;
+    }
+
+    public void setPortfolio(String portfolio) {
+        this.portfolio = portfolio;
+    }
+
+    public double getFraction() {
+        return fraction;
+    }
+
+    public void setFraction(double fraction) {
+        this.fraction = fraction;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if (!(obj instanceof PortfolioCashFraction)) {
+            return false;
+        }
+
+        PortfolioCashFraction f = (PortfolioCashFraction) obj;
+        return this.portfolio.equals(f.portfolio)
+                && (Double.compare(this.fraction, f.fraction) == 0);
+    }
+}
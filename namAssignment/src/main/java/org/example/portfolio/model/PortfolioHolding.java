@@ -0,0 +1,60 @@
+package org.example.portfolio.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class PortfolioHolding {
+
+    private String portfolio;
+    @JsonProperty("stock_id")
+    private String stockId;
+    private double value;
+
+    public PortfolioHolding() {
+    }
+
+    public PortfolioHolding(String portfolio, String stockId, double value) {
+        this.portfolio = portfolio;
+        this.stockId = stockId;
+        this.value = value;
+    }
+
+    public String getPortfolio() {
+        return portfolio;
+    }
+
+    public void setPortfolio(String portfolio) {
+        this.portfolio = portfolio;
+    }
+
+    public String getStockId() {
+        return stockId;
+    }
+
+    public void setStockId(String stockId) {
+        this.stockId = stockId;
+    }
+
+    public double getValue() {
+        return value;
+    }
+
+    public void setValue(double value) {
+        this.value = value;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if (!(obj instanceof PortfolioHolding)) {
+            return false;
+        }
+
+        PortfolioHolding h = (PortfolioHolding) obj;
+        return this.portfolio.equals(h.portfolio)
+                && this.stockId.equals(h.stockId)
+                && (Double.compare(this.value, h.value) == 0);
+    }
+}
@@ -0,0 +1,50 @@
+package org.example.portfolio.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class PortfolioMatch {
+
+    private String portfolio;
+
+    @JsonProperty("stock_id")
+    private String stockId;
+
+    public PortfolioMatch() {
+    }
+
+    public PortfolioMatch(String portfolio, String stockId) {
+        this.portfolio = portfolio;
+        this.stockId = stockId;
+    }
+
+    public String getPortfolio() {
+        return portfolio;
+    }
+
+    public void setPortfolio(String portfolio) {
+        this.portfolio = portfolio;
+    }
+
+    public String getStockId() {
+        return stockId;
+    }
+
+    public void setStockId(String stockId) {
+        this.stockId = stockId;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if (!(obj instanceof PortfolioMatch)) {
+            return false;
+        }
+
+        PortfolioMatch m = (PortfolioMatch) obj;
+        return this.portfolio.equals(m.portfolio)
+                && this.stockId.equals(m.stockId);
+    }
+}
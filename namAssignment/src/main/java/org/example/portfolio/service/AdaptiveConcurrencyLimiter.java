@@ -0,0 +1,216 @@
+package org.example.portfolio.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Limits the number of concurrent calls to the remote API with an AIMD policy driven by observed latency:
+ * the limit grows by one per window of successful calls answered within the latency threshold, and is
+ * multiplied by the backoff ratio when a call is slower than the threshold, times out or fails on the server side.
+ * The limit always stays between the configured floor and ceiling. Calls over the limit wait in a FIFO queue
+ * without holding any thread.
+ */
+@Component
+public class AdaptiveConcurrencyLimiter {
+
+    private static final int WAITING = 0;
+    private static final int GRANTED = 1;
+    private static final int DONE = 2;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+    private final double backoffRatio;
+
+    /* guarded by this */
+    private double limit;
+    private int inFlight;
+    private final Queue<Permit> pending = new ArrayDeque<>();
+
+    @Autowired
+    public AdaptiveConcurrencyLimiter(@Value("${upstream.concurrency.min-limit:8}") int minLimit,
+                                      @Value("${upstream.concurrency.max-limit:256}") int maxLimit,
+                                      @Value("${upstream.concurrency.initial-limit:32}") int initialLimit,
+                                      @Value("${upstream.concurrency.latency-threshold:500ms}") Duration latencyThreshold,
+                                      @Value("${upstream.concurrency.backoff-ratio:0.9}") double backoffRatio,
+                                      MeterRegistry meterRegistry) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThresholdNanos = latencyThreshold.toNanos();
+        this.backoffRatio = backoffRatio;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        if (meterRegistry != null) {
+            Gauge.builder("upstream.concurrency.limit", this, AdaptiveConcurrencyLimiter::getLimit)
+                    .description("Current concurrency limit of calls to the remote API")
+                    .register(meterRegistry);
+            Gauge.builder("upstream.concurrency.inflight", this, AdaptiveConcurrencyLimiter::getInFlight)
+                    .description("Calls to the remote API in flight")
+                    .register(meterRegistry);
+            Gauge.builder("upstream.concurrency.queued", this, AdaptiveConcurrencyLimiter::getQueueDepth)
+                    .description("Calls to the remote API waiting for a permit")
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * @return a limiter that never queues calls
+     */
+    public static AdaptiveConcurrencyLimiter unlimited() {
+        return new AdaptiveConcurrencyLimiter(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE,
+                Duration.ofDays(1), 1.0, null);
+    }
+
+    /**
+     * Runs the call once a permit is available. The permit is released when the call terminates or is cancelled,
+     * and the call's latency and outcome are fed back into the limit.
+     *
+     * @param call the call to the remote API
+     * @return a Mono with the result of the call
+     */
+    public <T> Mono<T> run(Supplier<Mono<T>> call) {
+        return Mono.defer(() -> {
+            Permit permit = new Permit();
+            return Mono.<Void>create(permit::await)
+                    .then(Mono.defer(call))
+                    .doOnSuccess(value -> permit.release(true))
+                    .doOnError(error -> permit.release(verdictOf(error)))
+                    .doOnCancel(() -> permit.release(null));
+        });
+    }
+
+    /**
+     * Runs a streaming call once a permit is available, holding the permit until the stream terminates or is cancelled.
+     *
+     * @param call the call to the remote API
+     * @return a Flux with the elements of the call
+     */
+    public <T> Flux<T> runMany(Supplier<Flux<T>> call) {
+        return Flux.defer(() -> {
+            Permit permit = new Permit();
+            return Mono.<Void>create(permit::await)
+                    .thenMany(Flux.defer(call))
+                    .doOnComplete(() -> permit.release(true))
+                    .doOnError(error -> permit.release(verdictOf(error)))
+                    .doOnCancel(() -> permit.release(null));
+        });
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getQueueDepth() {
+        return pending.size();
+    }
+
+    /*
+     * timeouts and server side failures are signs of an overloaded upstream, client errors are not, and a call shed
+     * by the rate limiter never reached it
+     * @return true for a success, false for a drop, null for no verdict
+     */
+    private static Boolean verdictOf(Throwable error) {
+        if (error instanceof UpstreamThrottledException) {
+            return null;
+        }
+        return error instanceof PortfolioServiceException;
+    }
+
+    private void enqueue(Permit permit) {
+        boolean granted = false;
+        synchronized (this) {
+            if (pending.isEmpty() && inFlight < (int) limit) {
+                granted = permit.grant();
+                if (granted) {
+                    inFlight++;
+                }
+            } else {
+                pending.add(permit);
+            }
+        }
+        if (granted) {
+            permit.signal();
+        }
+    }
+
+    /**
+     * @param success true if the call succeeded, false if it was dropped, null if it was cancelled
+     */
+    private void onRelease(long latencyNanos, Boolean success) {
+        List<Permit> granted = new ArrayList<>();
+        synchronized (this) {
+            inFlight--;
+            if (success != null) {
+                if (success && latencyNanos <= latencyThresholdNanos) {
+                    // only grow while the current limit is actually being used
+                    if (inFlight + 1 >= limit / 2) {
+                        limit = Math.min(maxLimit, limit + 1.0 / limit);
+                    }
+                } else {
+                    limit = Math.max(minLimit, limit * backoffRatio);
+                }
+            }
+            while (inFlight < (int) limit && !pending.isEmpty()) {
+                Permit next = pending.poll();
+                if (next.grant()) {
+                    inFlight++;
+                    granted.add(next);
+                }
+            }
+        }
+        granted.forEach(Permit::signal);
+    }
+
+    private synchronized void cancelWaiting(Permit permit) {
+        pending.remove(permit);
+    }
+
+    private final class Permit {
+
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+        private MonoSink<Void> sink;
+        private volatile long grantedAtNanos;
+
+        void await(MonoSink<Void> sink) {
+            this.sink = sink;
+            enqueue(this);
+        }
+
+        boolean grant() {
+            if (state.compareAndSet(WAITING, GRANTED)) {
+                grantedAtNanos = System.nanoTime();
+                return true;
+            }
+            return false;
+        }
+
+        void signal() {
+            sink.success();
+        }
+
+        void release(Boolean success) {
+            if (state.compareAndSet(GRANTED, DONE)) {
+                onRelease(System.nanoTime() - grantedAtNanos, success);
+            } else if (state.compareAndSet(WAITING, DONE)) {
+                cancelWaiting(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package org.example.portfolio.service;
+
+/**
+ * Signals that the remote API does not offer a bulk endpoint, so requests must be sent per portfolio.
+ */
+public class BatchNotSupportedException extends PortfolioServiceException
+{
+    public BatchNotSupportedException(String message)
+    {
+        super(message);
+    }
+}
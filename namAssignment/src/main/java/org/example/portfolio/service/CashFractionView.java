@@ -0,0 +1,304 @@
+package org.example.portfolio.service;
+
+import org.example.portfolio.cluster.ClusterRing;
+import org.example.portfolio.model.Cash;
+import org.example.portfolio.model.Holding;
+import org.example.portfolio.model.Portfolio;
+import org.example.portfolio.valuation.Valuation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Materialized view of portfolio name to cash as a fraction of full portfolio value, maintained in the background
+ * so that the cash fraction endpoint is a memory read.
+ * Each portfolio is refreshed on its own schedule, every refresh interval give or take the jitter, which spreads
+ * the calls to the remote API evenly instead of in bursts. Refreshes use conditional GETs, so an unchanged portfolio
+ * costs a 304 and no decoding, and a fraction is only recomputed when its cash or holdings changed.
+ * Holdings are only fetched for portfolios holding cash, a portfolio without cash has a fraction of 0.0.
+ * A portfolio failing to refresh keeps its previous fraction and is retried after an exponential backoff, starting at
+ * the error backoff and capped by the refresh interval.
+ * Disabled portfolios are left out of the view, and so are, in cluster mode, the portfolios owned by another instance.
+ */
+@Component
+public class CashFractionView {
+
+    private static final Logger log = LoggerFactory.getLogger(CashFractionView.class);
+
+    private final PortfolioService portfolioService;
+    private final ClusterRing ring;
+    private final boolean enabled;
+    private final Duration refreshInterval;
+    private final double jitter;
+    private final Duration portfoliosRefreshInterval;
+    private final Duration maxStaleness;
+    private final int refreshConcurrency;
+    private final Duration errorBackoff;
+    private final Clock clock;
+    private final Random random;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    /* incremented whenever the content of getFractions() changes */
+    private final AtomicLong version = new AtomicLong();
+
+    /* time the portfolio list was last read, 0 before the first read */
+    private volatile long portfoliosRefreshedMillis;
+
+    /*
+     * time the oldest fraction was computed, 0 while a portfolio was never computed, updated after each refresh.
+     * Refreshes only make fractions newer, so between two updates it errs on the stale side
+     */
+    private volatile long oldestRefreshedMillis;
+
+    /* time the oldest data was read, the portfolio list read counting for the portfolios never computed */
+    private volatile long oldestDataMillis;
+
+    @Autowired
+    public CashFractionView(PortfolioService portfolioService, ClusterRing ring,
+                            @Value("${portfolio.view.enabled:true}") boolean enabled,
+                            @Value("${portfolio.view.refresh-interval:15s}") Duration refreshInterval,
+                            @Value("${portfolio.view.jitter:0.5}") double jitter,
+                            @Value("${portfolio.view.portfolios-refresh-interval:30s}") Duration portfoliosRefreshInterval,
+                            @Value("${portfolio.view.max-staleness:60s}") Duration maxStaleness,
+                            @Value("${portfolio.view.refresh-concurrency:16}") int refreshConcurrency,
+                            @Value("${portfolio.view.error-backoff:2s}") Duration errorBackoff) {
+        this(portfolioService, ring, enabled, refreshInterval, jitter, portfoliosRefreshInterval, maxStaleness,
+                refreshConcurrency, errorBackoff, Clock.systemUTC(), new Random());
+    }
+
+    CashFractionView(PortfolioService portfolioService, ClusterRing ring, boolean enabled, Duration refreshInterval,
+                     double jitter, Duration portfoliosRefreshInterval, Duration maxStaleness, int refreshConcurrency,
+                     Duration errorBackoff, Clock clock, Random random) {
+        this.portfolioService = portfolioService;
+        this.ring = ring;
+        this.enabled = enabled;
+        this.refreshInterval = refreshInterval;
+        this.jitter = jitter;
+        this.portfoliosRefreshInterval = portfoliosRefreshInterval;
+        this.maxStaleness = maxStaleness;
+        this.refreshConcurrency = refreshConcurrency;
+        this.errorBackoff = errorBackoff;
+        this.clock = clock;
+        this.random = random;
+    }
+
+    /**
+     * Tells whether the view can serve the cash fraction endpoint, i.e. every portfolio has been computed
+     * and both the portfolio list and the oldest fraction are within the configured staleness bound.
+     *
+     * @return true if the view can be read
+     */
+    public boolean isFresh() {
+        long now = clock.millis();
+        if (!enabled || portfoliosRefreshedMillis == 0 || now - portfoliosRefreshedMillis > maxStaleness.toMillis()) {
+            return false;
+        }
+        long oldest = oldestRefreshedMillis;
+        return oldest != 0 && now - oldest <= maxStaleness.toMillis();
+    }
+
+    /**
+     * @return the fraction of every portfolio computed so far
+     */
+    public Map<String, Double> getFractions() {
+        Map<String, Double> fractions = new HashMap<>(entries.size() * 4 / 3 + 1);
+        entries.forEach((name, entry) -> {
+            if (entry.refreshedMillis > 0) {
+                fractions.put(name, entry.fraction);
+            }
+        });
+        return fractions;
+    }
+
+    /**
+     * Read before {@link #getFractions()}, tells whether fractions read later may differ from those read then.
+     *
+     * @return a number that changes whenever a fraction is added, removed or changed
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * @return the age of the oldest fraction, or the age of the view if a portfolio was never computed
+     */
+    public Duration getDataAge() {
+        long now = clock.millis();
+        return Duration.ofMillis(now - Math.min(now, oldestDataMillis));
+    }
+
+    @Scheduled(fixedDelayString = "${portfolio.view.tick-ms:1000}")
+    public void scheduledRefresh() {
+        if (!enabled || !refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        refreshDue()
+                .doFinally(signal -> refreshing.set(false))
+                .subscribe(null, error -> log.error("Error while refreshing the cash fraction view", error));
+    }
+
+    /**
+     * Re-reads the portfolio list when due, then refreshes the portfolios whose next refresh time has passed.
+     *
+     * @return a Mono completing when the refresh is done
+     */
+    public Mono<Void> refreshDue() {
+        long now = clock.millis();
+        Mono<Void> portfolios = now - portfoliosRefreshedMillis >= portfoliosRefreshInterval.toMillis()
+                ? refreshPortfolios()
+                : Mono.empty();
+        return portfolios.then(Mono.defer(() -> {
+            List<String> due = new ArrayList<>();
+            entries.forEach((name, entry) -> {
+                if (entry.nextRefreshMillis <= now) {
+                    due.add(name);
+                }
+            });
+            return Flux.fromIterable(due)
+                    .flatMap(this::refreshPortfolio, refreshConcurrency)
+                    .then();
+        })).then(Mono.fromRunnable(this::updateOldest));
+    }
+
+    /* one scan per refresh, so that requests read the freshness of the view without going through every entry */
+    private void updateOldest() {
+        long now = clock.millis();
+        long oldestRefreshed = now;
+        long oldestData = now;
+        for (Entry entry : entries.values()) {
+            long refreshed = entry.refreshedMillis;
+            oldestRefreshed = Math.min(oldestRefreshed, refreshed);
+            oldestData = Math.min(oldestData, refreshed > 0 ? refreshed : portfoliosRefreshedMillis);
+        }
+        oldestRefreshedMillis = oldestRefreshed;
+        oldestDataMillis = oldestData;
+    }
+
+    private Mono<Void> refreshPortfolios() {
+        return portfolioService.getAllPortfolios()
+                .doOnNext(portfolios -> {
+                    Set<String> names = new HashSet<>();
+                    for (Portfolio p : portfolios) {
+                        // disabled portfolios, and those another instance owns, are left out of the view and never fetched
+                        if (!p.isDisabled() && ring.owns(p.getName())) {
+                            names.add(p.getName());
+                            // new portfolios are computed right away
+                            entries.computeIfAbsent(p.getName(), name -> new Entry());
+                        }
+                    }
+                    if (entries.keySet().retainAll(names)) {
+                        version.incrementAndGet();
+                    }
+                    portfoliosRefreshedMillis = clock.millis();
+                })
+                .onErrorResume(error -> {
+                    log.warn("Could not refresh the portfolio list of the cash fraction view", error);
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    private Mono<Void> refreshPortfolio(String name) {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            return Mono.empty();
+        }
+        return portfolioService.getCashIfModified(name, entry.cashValidators)
+                .flatMap(cash -> {
+                    boolean changed = cash.isModified() && entry.updateCash(cash);
+                    if (entry.cashMicros <= 0) {
+                        entry.holdingsValidators = ConditionalResult.Validators.NONE;
+                        return Mono.just(changed);
+                    }
+                    return portfolioService.getHoldingsIfModified(name, entry.holdingsValidators)
+                            .map(holdings -> (holdings.isModified() && entry.updateHoldings(holdings)) || changed);
+                })
+                .doOnNext(changed -> {
+                    if (changed || entry.refreshedMillis == 0) {
+                        double previous = entry.fraction;
+                        entry.recompute();
+                        if (entry.refreshedMillis == 0 || Double.compare(previous, entry.fraction) != 0) {
+                            version.incrementAndGet();
+                        }
+                    }
+                    long now = clock.millis();
+                    entry.refreshedMillis = now;
+                    entry.failures = 0;
+                    entry.nextRefreshMillis = now + nextDelayMillis();
+                })
+                .onErrorResume(error -> {
+                    // keeps the previous fraction, to be retried after the backoff
+                    log.warn("Could not refresh portfolio {} in the cash fraction view", name, error);
+                    entry.failures++;
+                    entry.nextRefreshMillis = clock.millis() + backoffMillis(entry.failures);
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    /* refresh interval, plus or minus the jitter, so that portfolios drift apart instead of refreshing together */
+    private long nextDelayMillis() {
+        double factor = 1 - jitter + 2 * jitter * random.nextDouble();
+        return (long) (refreshInterval.toMillis() * factor);
+    }
+
+    /* error backoff doubled on each consecutive failure, up to the refresh interval, plus or minus the jitter */
+    private long backoffMillis(int failures) {
+        long backoff = errorBackoff.toMillis() << Math.min(failures - 1, 20);
+        double factor = 1 - jitter + 2 * jitter * random.nextDouble();
+        return (long) (Math.min(backoff, refreshInterval.toMillis()) * factor);
+    }
+
+    private static final class Entry {
+
+        private volatile ConditionalResult.Validators cashValidators = ConditionalResult.Validators.NONE;
+        private volatile ConditionalResult.Validators holdingsValidators = ConditionalResult.Validators.NONE;
+        private volatile long cashMicros;
+        private volatile long holdingsMicros;
+        private volatile double fraction;
+        private volatile long refreshedMillis;
+        private volatile long nextRefreshMillis;
+        /* consecutive failed refreshes, only written by the refresh of the entry */
+        private volatile int failures;
+
+        boolean updateCash(ConditionalResult<Cash> result) {
+            cashValidators = result.getValidators();
+            long cash = Valuation.cashMicros(result.getValue());
+            boolean changed = cash != cashMicros;
+            cashMicros = cash;
+            return changed;
+        }
+
+        boolean updateHoldings(ConditionalResult<List<Holding>> result) {
+            holdingsValidators = result.getValidators();
+            long sum = Valuation.sumMicros(result.getValue());
+            boolean changed = sum != holdingsMicros;
+            holdingsMicros = sum;
+            return changed;
+        }
+
+        void recompute() {
+            fraction = Valuation.fraction(cashMicros, holdingsMicros);
+        }
+    }
+}
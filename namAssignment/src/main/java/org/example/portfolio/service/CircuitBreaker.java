@@ -0,0 +1,193 @@
+package org.example.portfolio.service;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Circuit breaker of one remote endpoint. While closed, the outcomes of the last calls are kept in a sliding window,
+ * and the circuit opens once the failure rate over the window reaches the threshold. While open, calls fail fast
+ * with an {@link UpstreamUnavailableException} instead of piling onto an unhealthy upstream. After the open duration,
+ * a few trial calls are let through: the circuit closes if they all succeed and opens again on the first failure.
+ * Timeouts and server side failures count as failures, client errors do not. A call shed by the rate limiter was never
+ * sent, so it counts as neither.
+ */
+public final class CircuitBreaker {
+
+    public enum State {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    private static final long REJECTED = -1;
+
+    private final String name;
+    private final boolean enabled;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long openDurationNanos;
+    private final int halfOpenCalls;
+    private final LongSupplier nanoClock;
+
+    /* guarded by this */
+    private State state = State.CLOSED;
+    /* incremented on every transition, so that calls started in a previous state do not count in the current one */
+    private long generation;
+    private final boolean[] window;
+    private int windowCount;
+    private int windowIndex;
+    private int windowFailures;
+    private long openUntilNanos;
+    private int trialsStarted;
+    private int trialsSucceeded;
+
+    /**
+     * @param name                 the endpoint name, used in error messages
+     * @param enabled              false to let every call through
+     * @param windowSize           number of last calls over which the failure rate is computed
+     * @param minimumCalls         number of calls in the window before the failure rate is considered
+     * @param failureRateThreshold failure rate, between 0 and 1, at which the circuit opens
+     * @param openDuration         how long the circuit stays open before trial calls are let through
+     * @param halfOpenCalls        number of successful trial calls needed to close the circuit
+     * @param nanoClock            the clock, in nanoseconds
+     */
+    CircuitBreaker(String name, boolean enabled, int windowSize, int minimumCalls, double failureRateThreshold,
+                   Duration openDuration, int halfOpenCalls, LongSupplier nanoClock) {
+        this.name = name;
+        this.enabled = enabled;
+        this.window = new boolean[windowSize];
+        this.minimumCalls = Math.min(minimumCalls, windowSize);
+        this.failureRateThreshold = failureRateThreshold;
+        this.openDurationNanos = openDuration.toNanos();
+        this.halfOpenCalls = halfOpenCalls;
+        this.nanoClock = nanoClock;
+    }
+
+    public <T> Mono<T> run(Supplier<Mono<T>> call) {
+        if (!enabled) {
+            return Mono.defer(call);
+        }
+        return Mono.defer(() -> {
+            long callGeneration = acquire();
+            if (callGeneration == REJECTED) {
+                return Mono.error(rejection());
+            }
+            return Mono.defer(call)
+                    .doOnSuccess(value -> onResult(callGeneration, true))
+                    .doOnError(error -> onError(callGeneration, error))
+                    .doOnCancel(() -> onCancel(callGeneration));
+        });
+    }
+
+    public <T> Flux<T> runMany(Supplier<Flux<T>> call) {
+        if (!enabled) {
+            return Flux.defer(call);
+        }
+        return Flux.defer(() -> {
+            long callGeneration = acquire();
+            if (callGeneration == REJECTED) {
+                return Flux.error(rejection());
+            }
+            return Flux.defer(call)
+                    .doOnComplete(() -> onResult(callGeneration, true))
+                    .doOnError(error -> onError(callGeneration, error))
+                    .doOnCancel(() -> onCancel(callGeneration));
+        });
+    }
+
+    public synchronized State getState() {
+        if (state == State.OPEN && nanoClock.getAsLong() - openUntilNanos >= 0) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    private static boolean isFailure(Throwable error) {
+        return !(error instanceof PortfolioServiceException);
+    }
+
+    private void onError(long callGeneration, Throwable error) {
+        if (error instanceof UpstreamThrottledException) {
+            // never reached the upstream, like a cancelled call
+            onCancel(callGeneration);
+        } else {
+            onResult(callGeneration, !isFailure(error));
+        }
+    }
+
+    private UpstreamUnavailableException rejection() {
+        return new UpstreamUnavailableException("Remote endpoint " + name + " is unavailable, circuit breaker open");
+    }
+
+    /**
+     * @return the generation the call belongs to, or REJECTED if the call must not be sent
+     */
+    private synchronized long acquire() {
+        if (state == State.OPEN) {
+            if (nanoClock.getAsLong() - openUntilNanos < 0) {
+                return REJECTED;
+            }
+            transitionTo(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialsStarted >= halfOpenCalls) {
+                return REJECTED;
+            }
+            trialsStarted++;
+        }
+        return generation;
+    }
+
+    private synchronized void onResult(long callGeneration, boolean success) {
+        if (callGeneration != generation) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            if (!success) {
+                transitionTo(State.OPEN);
+            } else if (++trialsSucceeded >= halfOpenCalls) {
+                transitionTo(State.CLOSED);
+            }
+            return;
+        }
+        // closed: record the outcome, replacing the oldest one once the window is full
+        if (windowCount == window.length) {
+            if (!window[windowIndex]) {
+                windowFailures--;
+            }
+        } else {
+            windowCount++;
+        }
+        window[windowIndex] = success;
+        if (!success) {
+            windowFailures++;
+        }
+        windowIndex = (windowIndex + 1) % window.length;
+        if (windowCount >= minimumCalls && windowFailures >= failureRateThreshold * windowCount) {
+            transitionTo(State.OPEN);
+        }
+    }
+
+    private synchronized void onCancel(long callGeneration) {
+        // a cancelled trial call proves nothing, let another one through
+        if (callGeneration == generation && state == State.HALF_OPEN) {
+            trialsStarted--;
+        }
+    }
+
+    private void transitionTo(State next) {
+        state = next;
+        generation++;
+        trialsStarted = 0;
+        trialsSucceeded = 0;
+        if (next == State.OPEN) {
+            openUntilNanos = nanoClock.getAsLong() + openDurationNanos;
+        } else if (next == State.CLOSED) {
+            windowCount = 0;
+            windowIndex = 0;
+            windowFailures = 0;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package org.example.portfolio.service;
+
+import org.springframework.http.HttpHeaders;
+
+/**
+ * Result of a conditional GET to the remote API: either the new value with the validators to send next time,
+ * or "not modified" when the remote API answered 304, in which case the previous validators still apply.
+ *
+ * @param <T> the type of the value
+ */
+public final class ConditionalResult<T> {
+
+    private final T value;
+    private final boolean modified;
+    private final Validators validators;
+
+    private ConditionalResult(T value, boolean modified, Validators validators) {
+        this.value = value;
+        this.modified = modified;
+        this.validators = validators;
+    }
+
+    public static <T> ConditionalResult<T> modified(T value, Validators validators) {
+        return new ConditionalResult<>(value, true, validators);
+    }
+
+    public static <T> ConditionalResult<T> notModified(Validators validators) {
+        return new ConditionalResult<>(null, false, validators);
+    }
+
+    /**
+     * @return the new value, null if not modified
+     */
+    public T getValue() {
+        return value;
+    }
+
+    public boolean isModified() {
+        return modified;
+    }
+
+    public Validators getValidators() {
+        return validators;
+    }
+
+    /**
+     * The ETag and Last-Modified of a response, sent back as If-None-Match and If-Modified-Since.
+     */
+    public static final class Validators {
+
+        public static final Validators NONE = new Validators(null, null);
+
+        private final String etag;
+        private final String lastModified;
+
+        private Validators(String etag, String lastModified) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        static Validators of(HttpHeaders responseHeaders) {
+            String etag = responseHeaders.getETag();
+            String lastModified = responseHeaders.getFirst(HttpHeaders.LAST_MODIFIED);
+            return etag == null && lastModified == null ? NONE : new Validators(etag, lastModified);
+        }
+
+        void applyTo(HttpHeaders requestHeaders) {
+            if (etag != null) {
+                requestHeaders.setIfNoneMatch(etag);
+            }
+            if (lastModified != null) {
+                requestHeaders.set(HttpHeaders.IF_MODIFIED_SINCE, lastModified);
+            }
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+    }
+}
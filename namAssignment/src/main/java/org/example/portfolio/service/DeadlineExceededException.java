@@ -0,0 +1,12 @@
+package org.example.portfolio.service;
+
+/**
+ * Signals that the deadline of the request expired before a call to the remote API answered.
+ */
+public class DeadlineExceededException extends PortfolioServiceException
+{
+    public DeadlineExceededException(String message)
+    {
+        super(message);
+    }
+}
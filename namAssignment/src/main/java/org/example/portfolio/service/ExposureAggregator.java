@@ -0,0 +1,218 @@
+package org.example.portfolio.service;
+
+import org.example.portfolio.model.Portfolio;
+import org.example.portfolio.model.PortfolioHolding;
+import org.example.portfolio.store.CompactHoldings;
+import org.example.portfolio.valuation.Valuation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Aggregates holdings across portfolios: total exposure per stock, and the largest holdings by value.
+ * Holdings are fetched with {@link PortfolioService#getCompactHoldings} and reduced in parallel: each rail folds the
+ * portfolios it receives into its own accumulator, without any sharing or locking, and the accumulators of the
+ * rails are merged once at the end. Top-K keeps a bounded min-heap per rail, so memory stays O(K) per rail
+ * whatever the number of holdings. Exposures are summed in fixed point, see {@link Valuation}, into 128-bit sums that
+ * cannot overflow, so they do not depend on the rail each portfolio lands on nor on the order the rails are merged in.
+ * Portfolios whose holdings cannot be retrieved are left out, as are, from the exposures, portfolios holding a value
+ * that is not finite or whose own total is beyond the range of a fixed-point amount, decided on the portfolio alone.
+ */
+@Component
+public class ExposureAggregator {
+
+    private static final Logger log = LoggerFactory.getLogger(ExposureAggregator.class);
+
+    private static final Comparator<PortfolioHolding> BY_VALUE = Comparator.comparingDouble(PortfolioHolding::getValue);
+
+    private final PortfolioService portfolioService;
+    private final int parallelism;
+    private final Scheduler scheduler;
+
+    @Autowired
+    public ExposureAggregator(PortfolioService portfolioService,
+                              @Value("${portfolio.aggregation.parallelism:0}") int parallelism) {
+        this(portfolioService, parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors(),
+                Schedulers.parallel());
+    }
+
+    ExposureAggregator(PortfolioService portfolioService, int parallelism, Scheduler scheduler) {
+        this.portfolioService = portfolioService;
+        this.parallelism = parallelism;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Sums the value held in each stock across the selected portfolios. Stock ids are aggregated case-insensitively
+     * and reported in upper case.
+     *
+     * @param portfolios the portfolios to aggregate, as selected by the caller
+     * @return a Mono containing the total value per stock id
+     */
+    public Mono<Map<String, Double>> exposureByStock(Mono<List<Portfolio>> portfolios) {
+        return holdings(portfolios)
+                .parallel(parallelism)
+                .runOn(scheduler)
+                .reduce(Exposure::new, Exposure::add)
+                .reduce(Exposure::merge)
+                .map(Exposure::toMap)
+                .defaultIfEmpty(new HashMap<>());
+    }
+
+    /**
+     * Finds the holdings with the largest value across the selected portfolios.
+     *
+     * @param portfolios the portfolios to aggregate, as selected by the caller
+     * @param k          the number of holdings to return
+     * @return a Mono containing at most k holdings, largest first
+     */
+    public Mono<List<PortfolioHolding>> topHoldings(Mono<List<Portfolio>> portfolios, int k) {
+        return holdings(portfolios)
+                .parallel(parallelism)
+                .runOn(scheduler)
+                .reduce(() -> new TopK(k), TopK::add)
+                .reduce(TopK::merge)
+                .map(TopK::toList)
+                .defaultIfEmpty(new ArrayList<>());
+    }
+
+    private Flux<Tuple2<String, CompactHoldings>> holdings(Mono<List<Portfolio>> portfolios) {
+        return portfolios
+                .flatMapMany(Flux::fromIterable)
+                .map(Portfolio::getName)
+                .flatMap(name -> portfolioService.getCompactHoldings(name)
+                        .map(holdings -> Tuples.of(name, holdings))
+                        .onErrorResume(error -> {
+                            log.warn("Holdings of portfolio {} left out of the aggregation: {}", name, error.getMessage());
+                            return Mono.empty();
+                        }));
+    }
+
+    /*
+     * per-rail sums in micro-units, a mutable cell per stock so that adding a holding does not box; each sum is a
+     * 128-bit integer, its high word then its low word read as unsigned, so that no order of the additions overflows
+     */
+    private static final class Exposure {
+
+        private final Map<String, long[]> sums = new HashMap<>();
+
+        Exposure add(Tuple2<String, CompactHoldings> portfolio) {
+            CompactHoldings holdings = portfolio.getT2();
+            int n = holdings.size();
+            long[] micros = new long[n];
+            try {
+                long magnitude = 0;
+                for (int i = 0; i < n; i++) {
+                    micros[i] = Valuation.toMicros(holdings.valueAt(i));
+                    magnitude = Math.addExact(magnitude, Math.abs(micros[i]));
+                }
+            } catch (ArithmeticException e) {
+                // decided on the values of the portfolio alone, so the same whatever the rail it lands on
+                log.warn("Holdings of portfolio {} left out of the aggregation: {}", portfolio.getT1(), e.getMessage());
+                return this;
+            }
+            for (int i = 0; i < n; i++) {
+                long[] sum = sums.computeIfAbsent(holdings.stockIdAt(i).toUpperCase(Locale.ROOT), k -> new long[2]);
+                add(sum, micros[i] >> 63, micros[i]);
+            }
+            return this;
+        }
+
+        Exposure merge(Exposure other) {
+            Exposure small = sums.size() < other.sums.size() ? this : other;
+            Exposure large = small == this ? other : this;
+            small.sums.forEach((stock, sum) -> add(large.sums.computeIfAbsent(stock, k -> new long[2]), sum[0], sum[1]));
+            return large;
+        }
+
+        Map<String, Double> toMap() {
+            Map<String, Double> result = new HashMap<>(sums.size() * 4 / 3 + 1);
+            sums.forEach((stock, sum) -> result.put(stock, toUnits(sum)));
+            return result;
+        }
+
+        private static void add(long[] sum, long high, long low) {
+            long total = sum[1] + low;
+            sum[0] += high + (Long.compareUnsigned(total, sum[1]) < 0 ? 1 : 0);
+            sum[1] = total;
+        }
+
+        private static double toUnits(long[] sum) {
+            if (sum[0] == sum[1] >> 63) {
+                return Valuation.toUnits(sum[1]);
+            }
+            // beyond the range of a long, only reached by exposures summed across portfolios
+            BigInteger micros = BigInteger.valueOf(sum[0]).shiftLeft(64)
+                    .add(new BigInteger(Long.toUnsignedString(sum[1])));
+            return new BigDecimal(micros).divide(BigDecimal.valueOf(Valuation.MICROS_PER_UNIT)).doubleValue();
+        }
+    }
+
+    /* per-rail bounded min-heap, the smallest of the K largest holdings on top */
+    private static final class TopK {
+
+        private final int k;
+        private final PriorityQueue<PortfolioHolding> heap;
+
+        TopK(int k) {
+            this.k = k;
+            this.heap = new PriorityQueue<>(k + 1, BY_VALUE);
+        }
+
+        TopK add(Tuple2<String, CompactHoldings> portfolio) {
+            CompactHoldings holdings = portfolio.getT2();
+            for (int i = 0, n = holdings.size(); i < n; i++) {
+                double value = holdings.valueAt(i);
+                // only holdings entering the heap are allocated
+                if (enters(value)) {
+                    offer(new PortfolioHolding(portfolio.getT1(), holdings.stockIdAt(i), value));
+                }
+            }
+            return this;
+        }
+
+        private boolean enters(double value) {
+            return heap.size() < k || value > heap.peek().getValue();
+        }
+
+        private void offer(PortfolioHolding holding) {
+            if (heap.size() >= k) {
+                heap.poll();
+            }
+            heap.add(holding);
+        }
+
+        TopK merge(TopK other) {
+            for (PortfolioHolding h : other.heap) {
+                if (enters(h.getValue())) {
+                    offer(h);
+                }
+            }
+            return this;
+        }
+
+        List<PortfolioHolding> toList() {
+            List<PortfolioHolding> result = new ArrayList<>(heap);
+            result.sort(BY_VALUE.reversed());
+            return result;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package org.example.portfolio.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Runs the per-portfolio work of the fan-outs in one of two execution modes, selected by portfolio.execution.mode:
+ *  reactive (the default): the work is a non-blocking pipeline subscribed on the calling thread, and never
+ *  holds a thread while waiting for the remote API;
+ *  virtual-threads: each portfolio gets a virtual thread of its own that runs the pipeline and blocks until it
+ *  completes. Blocking a virtual thread is cheap and there is no cap on their number, unlike a bounded elastic pool.
+ * The virtual thread mode needs a Java 21 runtime; the application can still be built for Java 17, the virtual thread
+ * executor being looked up at runtime.
+ */
+@Component
+public class PerPortfolioExecutor {
+
+    private static final Logger log = LoggerFactory.getLogger(PerPortfolioExecutor.class);
+
+    public enum Mode {
+        REACTIVE,
+        VIRTUAL_THREADS;
+
+        static Mode parse(String value) {
+            return valueOf(value.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+        }
+    }
+
+    private final Mode mode;
+    private final Scheduler scheduler;
+
+    @Autowired
+    public PerPortfolioExecutor(@Value("${portfolio.execution.mode:reactive}") String mode) {
+        this(Mode.parse(mode));
+    }
+
+    public PerPortfolioExecutor(Mode mode) {
+        this.mode = mode;
+        this.scheduler = mode == Mode.VIRTUAL_THREADS
+                ? Schedulers.fromExecutorService(newVirtualThreadPerTaskExecutor(), "portfolio-virtual")
+                : null;
+        log.info("Per-portfolio work runs in {} mode", mode.name().toLowerCase(Locale.ROOT).replace('_', '-'));
+    }
+
+    /**
+     * @return an executor running the work as non-blocking pipelines
+     */
+    public static PerPortfolioExecutor reactive() {
+        return new PerPortfolioExecutor(Mode.REACTIVE);
+    }
+
+    /**
+     * Runs the work of one portfolio. In virtual thread mode the pipeline is subscribed and awaited on a new
+     * virtual thread, with the Reactor context of the caller, e.g. the request deadline.
+     *
+     * @param work the work of one portfolio
+     * @return a Mono with the result of the work
+     */
+    public <T> Mono<T> run(Supplier<Mono<T>> work) {
+        if (scheduler == null) {
+            return Mono.defer(work);
+        }
+        return Mono.deferContextual(context -> Mono.fromCallable(() -> work.get().contextWrite(context).block())
+                .subscribeOn(scheduler)
+                // block() wraps checked exceptions
+                .onErrorMap(Exceptions::unwrap));
+    }
+
+    /**
+     * Runs the work of one portfolio emitting several elements. In virtual thread mode the elements are collected
+     * on a new virtual thread and emitted once the work completes.
+     *
+     * @param work the work of one portfolio
+     * @return a Flux with the elements of the work
+     */
+    public <T> Flux<T> runMany(Supplier<Flux<T>> work) {
+        if (scheduler == null) {
+            return Flux.defer(work);
+        }
+        return run(() -> work.get().collectList()).flatMapMany(Flux::fromIterable);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Shuts the virtual thread executor down, interrupting the work still running on it.
+     */
+    @PreDestroy
+    public void dispose() {
+        if (scheduler != null) {
+            scheduler.dispose();
+        }
+    }
+
+    /* Executors.newVirtualThreadPerTaskExecutor() is only available from Java 21 */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("portfolio.execution.mode=virtual-threads requires Java 21, running on "
+                    + Runtime.version(), e);
+        }
+    }
+}
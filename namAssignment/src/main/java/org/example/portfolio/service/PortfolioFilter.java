@@ -0,0 +1,128 @@
+package org.example.portfolio.service;
+
+import org.example.portfolio.model.Portfolio;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Selection of the portfolios a fan-out or an aggregation runs over: optionally restricted to a set of names
+ * and to names starting with a prefix, and optionally excluding disabled portfolios.
+ * Applied to the portfolio list before any holdings or cash call, so that left out portfolios cost nothing.
+ */
+public final class PortfolioFilter implements Predicate<Portfolio> {
+
+    public static final String DROPPED_BY_NAME = "name";
+    public static final String DROPPED_BY_PREFIX = "prefix";
+    public static final String DROPPED_DISABLED = "disabled";
+
+    public static final PortfolioFilter ALL = new PortfolioFilter(null, null, false);
+    public static final PortfolioFilter ENABLED = new PortfolioFilter(null, null, true);
+
+    private final Set<String> names;
+    private final String prefix;
+    private final boolean excludeDisabled;
+
+    private PortfolioFilter(Set<String> names, String prefix, boolean excludeDisabled) {
+        this.names = names;
+        this.prefix = prefix;
+        this.excludeDisabled = excludeDisabled;
+    }
+
+    /**
+     * @param names           the names of the portfolios to select, null or empty for all
+     * @param excludeDisabled true to leave out disabled portfolios
+     * @return the filter
+     */
+    public static PortfolioFilter of(Collection<String> names, boolean excludeDisabled) {
+        return of(names, null, excludeDisabled);
+    }
+
+    /**
+     * @param names           the names of the portfolios to select, null or empty for all
+     * @param prefix          the prefix of the names of the portfolios to select, null or empty for all
+     * @param excludeDisabled true to leave out disabled portfolios
+     * @return the filter
+     */
+    public static PortfolioFilter of(Collection<String> names, String prefix, boolean excludeDisabled) {
+        Set<String> selected = null;
+        if (names != null) {
+            selected = new HashSet<>();
+            for (String name : names) {
+                if (!name.isBlank()) {
+                    selected.add(name.trim());
+                }
+            }
+        }
+        return new PortfolioFilter(selected == null || selected.isEmpty() ? null : selected,
+                prefix == null || prefix.isEmpty() ? null : prefix, excludeDisabled);
+    }
+
+    @Override
+    public boolean test(Portfolio portfolio) {
+        return reasonToDrop(portfolio) == null;
+    }
+
+    /**
+     * @param portfolio a portfolio of the portfolio list
+     * @return why the portfolio is left out, one of the DROPPED_ constants, or null if it is selected
+     */
+    public String reasonToDrop(Portfolio portfolio) {
+        if (names != null && !names.contains(portfolio.getName())) {
+            return DROPPED_BY_NAME;
+        }
+        if (prefix != null && !portfolio.getName().startsWith(prefix)) {
+            return DROPPED_BY_PREFIX;
+        }
+        if (excludeDisabled && portfolio.isDisabled()) {
+            return DROPPED_DISABLED;
+        }
+        return null;
+    }
+
+    /**
+     * Tests a portfolio known only by its name against the name and prefix restrictions,
+     * e.g. a portfolio of the stock index, which only holds enabled portfolios.
+     *
+     * @param name the name of the portfolio
+     * @return true if the name is selected
+     */
+    public boolean testName(String name) {
+        return (names == null || names.contains(name)) && (prefix == null || name.startsWith(prefix));
+    }
+
+    /**
+     * @param portfolioNames names of portfolios
+     * @return the selected names, in the same order
+     */
+    public List<String> selectNames(List<String> portfolioNames) {
+        if (names == null && prefix == null) {
+            return portfolioNames;
+        }
+        List<String> selected = new ArrayList<>();
+        for (String name : portfolioNames) {
+            if (testName(name)) {
+                selected.add(name);
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * @return true if the filter leaves out disabled portfolios
+     */
+    public boolean excludesDisabled() {
+        return excludeDisabled;
+    }
+
+    /**
+     * @return true if the filter only leaves out disabled portfolios, if any
+     */
+    public boolean selectsAllNames() {
+        return names == null && prefix == null;
+    }
+}
@@ -1,18 +1,31 @@
 package org.example.portfolio.service;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.portfolio.metrics.PortfolioMetrics;
 import org.example.portfolio.model.Cash;
 import org.example.portfolio.model.Holding;
 import org.example.portfolio.model.Portfolio;
+import org.example.portfolio.store.CompactHoldings;
+import org.example.portfolio.store.HoldingsStore;
+import org.example.portfolio.store.PortfolioSnapshot;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
 /**
  * Service class that fetches portfolio data from a remote API.
@@ -26,19 +39,89 @@ public class PortfolioService {
     private final static String ENDPOINT_PORTFOLIOS = "/portfolios";
     private final static String ENDPOINT_HOLDINGS = "/holdings";
     private final static String ENDPOINT_CASH = "/cash";
+    private final static String ENDPOINT_HOLDINGS_BATCH = "/holdings:batch";
+    private final static String ENDPOINT_CASH_BATCH = "/cash:batch";
     private final static String BACKSLASH = "/";
     private int TIMEOUT_IN_SECONDS = 8;
 
-    @Autowired
-    private WebClient.Builder webclientBuilder;
+    private final static String ALL_PORTFOLIOS_KEY = "all";
+
+    /* built once and shared by every call, so connections are pooled across the fan-out */
+    private final WebClient webClient;
+
+    private final SnapshotCache<String, List<Portfolio>> portfoliosCache;
+    /* holdings are kept in columnar form, see CompactHoldings */
+    private final SnapshotCache<String, CompactHoldings> holdingsCache;
+    private final SnapshotCache<String, Cash> cashCache;
+
+    /* concurrent identical calls share one upstream request */
+    private final SingleFlight<String, List<Portfolio>> portfoliosFlights = new SingleFlight<>();
+    private final SingleFlight<String, CompactHoldings> holdingsFlights = new SingleFlight<>();
+    private final SingleFlight<String, Cash> cashFlights = new SingleFlight<>();
+    /* concurrent streams of the same holdings share one download, see streamHoldings */
+    private final Map<String, Flux<Holding>> holdingsStreams = new ConcurrentHashMap<>();
+
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final UpstreamRateLimiter rateLimiter;
+    private final HoldingsStore holdingsStore;
+    private final PortfolioMetrics metrics;
+
+    /* per remote endpoint, created on first use */
+    private final UpstreamResilienceFactory resilienceFactory;
+    private final Map<String, RequestHedger> hedgers = new ConcurrentHashMap<>();
+    private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+    /* groups per-portfolio requests into bulk requests when the remote API supports them */
+    private final UpstreamBatcher<List<Holding>> holdingsBatcher;
+    private final UpstreamBatcher<Cash> cashBatcher;
 
     /**
-     * Constructs a PortfolioService with a given WebClient.Builder.
+     * Constructs a PortfolioService with a given WebClient.Builder, no caching, no concurrency limit and no rate limit.
      *
-     * @param webclientBuilder a builder for creating WebClient instances
+     * @param webclientBuilder a builder for creating the WebClient used for all calls
      */
     public PortfolioService(WebClient.Builder webclientBuilder) {
-        this.webclientBuilder = webclientBuilder;
+        this(webclientBuilder, SnapshotCacheFactory.disabled(), AdaptiveConcurrencyLimiter.unlimited(),
+                UpstreamRateLimiter.disabled(), UpstreamBatcherFactory.disabled(), UpstreamResilienceFactory.disabled(), HoldingsStore.onHeap(),
+                new PortfolioMetrics(new SimpleMeterRegistry()));
+    }
+
+    /**
+     * Constructs a PortfolioService caching the responses of the remote API.
+     *
+     * @param webclientBuilder   a builder for creating the WebClient used for all calls
+     * @param cacheFactory       the factory of the per-endpoint caches
+     * @param concurrencyLimiter the limiter of concurrent calls to the remote API
+     * @param rateLimiter        the token bucket limiting the rate of calls to the remote API, by priority
+     * @param batcherFactory     the factory of the batchers grouping per-portfolio requests
+     * @param resilienceFactory  the factory of the per-endpoint hedgers and circuit breakers
+     * @param holdingsStore      the converter of holdings into their compact form
+     * @param metrics            the instrumentation of the calls to the remote API
+     */
+    @Autowired
+    public PortfolioService(WebClient.Builder webclientBuilder, SnapshotCacheFactory cacheFactory,
+                            AdaptiveConcurrencyLimiter concurrencyLimiter, UpstreamRateLimiter rateLimiter,
+                            UpstreamBatcherFactory batcherFactory, UpstreamResilienceFactory resilienceFactory, HoldingsStore holdingsStore,
+                            PortfolioMetrics metrics) {
+        this.webClient = webclientBuilder.build();
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.rateLimiter = rateLimiter;
+        this.resilienceFactory = resilienceFactory;
+        this.holdingsStore = holdingsStore;
+        this.metrics = metrics;
+        this.holdingsBatcher = batcherFactory.create("holdings",
+                names -> upstreamBulk("holdings_batch", () -> fetchHoldingsBatch(names)),
+                name -> upstream("holdings", () -> fetchHoldings(name)));
+        this.cashBatcher = batcherFactory.create("cash",
+                names -> upstreamBulk("cash_batch", () -> fetchCashBatch(names)),
+                name -> upstream("cash", () -> fetchCash(name)));
+        this.portfoliosCache = cacheFactory.create("portfolios",
+                key -> portfoliosFlights.execute(key, () -> upstream("portfolios", this::fetchAllPortfolios)), List::size);
+        this.holdingsCache = cacheFactory.create("holdings",
+                name -> holdingsFlights.execute(name, () -> holdingsBatcher.get(name).map(holdingsStore::compact)),
+                holdings -> holdings.size() + 1);
+        this.cashCache = cacheFactory.create("cash",
+                name -> cashFlights.execute(name, () -> cashBatcher.get(name)), cash -> 1);
     }
 
     /**
@@ -46,18 +129,10 @@ public class PortfolioService {
      *
      * @return a Mono containing a list of all portfolios
      * @throws PortfolioServiceException if a 4xx error occurs while retrieving portfolios
+     * @throws DeadlineExceededException if the deadline of the request expires first
      */
     public Mono<List<Portfolio>> getAllPortfolios() {
-        return
-                webclientBuilder.build()
-                        .get()
-                        .uri(SERVER_API_URL + ENDPOINT_PORTFOLIOS)
-                        .retrieve()
-                        .onStatus(HttpStatusCode::is4xxClientError,
-                                error -> Mono.error(new PortfolioServiceException("Error while retrieving portfolios.")))
-                        .bodyToMono(new ParameterizedTypeReference<List<Portfolio>>() {
-                        })
-                        .timeout(Duration.ofSeconds(TIMEOUT_IN_SECONDS));
+        return RequestDeadline.bound("portfolios", portfoliosCache.get(ALL_PORTFOLIOS_KEY));
     }
 
     /**
@@ -66,17 +141,58 @@ public class PortfolioService {
      * @param portfolioName the name of the portfolio for which holdings are to be retrieved
      * @return a Mono containing a list of holdings for the specified portfolio
      * @throws PortfolioServiceException if a 4xx error occurs while retrieving holdings
+     * @throws DeadlineExceededException if the deadline of the request expires first
      */
     public Mono<List<Holding>> getHoldings(String portfolioName) {
-        return webclientBuilder.build()
-                .get()
-                .uri(SERVER_API_URL + BACKSLASH + portfolioName + ENDPOINT_HOLDINGS)
-                .retrieve()
-                .onStatus(HttpStatusCode::is4xxClientError,
-                        error -> Mono.error(new PortfolioServiceException("Error while retrieving Holding for " + portfolioName)))
-                .bodyToMono(new ParameterizedTypeReference<List<Holding>>() {
+        return getCompactHoldings(portfolioName).map(CompactHoldings::toList);
+    }
+
+    /**
+     * Retrieves holdings for a specified portfolio in their compact form, as cached, without creating
+     * any object per holding.
+     *
+     * @param portfolioName the name of the portfolio for which holdings are to be retrieved
+     * @return a Mono containing the holdings of the specified portfolio
+     * @throws PortfolioServiceException if a 4xx error occurs while retrieving holdings
+     * @throws DeadlineExceededException if the deadline of the request expires first
+     */
+    public Mono<CompactHoldings> getCompactHoldings(String portfolioName) {
+        return RequestDeadline.bound("holdings of " + portfolioName, holdingsCache.get(portfolioName));
+    }
+
+    /**
+     * Streams holdings of a specified portfolio, emitting each holding as soon as it is decoded from the response.
+     * Cancelling the returned Flux, e.g. once a match is found, aborts the HTTP exchange without reading the rest
+     * of the body. Holdings already cached are replayed from the cache instead.
+     * Concurrent streams of the same portfolio share one download, a late subscriber first receiving the holdings
+     * already decoded. The download is aborted once every subscriber has cancelled, and the holdings are cached
+     * when it is read to the end.
+     *
+     * @param portfolioName the name of the portfolio for which holdings are to be retrieved
+     * @return a Flux of the holdings of the specified portfolio
+     * @throws PortfolioServiceException if a 4xx error occurs while retrieving holdings
+     * @throws DeadlineExceededException if the deadline of the request expires first
+     */
+    public Flux<Holding> streamHoldings(String portfolioName) {
+        return RequestDeadline.boundMany("holdings of " + portfolioName, holdingsCache.getIfPresent(portfolioName)
+                .map(holdings -> Flux.range(0, holdings.size()).map(holdings::toHolding))
+                .defaultIfEmpty(Flux.defer(() -> holdingsStreams.computeIfAbsent(portfolioName, this::shareHoldingsStream)))
+                .flatMapMany(Function.identity()));
+    }
+
+    private Flux<Holding> shareHoldingsStream(String portfolioName) {
+        AtomicReference<Flux<Holding>> self = new AtomicReference<>();
+        Flux<Holding> shared = Flux.defer(() -> {
+                    List<Holding> received = new ArrayList<>();
+                    return upstreamMany("holdings_stream", () -> fetchHoldingsStream(portfolioName))
+                            .doOnNext(received::add)
+                            .doOnComplete(() -> holdingsCache.put(portfolioName, holdingsStore.compact(received)));
                 })
-               .timeout(Duration.ofSeconds(TIMEOUT_IN_SECONDS));
+                .doFinally(signal -> holdingsStreams.remove(portfolioName, self.get()))
+                .replay()
+                .refCount(1);
+        self.set(shared);
+        return shared;
     }
 
     /**
@@ -85,9 +201,223 @@ public class PortfolioService {
      * @param portfolioName the name of the portfolio for which cash is to be retrieved
      * @return a Mono containing the cash information for the specified portfolio
      * @throws PortfolioServiceException if a 4xx error occurs while retrieving cash
+     * @throws DeadlineExceededException if the deadline of the request expires first
      */
     public Mono<Cash> getCash(String portfolioName) {
-        return webclientBuilder.build()
+        return RequestDeadline.bound("cash of " + portfolioName, cashCache.get(portfolioName));
+    }
+
+    /**
+     * Retrieves cash of a portfolio unless it is unchanged since the given validators were received,
+     * in which case the remote API answers 304 and nothing is decoded. The cache is bypassed.
+     *
+     * @param portfolioName the name of the portfolio for which cash is to be retrieved
+     * @param validators    the validators of the previous response, or {@link ConditionalResult.Validators#NONE}
+     * @return a Mono containing the new cash or "not modified"
+     * @throws PortfolioServiceException if a 4xx error occurs while retrieving cash
+     */
+    public Mono<ConditionalResult<Cash>> getCashIfModified(String portfolioName, ConditionalResult.Validators validators) {
+        return upstream("cash", () -> fetchIfModified(SERVER_API_URL + BACKSLASH + portfolioName + ENDPOINT_CASH,
+                validators, new ParameterizedTypeReference<Cash>() {
+                }, "cash for " + portfolioName));
+    }
+
+    /**
+     * Retrieves holdings of a portfolio unless they are unchanged since the given validators were received,
+     * in which case the remote API answers 304 and nothing is decoded. The cache is bypassed.
+     *
+     * @param portfolioName the name of the portfolio for which holdings are to be retrieved
+     * @param validators    the validators of the previous response, or {@link ConditionalResult.Validators#NONE}
+     * @return a Mono containing the new holdings or "not modified"
+     * @throws PortfolioServiceException if a 4xx error occurs while retrieving holdings
+     */
+    public Mono<ConditionalResult<List<Holding>>> getHoldingsIfModified(String portfolioName,
+                                                                        ConditionalResult.Validators validators) {
+        return upstream("holdings", () -> fetchIfModified(SERVER_API_URL + BACKSLASH + portfolioName + ENDPOINT_HOLDINGS,
+                validators, new ParameterizedTypeReference<List<Holding>>() {
+                }, "Holding for " + portfolioName));
+    }
+
+    /**
+     * @return the portfolios, holdings and cash currently cached
+     */
+    public PortfolioSnapshot takeSnapshot() {
+        return new PortfolioSnapshot(System.currentTimeMillis(), portfoliosCache.snapshot().get(ALL_PORTFOLIOS_KEY),
+                holdingsCache.snapshot(), cashCache.snapshot());
+    }
+
+    /**
+     * Seeds the caches with a snapshot, e.g. read from disk at startup. Values already loaded are kept.
+     * Restored values are served as stale until {@link #refreshRestored} reloads them.
+     *
+     * @param snapshot the snapshot to restore
+     * @return the number of values restored
+     */
+    public int restoreSnapshot(PortfolioSnapshot snapshot) {
+        int restored = 0;
+        if (snapshot.getPortfolios() != null) {
+            restored += portfoliosCache.restore(Map.of(ALL_PORTFOLIOS_KEY, snapshot.getPortfolios()));
+        }
+        restored += holdingsCache.restore(snapshot.getHoldings());
+        restored += cashCache.restore(snapshot.getCash());
+        return restored;
+    }
+
+    /**
+     * Reloads every value restored from a snapshot, the portfolio list first, with at most the given number of
+     * calls in flight so that a restart does not fan out to the whole book at once. A value that cannot be
+     * reloaded stays stale until it expires.
+     *
+     * @param concurrency the maximum number of reloads in flight
+     * @return a Mono completing when every restored value has been reloaded or has failed to
+     */
+    public Mono<Void> refreshRestored(int concurrency) {
+        return Flux.concat(
+                        refreshAll(portfoliosCache, concurrency),
+                        refreshAll(cashCache, concurrency),
+                        refreshAll(holdingsCache, concurrency))
+                .then();
+    }
+
+    /**
+     * @return true while some of the cached values were restored from a snapshot and not refreshed yet
+     */
+    public boolean isServingRestored() {
+        return !portfoliosCache.restoredKeys().isEmpty() || !holdingsCache.restoredKeys().isEmpty()
+                || !cashCache.restoredKeys().isEmpty();
+    }
+
+    private static Flux<Void> refreshAll(SnapshotCache<String, ?> cache, int concurrency) {
+        return Flux.fromIterable(new ArrayList<>(cache.restoredKeys()))
+                .flatMap(key -> cache.refresh(key).then().onErrorResume(error -> Mono.empty()), concurrency);
+    }
+
+    /*
+     * every request to the remote API goes through the same protections and instrumentation:
+     * the circuit breaker fails fast before taking a token, each attempt, a hedge included, takes a token and a
+     * concurrency permit of its own, and the hedger only times and hedges an attempt once it holds both
+     */
+    private <T> Mono<T> upstream(String endpoint, Supplier<Mono<T>> request) {
+        RequestHedger hedger = hedgers.computeIfAbsent(endpoint, resilienceFactory::createHedger);
+        return circuitBreaker(endpoint).run(() -> hedger.<T>run(send -> attempt(endpoint, request, send)));
+    }
+
+    /* bulk calls are not hedged, a duplicate would send the whole batch again */
+    private <T> Mono<T> upstreamBulk(String endpoint, Supplier<Mono<T>> request) {
+        return circuitBreaker(endpoint).run(() -> attempt(endpoint, request, UnaryOperator.identity()));
+    }
+
+    private <T> Mono<T> attempt(String endpoint, Supplier<Mono<T>> request, UnaryOperator<Mono<T>> send) {
+        return rateLimiter.run(() -> concurrencyLimiter.run(
+                () -> send.apply(metrics.timeUpstream(endpoint, request.get()))));
+    }
+
+    /* streams are not hedged, a duplicate would download the same body twice */
+    private <T> Flux<T> upstreamMany(String endpoint, Supplier<Flux<T>> request) {
+        return circuitBreaker(endpoint).runMany(() -> rateLimiter.runMany(
+                () -> concurrencyLimiter.runMany(() -> metrics.timeUpstreamMany(endpoint, request.get()))));
+    }
+
+    /* a stream reads the same remote endpoint as its non-streaming counterpart, so they share a circuit */
+    private CircuitBreaker circuitBreaker(String endpoint) {
+        return circuitBreakers.computeIfAbsent(endpoint.replace("_stream", ""), resilienceFactory::createCircuitBreaker);
+    }
+
+    private Mono<List<Portfolio>> fetchAllPortfolios() {
+        return webClient
+                .get()
+                .uri(SERVER_API_URL + ENDPOINT_PORTFOLIOS)
+                .retrieve()
+                .onStatus(HttpStatusCode::is4xxClientError,
+                        error -> Mono.error(new PortfolioServiceException("Error while retrieving portfolios.")))
+                .bodyToMono(new ParameterizedTypeReference<List<Portfolio>>() {
+                })
+                .timeout(Duration.ofSeconds(TIMEOUT_IN_SECONDS));
+    }
+
+    private Mono<List<Holding>> fetchHoldings(String portfolioName) {
+        return webClient
+                .get()
+                .uri(SERVER_API_URL + BACKSLASH + portfolioName + ENDPOINT_HOLDINGS)
+                .retrieve()
+                .onStatus(HttpStatusCode::is4xxClientError,
+                        error -> Mono.error(new PortfolioServiceException("Error while retrieving Holding for " + portfolioName)))
+                .bodyToMono(new ParameterizedTypeReference<List<Holding>>() {
+                })
+               .timeout(Duration.ofSeconds(TIMEOUT_IN_SECONDS));
+    }
+
+    /* a JSON array decoded as a Flux is tokenized incrementally, one element per holding */
+    private Flux<Holding> fetchHoldingsStream(String portfolioName) {
+        return webClient
+                .get()
+                .uri(SERVER_API_URL + BACKSLASH + portfolioName + ENDPOINT_HOLDINGS)
+                .retrieve()
+                .onStatus(HttpStatusCode::is4xxClientError,
+                        error -> Mono.error(new PortfolioServiceException("Error while retrieving Holding for " + portfolioName)))
+                .bodyToFlux(Holding.class)
+                .timeout(Duration.ofSeconds(TIMEOUT_IN_SECONDS));
+    }
+
+    private Mono<Map<String, List<Holding>>> fetchHoldingsBatch(List<String> portfolioNames) {
+        return webClient
+                .post()
+                .uri(SERVER_API_URL + ENDPOINT_HOLDINGS_BATCH)
+                .bodyValue(portfolioNames)
+                .retrieve()
+                .onStatus(PortfolioService::isBatchNotSupported,
+                        error -> Mono.error(new BatchNotSupportedException("Bulk holdings endpoint not supported")))
+                .onStatus(HttpStatusCode::is4xxClientError,
+                        error -> Mono.error(new PortfolioServiceException("Error while retrieving holdings for " + portfolioNames)))
+                .bodyToMono(new ParameterizedTypeReference<Map<String, List<Holding>>>() {
+                })
+                .timeout(Duration.ofSeconds(TIMEOUT_IN_SECONDS));
+    }
+
+    private Mono<Map<String, Cash>> fetchCashBatch(List<String> portfolioNames) {
+        return webClient
+                .post()
+                .uri(SERVER_API_URL + ENDPOINT_CASH_BATCH)
+                .bodyValue(portfolioNames)
+                .retrieve()
+                .onStatus(PortfolioService::isBatchNotSupported,
+                        error -> Mono.error(new BatchNotSupportedException("Bulk cash endpoint not supported")))
+                .onStatus(HttpStatusCode::is4xxClientError,
+                        error -> Mono.error(new PortfolioServiceException("Error while retrieving cash for " + portfolioNames)))
+                .bodyToMono(new ParameterizedTypeReference<Map<String, Cash>>() {
+                })
+                .timeout(Duration.ofSeconds(TIMEOUT_IN_SECONDS));
+    }
+
+    private <T> Mono<ConditionalResult<T>> fetchIfModified(String uri, ConditionalResult.Validators validators,
+                                                            ParameterizedTypeReference<T> type, String what) {
+        return webClient
+                .get()
+                .uri(uri)
+                .headers(validators::applyTo)
+                .exchangeToMono(response -> {
+                    if (response.statusCode().value() == 304) {
+                        return response.releaseBody().thenReturn(ConditionalResult.<T>notModified(validators));
+                    }
+                    if (response.statusCode().is4xxClientError()) {
+                        return response.releaseBody().then(Mono.<ConditionalResult<T>>error(
+                                new PortfolioServiceException("Error while retrieving " + what)));
+                    }
+                    if (response.statusCode().isError()) {
+                        return response.createException().flatMap(error -> Mono.<ConditionalResult<T>>error(error));
+                    }
+                    ConditionalResult.Validators received = ConditionalResult.Validators.of(response.headers().asHttpHeaders());
+                    return response.bodyToMono(type).map(value -> ConditionalResult.modified(value, received));
+                })
+                .timeout(Duration.ofSeconds(TIMEOUT_IN_SECONDS));
+    }
+
+    private static boolean isBatchNotSupported(HttpStatusCode status) {
+        return status.value() == 404 || status.value() == 405 || status.value() == 501;
+    }
+
+    private Mono<Cash> fetchCash(String portfolioName) {
+        return webClient
                 .get()
                 .uri(SERVER_API_URL + BACKSLASH + portfolioName + ENDPOINT_CASH)
                 .retrieve()
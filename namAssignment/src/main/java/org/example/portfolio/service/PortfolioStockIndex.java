@@ -0,0 +1,209 @@
+package org.example.portfolio.service;
+
+import org.example.portfolio.model.Portfolio;
+import org.example.portfolio.store.CompactHoldings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory inverted index of stock id to the names of the portfolios holding it.
+ * The index is built from the holdings feed and refreshed in the background, one portfolio at a time,
+ * so that lookups can be answered without any call to the remote API.
+ * Stock ids are matched case-insensitively. Disabled portfolios are not indexed, so their holdings are never fetched.
+ */
+@Component
+public class PortfolioStockIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(PortfolioStockIndex.class);
+
+    private final PortfolioService portfolioService;
+    private final boolean enabled;
+    private final Duration maxStaleness;
+    private final int refreshConcurrency;
+    private final Clock clock;
+
+    private final Map<String, Set<String>> portfoliosByStock = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> stocksByPortfolio = new ConcurrentHashMap<>();
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    /* incremented whenever an entry of the index changes */
+    private final AtomicLong version = new AtomicLong();
+
+    /* start of the last refresh that re-read the holdings of every portfolio, 0 while the index is cold */
+    private volatile long lastCompleteRefreshMillis;
+
+    @Autowired
+    public PortfolioStockIndex(PortfolioService portfolioService,
+                               @Value("${portfolio.index.enabled:true}") boolean enabled,
+                               @Value("${portfolio.index.max-staleness:60s}") Duration maxStaleness,
+                               @Value("${portfolio.index.refresh-concurrency:16}") int refreshConcurrency) {
+        this(portfolioService, enabled, maxStaleness, refreshConcurrency, Clock.systemUTC());
+    }
+
+    PortfolioStockIndex(PortfolioService portfolioService, boolean enabled, Duration maxStaleness,
+                        int refreshConcurrency, Clock clock) {
+        this.portfolioService = portfolioService;
+        this.enabled = enabled;
+        this.maxStaleness = maxStaleness;
+        this.refreshConcurrency = refreshConcurrency;
+        this.clock = clock;
+    }
+
+    /**
+     * Tells whether the index can be used to answer lookups, i.e. it has been fully built
+     * and its oldest data is within the configured staleness bound.
+     *
+     * @return true if lookups can be served from the index
+     */
+    public boolean isFresh() {
+        long lastRefresh = lastCompleteRefreshMillis;
+        return enabled && lastRefresh > 0
+                && clock.millis() - lastRefresh <= maxStaleness.toMillis();
+    }
+
+    /**
+     * Returns the names of the portfolios holding the given stock.
+     *
+     * @param stockId the stock symbol to search for, case-insensitive
+     * @return the names of the matching portfolios, empty if none
+     */
+    public List<String> lookup(String stockId) {
+        Set<String> names = portfoliosByStock.get(normalize(stockId));
+        return names == null ? Collections.emptyList() : new ArrayList<>(names);
+    }
+
+    /**
+     * Read before {@link #lookup}, tells whether lookups made later may differ from those made then.
+     *
+     * @return a number that changes whenever a portfolio is added to or removed from the entry of a stock
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    @Scheduled(fixedDelayString = "${portfolio.index.refresh-interval-ms:15000}")
+    public void scheduledRefresh() {
+        if (!enabled || !refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        refresh()
+                .doFinally(signal -> refreshing.set(false))
+                .subscribe(null, error -> log.error("Error while refreshing the stock index", error));
+    }
+
+    /**
+     * Re-reads the portfolio list and the holdings of every portfolio, updating only the index
+     * entries whose holdings changed. A portfolio whose holdings cannot be retrieved keeps its previous entries,
+     * and the index is then not considered refreshed by this run, so that it ages out if the failures persist.
+     *
+     * @return a Mono completing when the refresh is done
+     */
+    public Mono<Void> refresh() {
+        long startedAt = clock.millis();
+        return portfolioService.getAllPortfolios()
+                .map(all -> all.stream().filter(PortfolioFilter.ENABLED).collect(Collectors.toList()))
+                .flatMap(portfolios -> {
+                    Set<String> names = new HashSet<>();
+                    portfolios.forEach(p -> names.add(p.getName()));
+                    removeAllExcept(names);
+
+                    AtomicInteger refreshed = new AtomicInteger();
+                    return Flux.fromIterable(portfolios)
+                            .flatMap(p -> refreshPortfolio(p, refreshed), refreshConcurrency)
+                            .doOnComplete(() -> {
+                                if (refreshed.get() == portfolios.size()) {
+                                    lastCompleteRefreshMillis = startedAt;
+                                }
+                                log.info("Stock index refreshed for {} of {} portfolios, {} stocks indexed",
+                                        refreshed.get(), portfolios.size(), portfoliosByStock.size());
+                            })
+                            .then();
+                });
+    }
+
+    private Mono<Void> refreshPortfolio(Portfolio p, AtomicInteger refreshed) {
+        return portfolioService.getCompactHoldings(p.getName())
+                .doOnNext(holdings -> {
+                    update(p.getName(), holdings);
+                    refreshed.incrementAndGet();
+                })
+                .onErrorResume(error -> {
+                    log.warn("Could not refresh holdings of portfolio {} in the stock index", p.getName(), error);
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    void update(String portfolioName, CompactHoldings holdings) {
+        Set<String> stocks = new HashSet<>();
+        for (int i = 0, n = holdings.size(); i < n; i++) {
+            stocks.add(normalize(holdings.stockIdAt(i)));
+        }
+
+        Set<String> previous = stocksByPortfolio.put(portfolioName, stocks);
+        if (previous != null) {
+            for (String stock : previous) {
+                if (!stocks.contains(stock)) {
+                    removeEntry(stock, portfolioName);
+                }
+            }
+        }
+        for (String stock : stocks) {
+            if (previous == null || !previous.contains(stock)) {
+                portfoliosByStock.compute(stock, (k, names) -> {
+                    Set<String> result = names != null ? names : ConcurrentHashMap.newKeySet();
+                    result.add(portfolioName);
+                    return result;
+                });
+            }
+        }
+        // bumped once the lookups see the change, so a response cached under the new version reflects it
+        if (!stocks.equals(previous)) {
+            version.incrementAndGet();
+        }
+    }
+
+    private void removeAllExcept(Set<String> portfolioNames) {
+        for (String name : new ArrayList<>(stocksByPortfolio.keySet())) {
+            if (!portfolioNames.contains(name)) {
+                Set<String> stocks = stocksByPortfolio.remove(name);
+                if (stocks != null) {
+                    stocks.forEach(stock -> removeEntry(stock, name));
+                    version.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    private void removeEntry(String stock, String portfolioName) {
+        portfoliosByStock.computeIfPresent(stock, (k, names) -> {
+            names.remove(portfolioName);
+            return names.isEmpty() ? null : names;
+        });
+    }
+
+    private static String normalize(String stockId) {
+        return stockId.toUpperCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,100 @@
+package org.example.portfolio.service;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * End-to-end deadline of a request, carried in the Reactor context so that every call made on behalf of the
+ * request, however deep, is bounded by the time left instead of its own timeout only.
+ * Calls made outside of a request, e.g. background refreshes, carry no deadline and are not bounded.
+ */
+public final class RequestDeadline {
+
+    private final Duration budget;
+    private final long expiresAtNanos;
+
+    private RequestDeadline(Duration budget, long startNanos) {
+        this.budget = budget;
+        this.expiresAtNanos = startNanos + budget.toNanos();
+    }
+
+    /**
+     * @param budget the time the request may take, from now
+     * @return the deadline
+     */
+    public static RequestDeadline after(Duration budget) {
+        return new RequestDeadline(budget, System.nanoTime());
+    }
+
+    /**
+     * @return the deadline of the request the context belongs to, if any
+     */
+    public static Optional<RequestDeadline> current(ContextView context) {
+        return context.getOrEmpty(RequestDeadline.class);
+    }
+
+    /**
+     * Bounds a call by the deadline found in the subscriber's context, failing it with a
+     * {@link DeadlineExceededException} once the deadline expires.
+     */
+    public static <T> Mono<T> bound(String what, Mono<T> call) {
+        return Mono.deferContextual(context -> current(context)
+                .map(deadline -> deadline.apply(what, call))
+                .orElse(call));
+    }
+
+    /**
+     * Bounds a streaming call by the deadline found in the subscriber's context: elements received in time are
+     * emitted, then the stream fails with a {@link DeadlineExceededException} if it did not complete in time.
+     */
+    public static <T> Flux<T> boundMany(String what, Flux<T> call) {
+        return Flux.deferContextual(context -> current(context)
+                .map(deadline -> deadline.applyMany(what, call))
+                .orElse(call));
+    }
+
+    public Context attachTo(Context context) {
+        return context.put(RequestDeadline.class, this);
+    }
+
+    public Duration getBudget() {
+        return budget;
+    }
+
+    public Duration remaining() {
+        return Duration.ofNanos(Math.max(0, expiresAtNanos - System.nanoTime()));
+    }
+
+    public boolean isExpired() {
+        return expiresAtNanos - System.nanoTime() <= 0;
+    }
+
+    private <T> Mono<T> apply(String what, Mono<T> call) {
+        Duration remaining = remaining();
+        if (remaining.isZero()) {
+            return Mono.error(exceeded(what));
+        }
+        return call.timeout(remaining, Mono.defer(() -> Mono.<T>error(exceeded(what))));
+    }
+
+    private <T> Flux<T> applyMany(String what, Flux<T> call) {
+        Duration remaining = remaining();
+        if (remaining.isZero()) {
+            return Flux.error(exceeded(what));
+        }
+        AtomicBoolean completed = new AtomicBoolean();
+        return call.doOnComplete(() -> completed.set(true))
+                .takeUntilOther(Mono.delay(remaining))
+                .concatWith(Mono.defer(() -> completed.get() ? Mono.<T>empty() : Mono.<T>error(exceeded(what))));
+    }
+
+    private DeadlineExceededException exceeded(String what) {
+        return new DeadlineExceededException("Deadline of " + budget.toMillis() + "ms exceeded while retrieving " + what);
+    }
+}
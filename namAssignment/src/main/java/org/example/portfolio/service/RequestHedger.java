@@ -0,0 +1,159 @@
+package org.example.portfolio.service;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Signal;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Hedges the calls of one remote endpoint: when a call has not answered after the configured percentile of the
+ * latencies recently observed on the endpoint, a duplicate call is sent and the first one to succeed wins, the other
+ * being cancelled. The hedged call fails only once both calls have failed, a call failing before it is hedged is not
+ * hedged at all. Hedges are capped by a budget, a fraction of the calls, so that a slow upstream is not sent twice
+ * its load. No call is hedged until enough latencies have been observed.
+ * Latencies are measured, and the hedge delay counted, from when a call is sent rather than from when it is made, so
+ * that the time a call waits locally for a token or a permit neither stretches the delay nor gets the call hedged.
+ */
+public final class RequestHedger {
+
+    private static final int SAMPLES = 1024;
+    private static final int RECOMPUTE_EVERY = 64;
+    private static final double MAX_BUDGET = 10;
+
+    private final boolean enabled;
+    private final double percentile;
+    private final long minDelayNanos;
+    private final double budgetRatio;
+    private final int minSamples;
+    private final Scheduler scheduler;
+    private final LongSupplier nanoClock;
+    private final Runnable onHedge;
+
+    /* guarded by this */
+    private final long[] samples = new long[SAMPLES];
+    private int sampleCount;
+    private int sampleIndex;
+    private int samplesSinceRecompute;
+    private long hedgeDelayNanos = -1;
+    private double budget;
+
+    /**
+     * @param enabled     false to never hedge
+     * @param percentile  the percentile of observed latencies, between 0 and 1, after which a call is hedged
+     * @param minDelay    the minimum delay before a call is hedged
+     * @param budgetRatio the maximum fraction of calls that are hedged
+     * @param minSamples  the number of latencies observed before calls are hedged
+     * @param scheduler   the scheduler of the hedge delays
+     * @param nanoClock   the clock latencies are measured with, in nanoseconds
+     * @param onHedge     called each time a hedge is sent
+     */
+    RequestHedger(boolean enabled, double percentile, Duration minDelay, double budgetRatio, int minSamples,
+                  Scheduler scheduler, LongSupplier nanoClock, Runnable onHedge) {
+        this.enabled = enabled;
+        this.percentile = percentile;
+        this.minDelayNanos = minDelay.toNanos();
+        this.budgetRatio = budgetRatio;
+        this.minSamples = Math.min(minSamples, SAMPLES);
+        this.scheduler = scheduler;
+        this.nanoClock = nanoClock;
+        this.onHedge = onHedge;
+    }
+
+    /**
+     * Hedges a call that is sent as soon as it is made.
+     *
+     * @param call the call
+     * @return the result of the first of the call and its hedge to succeed
+     */
+    public <T> Mono<T> run(Supplier<Mono<T>> call) {
+        return run(send -> send.apply(Mono.defer(call)));
+    }
+
+    /**
+     * Hedges a call that may wait locally before it is sent.
+     *
+     * @param call the call, given the operator to apply to the request once it is about to be sent
+     * @return the result of the first of the call and its hedge to succeed
+     */
+    public <T> Mono<T> run(Function<UnaryOperator<Mono<T>>, Mono<T>> call) {
+        if (!enabled) {
+            return Mono.defer(() -> call.apply(UnaryOperator.identity()));
+        }
+        return Mono.defer(() -> {
+            long delay = onCall();
+            Sinks.Empty<Void> primarySent = Sinks.empty();
+            Mono<T> primary = attempt(call, primarySent::tryEmitEmpty);
+            if (delay < 0) {
+                return primary;
+            }
+            Sinks.One<Throwable> primaryError = Sinks.one();
+            Mono<Signal<T>> first = primary.doOnError(primaryError::tryEmitValue).materialize();
+            // no hedge is sent for a call still waiting to be sent or that already failed, nor when the budget is spent
+            Mono<Signal<T>> second = primarySent.asMono()
+                    .then(Mono.delay(Duration.ofNanos(delay), scheduler))
+                    .takeUntilOther(primaryError.asMono())
+                    .filter(tick -> tryHedge())
+                    .flatMap(tick -> attempt(call, () -> { }).materialize());
+            // the first success wins, the error of the primary call is kept when both calls fail
+            return Flux.merge(first, second)
+                    .filter(signal -> !signal.isOnError())
+                    .next()
+                    .switchIfEmpty(primaryError.asMono().flatMap(Mono::<Signal<T>>error))
+                    .dematerialize();
+        });
+    }
+
+    /**
+     * @return the current hedge delay, or null while not enough latencies have been observed
+     */
+    public synchronized Duration getHedgeDelay() {
+        return hedgeDelayNanos < 0 ? null : Duration.ofNanos(hedgeDelayNanos);
+    }
+
+    private <T> Mono<T> attempt(Function<UnaryOperator<Mono<T>>, Mono<T>> call, Runnable onSent) {
+        return Mono.defer(() -> call.apply(request -> Mono.defer(() -> {
+            onSent.run();
+            long start = nanoClock.getAsLong();
+            return request.doOnSuccess(value -> record(nanoClock.getAsLong() - start));
+        })));
+    }
+
+    /* every call earns a fraction of a hedge */
+    private synchronized long onCall() {
+        budget = Math.min(MAX_BUDGET, budget + budgetRatio);
+        return hedgeDelayNanos;
+    }
+
+    private boolean tryHedge() {
+        synchronized (this) {
+            if (budget < 1) {
+                return false;
+            }
+            budget--;
+        }
+        onHedge.run();
+        return true;
+    }
+
+    private synchronized void record(long latencyNanos) {
+        samples[sampleIndex] = latencyNanos;
+        sampleIndex = (sampleIndex + 1) % SAMPLES;
+        sampleCount = Math.min(SAMPLES, sampleCount + 1);
+        if (sampleCount >= minSamples && ++samplesSinceRecompute >= Math.min(RECOMPUTE_EVERY, minSamples)) {
+            samplesSinceRecompute = 0;
+            long[] sorted = Arrays.copyOf(samples, sampleCount);
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(percentile * sampleCount) - 1;
+            long observed = sorted[Math.max(0, Math.min(sampleCount - 1, rank))];
+            hedgeDelayNanos = Math.max(minDelayNanos, observed);
+        }
+    }
+}
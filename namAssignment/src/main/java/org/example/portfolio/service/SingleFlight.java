@@ -0,0 +1,74 @@
+package org.example.portfolio.service;
+
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Deduplicates concurrent identical calls: while a call for a key is in flight, every other
+ * subscriber for the same key shares its result instead of triggering a new call.
+ * The shared call is cancelled only once all of its subscribers have cancelled, and a key is
+ * released as soon as its call terminates, so no result outlives the call that produced it.
+ * A call only serves subscribers of its {@link UpstreamPriority} or lower: an interactive subscriber finding a
+ * background call in flight starts a call of its own, which later subscribers join, rather than waiting behind
+ * background calls.
+ *
+ * @param <K> the key identifying identical calls
+ * @param <V> the result type
+ */
+public final class SingleFlight<K, V> {
+
+    private final Map<K, Flight<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Runs the call for the key, or joins the call already in flight for it.
+     *
+     * @param key  the key identifying the call
+     * @param call the call to run if none is in flight for the key
+     * @return a Mono sharing the result of the call
+     */
+    public Mono<V> execute(K key, Supplier<Mono<V>> call) {
+        return Mono.deferContextual(context -> {
+            UpstreamPriority priority = UpstreamPriority.current(context);
+            return inFlight.compute(key, (k, flight) -> flight != null && flight.priority.compareTo(priority) <= 0
+                    ? flight
+                    : share(k, call.get(), priority)).shared;
+        });
+    }
+
+    /**
+     * @return the number of calls currently in flight
+     */
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+
+    /* the call runs with the priority of the subscriber that started it, whoever subscribes first */
+    private Flight<V> share(K key, Mono<V> call, UpstreamPriority priority) {
+        AtomicReference<Flight<V>> self = new AtomicReference<>();
+        Mono<V> shared = call
+                .doFinally(signal -> inFlight.remove(key, self.get()))
+                .contextWrite(priority::attachTo)
+                .flux()
+                .publish()
+                .refCount(1)
+                .singleOrEmpty();
+        Flight<V> flight = new Flight<>(shared, priority);
+        self.set(flight);
+        return flight;
+    }
+
+    private static final class Flight<V> {
+
+        private final Mono<V> shared;
+        private final UpstreamPriority priority;
+
+        Flight(Mono<V> shared, UpstreamPriority priority) {
+            this.shared = shared;
+            this.priority = priority;
+        }
+    }
+}
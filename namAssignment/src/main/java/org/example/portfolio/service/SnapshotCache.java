@@ -0,0 +1,200 @@
+package org.example.portfolio.service;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import reactor.core.publisher.Mono;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Cache of the last known value returned by the remote API for a key.
+ * Values past their soft TTL are still served while a refresh runs in the background
+ * (stale-while-revalidate), values past their hard TTL are reloaded before being served.
+ * A cache built without a backing store simply delegates every call to its loader.
+ * Values restored from an on-disk snapshot are served as stale until they are refreshed.
+ * A miss loaded in the background is reloaded at interactive priority when an interactive caller needs it meanwhile,
+ * so that requests do not wait behind background calls.
+ *
+ * @param <K> the key type, e.g. a portfolio name
+ * @param <V> the cached value type
+ */
+public final class SnapshotCache<K, V> {
+
+    private final String name;
+    private final Function<K, Mono<V>> loader;
+    private final AsyncLoadingCache<K, V> cache;
+
+    /*
+     * values restored from a snapshot and not replaced since, by their key. The cache removes an entry whenever it
+     * replaces or evicts its value, whether through refresh(), a background refresh, a put or an expiry
+     */
+    private final Map<K, V> restored;
+
+    /* misses being loaded with background priority */
+    private final Map<K, CompletableFuture<V>> backgroundLoads = new ConcurrentHashMap<>();
+
+    SnapshotCache(String name, Function<K, Mono<V>> loader, AsyncLoadingCache<K, V> cache, Map<K, V> restored) {
+        this.name = name;
+        this.loader = loader;
+        this.cache = cache;
+        this.restored = restored;
+    }
+
+    /**
+     * Returns the cached value for the key, loading it if absent or expired.
+     *
+     * @param key the key to look up
+     * @return a Mono containing the value
+     */
+    public Mono<V> get(K key) {
+        if (cache == null) {
+            return loader.apply(key);
+        }
+        // the future is shared with concurrent callers, so a cancelled subscriber must not cancel it,
+        // and a miss is loaded with the priority of the caller, refreshes run in the background
+        return Mono.deferContextual(context -> {
+            UpstreamPriority priority = UpstreamPriority.current(context);
+            if (priority == UpstreamPriority.INTERACTIVE) {
+                CompletableFuture<V> loading = backgroundLoads.get(key);
+                if (loading != null && backgroundLoads.remove(key, loading)) {
+                    return Mono.fromFuture(promote(key, loading), true);
+                }
+            }
+            return Mono.fromFuture(cache.get(key, (k, executor) -> load(k, priority)), true);
+        });
+    }
+
+    private CompletableFuture<V> load(K key, UpstreamPriority priority) {
+        CompletableFuture<V> future = loader.apply(key).contextWrite(priority::attachTo).toFuture();
+        if (priority == UpstreamPriority.BACKGROUND && !future.isDone()) {
+            backgroundLoads.put(key, future);
+            future.whenComplete((value, error) -> backgroundLoads.remove(key, future));
+        }
+        return future;
+    }
+
+    /* the background load keeps running for its own callers, later callers join the interactive one */
+    private CompletableFuture<V> promote(K key, CompletableFuture<V> loading) {
+        CompletableFuture<V> promoted = load(key, UpstreamPriority.INTERACTIVE);
+        if (!cache.asMap().replace(key, loading, promoted)) {
+            cache.asMap().putIfAbsent(key, promoted);
+        }
+        return promoted;
+    }
+
+    /**
+     * Returns the value for the key only if it is already cached, without loading it.
+     *
+     * @param key the key to look up
+     * @return a Mono containing the cached value, empty if the key is not cached or still loading
+     */
+    public Mono<V> getIfPresent(K key) {
+        if (cache == null) {
+            return Mono.empty();
+        }
+        V value = cache.synchronous().getIfPresent(key);
+        return Mono.justOrEmpty(value);
+    }
+
+    /**
+     * Caches a value obtained without the loader, e.g. holdings streamed to the end of the response.
+     *
+     * @param key   the key of the value
+     * @param value the value, replacing the cached one
+     */
+    public void put(K key, V value) {
+        if (cache != null) {
+            cache.put(key, CompletableFuture.completedFuture(value));
+            restored.remove(key);
+        }
+    }
+
+    /**
+     * Reloads the value for the key from the remote API, serving the current value meanwhile.
+     * If the reload fails the current value is kept.
+     *
+     * @param key the key to reload
+     * @return a Mono containing the reloaded value
+     */
+    public Mono<V> refresh(K key) {
+        if (cache == null) {
+            return loader.apply(key);
+        }
+        return Mono.defer(() -> Mono.fromFuture(cache.synchronous().refresh(key), true))
+                .doOnNext(value -> restored.remove(key));
+    }
+
+    /**
+     * @return a copy of the values currently cached, empty if the cache is disabled
+     */
+    public Map<K, V> snapshot() {
+        if (cache == null) {
+            return Collections.emptyMap();
+        }
+        return new HashMap<>(cache.synchronous().asMap());
+    }
+
+    /**
+     * Puts values restored from a snapshot in the cache, without overwriting values already loaded.
+     * Restored values are subject to the TTLs as if they had just been loaded, and are reported as restored
+     * until they are replaced or evicted.
+     *
+     * @param values the values to restore
+     * @return the number of values restored
+     */
+    public int restore(Map<K, V> values) {
+        if (cache == null) {
+            return 0;
+        }
+        int count = 0;
+        for (Map.Entry<K, V> entry : values.entrySet()) {
+            // recorded first, so that an eviction right after the put clears it
+            restored.put(entry.getKey(), entry.getValue());
+            if (cache.asMap().putIfAbsent(entry.getKey(), CompletableFuture.completedFuture(entry.getValue())) == null) {
+                count++;
+            } else {
+                restored.remove(entry.getKey(), entry.getValue());
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the keys whose value was restored from a snapshot and not replaced or evicted since
+     */
+    public Set<K> restoredKeys() {
+        return Collections.unmodifiableSet(restored.keySet());
+    }
+
+    public void invalidateAll() {
+        if (cache != null) {
+            cache.synchronous().invalidateAll();
+        }
+        restored.clear();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isEnabled() {
+        return cache != null;
+    }
+
+    public long estimatedSize() {
+        return cache == null ? 0 : cache.synchronous().estimatedSize();
+    }
+
+    /**
+     * @return the hit, miss and eviction counters of this cache
+     */
+    public CacheStats stats() {
+        return cache == null ? CacheStats.empty() : cache.synchronous().stats();
+    }
+}
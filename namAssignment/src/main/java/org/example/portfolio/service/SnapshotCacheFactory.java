@@ -0,0 +1,104 @@
+package org.example.portfolio.service;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Ticker;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Creates the per-endpoint {@link SnapshotCache}s used by {@link PortfolioService}.
+ * Each endpoint reads its settings under portfolio.cache.&lt;endpoint&gt;:
+ *  soft-ttl (age after which a refresh is triggered), hard-ttl (age after which a value is no longer served),
+ *  max-entries and, for weighted values such as holdings lists, max-weight.
+ * Eviction beyond the size bound uses Caffeine's W-TinyLFU policy.
+ */
+@Component
+public class SnapshotCacheFactory {
+
+    private static final Duration DEFAULT_SOFT_TTL = Duration.ofSeconds(10);
+    private static final Duration DEFAULT_HARD_TTL = Duration.ofSeconds(60);
+    private static final long DEFAULT_MAX_ENTRIES = 10_000;
+
+    private final boolean enabled;
+    private final Environment environment;
+    private final MeterRegistry meterRegistry;
+    private final Ticker ticker;
+    private final Executor executor;
+
+    @Autowired
+    public SnapshotCacheFactory(@Value("${portfolio.cache.enabled:true}") boolean enabled,
+                                Environment environment, MeterRegistry meterRegistry) {
+        this(enabled, environment, meterRegistry, Ticker.systemTicker(), ForkJoinPool.commonPool());
+    }
+
+    SnapshotCacheFactory(boolean enabled, Environment environment, MeterRegistry meterRegistry,
+                         Ticker ticker, Executor executor) {
+        this.enabled = enabled;
+        this.environment = environment;
+        this.meterRegistry = meterRegistry;
+        this.ticker = ticker;
+        this.executor = executor;
+    }
+
+    /**
+     * @return a factory whose caches delegate every call to their loader
+     */
+    public static SnapshotCacheFactory disabled() {
+        return new SnapshotCacheFactory(false, null, null, Ticker.systemTicker(), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates the cache of an endpoint.
+     *
+     * @param endpoint the endpoint name, used for the settings prefix and the metrics tag
+     * @param loader   the call to the remote API loading a value
+     * @param weigher  the weight of a value, used when max-weight is configured for the endpoint
+     * @return the cache
+     */
+    public <V> SnapshotCache<String, V> create(String endpoint, Function<String, Mono<V>> loader,
+                                               ToIntFunction<V> weigher) {
+        if (!enabled) {
+            return new SnapshotCache<>(endpoint, loader, null, Collections.emptyMap());
+        }
+        String prefix = "portfolio.cache." + endpoint + ".";
+        Duration softTtl = environment.getProperty(prefix + "soft-ttl", Duration.class, DEFAULT_SOFT_TTL);
+        Duration hardTtl = environment.getProperty(prefix + "hard-ttl", Duration.class, DEFAULT_HARD_TTL);
+        long maxWeight = environment.getProperty(prefix + "max-weight", Long.class, 0L);
+        long maxEntries = environment.getProperty(prefix + "max-entries", Long.class, DEFAULT_MAX_ENTRIES);
+
+        Caffeine<String, V> builder = maxWeight > 0
+                ? Caffeine.newBuilder().maximumWeight(maxWeight).weigher((String key, V value) -> weigher.applyAsInt(value))
+                : Caffeine.newBuilder().maximumWeight(maxEntries).weigher((String key, V value) -> 1);
+        builder.expireAfterWrite(hardTtl)
+                .ticker(ticker)
+                .executor(executor)
+                .recordStats();
+        if (softTtl.compareTo(hardTtl) < 0) {
+            builder.refreshAfterWrite(softTtl);
+        }
+        Map<String, V> restored = new ConcurrentHashMap<>();
+        builder.removalListener((String key, V value, RemovalCause cause) -> restored.remove(key, value));
+
+        AsyncLoadingCache<String, V> cache = builder.buildAsync((key, ignored) -> loader.apply(key).toFuture());
+        if (meterRegistry != null) {
+            CaffeineCacheMetrics.monitor(meterRegistry, cache.synchronous(), "portfolio." + endpoint);
+        }
+        return new SnapshotCache<>(endpoint, loader, cache, restored);
+    }
+}
@@ -0,0 +1,127 @@
+package org.example.portfolio.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.example.portfolio.store.HoldingsStore;
+import org.example.portfolio.store.PortfolioSnapshot;
+import org.example.portfolio.store.SnapshotFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+
+/**
+ * Persists the caches of {@link PortfolioService} to a snapshot file so that a restarted instance starts warm.
+ * The snapshot is written periodically and on shutdown. At startup it is read back before the server accepts
+ * requests, its values are served as stale, and they are reloaded in the background with a bounded number of
+ * calls in flight. A snapshot older than portfolio.snapshot.max-age, of another format version or corrupted is
+ * ignored and the service starts cold.
+ */
+@Component
+public class SnapshotPersister {
+
+    private static final Logger log = LoggerFactory.getLogger(SnapshotPersister.class);
+
+    private final PortfolioService portfolioService;
+    private final HoldingsStore holdingsStore;
+    private final boolean enabled;
+    private final Path path;
+    private final Duration maxAge;
+    private final int refreshConcurrency;
+    private final Clock clock;
+
+    @Autowired
+    public SnapshotPersister(PortfolioService portfolioService, HoldingsStore holdingsStore,
+                             @Value("${portfolio.snapshot.enabled:false}") boolean enabled,
+                             @Value("${portfolio.snapshot.path:data/portfolio-snapshot.bin}") Path path,
+                             @Value("${portfolio.snapshot.max-age:24h}") Duration maxAge,
+                             @Value("${portfolio.snapshot.refresh-concurrency:8}") int refreshConcurrency) {
+        this(portfolioService, holdingsStore, enabled, path, maxAge, refreshConcurrency, Clock.systemUTC());
+    }
+
+    SnapshotPersister(PortfolioService portfolioService, HoldingsStore holdingsStore, boolean enabled, Path path,
+                      Duration maxAge, int refreshConcurrency, Clock clock) {
+        this.portfolioService = portfolioService;
+        this.holdingsStore = holdingsStore;
+        this.enabled = enabled;
+        this.path = path;
+        this.maxAge = maxAge;
+        this.refreshConcurrency = refreshConcurrency;
+        this.clock = clock;
+    }
+
+    @PostConstruct
+    public void restore() {
+        if (!enabled || !Files.exists(path)) {
+            return;
+        }
+        long startedAt = clock.millis();
+        PortfolioSnapshot snapshot;
+        try {
+            snapshot = SnapshotFile.read(path, holdingsStore);
+        } catch (IOException e) {
+            log.warn("Ignoring portfolio snapshot {}: {}", path, e.getMessage());
+            return;
+        }
+        long age = startedAt - snapshot.getTakenAtMillis();
+        if (age > maxAge.toMillis()) {
+            log.info("Ignoring portfolio snapshot {} taken {}s ago", path, age / 1000);
+            return;
+        }
+        int restored = portfolioService.restoreSnapshot(snapshot);
+        log.info("Restored {} cached values from portfolio snapshot {} taken {}s ago, in {}ms",
+                restored, path, age / 1000, clock.millis() - startedAt);
+
+        long refreshStartedAt = clock.millis();
+        portfolioService.refreshRestored(refreshConcurrency)
+                .subscribe(null,
+                        error -> log.error("Error while refreshing values restored from the portfolio snapshot", error),
+                        () -> log.info("Values restored from the portfolio snapshot refreshed in {}ms",
+                                clock.millis() - refreshStartedAt));
+    }
+
+    @Scheduled(fixedDelayString = "${portfolio.snapshot.write-interval-ms:60000}",
+            initialDelayString = "${portfolio.snapshot.write-interval-ms:60000}")
+    public void scheduledWrite() {
+        if (enabled) {
+            write();
+        }
+    }
+
+    @PreDestroy
+    public void writeOnShutdown() {
+        if (enabled) {
+            write();
+        }
+    }
+
+    /**
+     * Writes the current content of the caches to the snapshot file. Nothing is written while the caches are
+     * empty, so that a cold instance never replaces a useful snapshot with an empty one.
+     *
+     * @return true if a snapshot was written
+     */
+    public boolean write() {
+        PortfolioSnapshot snapshot = portfolioService.takeSnapshot();
+        if (snapshot.isEmpty()) {
+            return false;
+        }
+        try {
+            SnapshotFile.write(path, snapshot);
+            log.debug("Portfolio snapshot written to {}: {} holdings, {} cash", path,
+                    snapshot.getHoldings().size(), snapshot.getCash().size());
+            return true;
+        } catch (IOException e) {
+            log.error("Error while writing the portfolio snapshot to {}", path, e);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package org.example.portfolio.service;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Scheduler;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Collects per-portfolio requests over a short window, or until the batch is full, and sends them to the
+ * remote API as one bulk request whose results are handed back to the individual callers.
+ * When the remote API answers that it does not support bulk requests, the batcher falls back to
+ * per-portfolio requests and probes the bulk endpoint again only after the retry interval.
+ * A bulk request is sent with the highest {@link UpstreamPriority} of the callers it serves.
+ *
+ * @param <V> the type of the per-portfolio result
+ */
+public final class UpstreamBatcher<V> {
+
+    private final String name;
+    private final boolean enabled;
+    private final Duration window;
+    private final int maxBatchSize;
+    private final Duration unsupportedRetryInterval;
+    private final Scheduler scheduler;
+    private final LongSupplier clock;
+    private final Function<List<String>, Mono<Map<String, V>>> bulkCall;
+    private final Function<String, Mono<V>> singleCall;
+
+    /* guarded by this */
+    private List<Pending<V>> current = new ArrayList<>();
+    private long bulkUnsupportedUntil;
+
+    UpstreamBatcher(String name, boolean enabled, Duration window, int maxBatchSize, Duration unsupportedRetryInterval,
+                    Scheduler scheduler, LongSupplier clock,
+                    Function<List<String>, Mono<Map<String, V>>> bulkCall, Function<String, Mono<V>> singleCall) {
+        this.name = name;
+        this.enabled = enabled;
+        this.window = window;
+        this.maxBatchSize = maxBatchSize;
+        this.unsupportedRetryInterval = unsupportedRetryInterval;
+        this.scheduler = scheduler;
+        this.clock = clock;
+        this.bulkCall = bulkCall;
+        this.singleCall = singleCall;
+    }
+
+    /**
+     * Retrieves the result for one portfolio, as part of the next bulk request if batching is available.
+     *
+     * @param portfolioName the name of the portfolio
+     * @return a Mono containing the result for the portfolio
+     */
+    public Mono<V> get(String portfolioName) {
+        if (!isBatching()) {
+            return singleCall.apply(portfolioName);
+        }
+        return Mono.deferContextual(context -> Mono.create(
+                sink -> add(new Pending<>(portfolioName, UpstreamPriority.current(context), sink))));
+    }
+
+    public synchronized boolean isBatching() {
+        return enabled && clock.getAsLong() >= bulkUnsupportedUntil;
+    }
+
+    private void add(Pending<V> pending) {
+        List<Pending<V>> ready = null;
+        synchronized (this) {
+            current.add(pending);
+            if (current.size() >= maxBatchSize) {
+                ready = current;
+                current = new ArrayList<>();
+            } else if (current.size() == 1) {
+                List<Pending<V>> batch = current;
+                scheduler.schedule(() -> flush(batch), window.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        }
+        if (ready != null) {
+            dispatch(ready);
+        }
+    }
+
+    private void flush(List<Pending<V>> batch) {
+        synchronized (this) {
+            // the batch may already have been dispatched because it filled up
+            if (current != batch) {
+                return;
+            }
+            current = new ArrayList<>();
+        }
+        dispatch(batch);
+    }
+
+    private void dispatch(List<Pending<V>> batch) {
+        Set<String> names = new LinkedHashSet<>();
+        UpstreamPriority priority = UpstreamPriority.BACKGROUND;
+        for (Pending<V> p : batch) {
+            names.add(p.portfolioName);
+            if (p.priority.compareTo(priority) < 0) {
+                priority = p.priority;
+            }
+        }
+
+        bulkCall.apply(new ArrayList<>(names)).contextWrite(priority::attachTo).subscribe(
+                results -> batch.forEach(p -> {
+                    V value = results.get(p.portfolioName);
+                    if (value != null) {
+                        p.sink.success(value);
+                    } else {
+                        p.sink.error(new PortfolioServiceException("No " + name + " returned for " + p.portfolioName));
+                    }
+                }),
+                error -> {
+                    if (error instanceof BatchNotSupportedException) {
+                        synchronized (this) {
+                            bulkUnsupportedUntil = clock.getAsLong() + unsupportedRetryInterval.toMillis();
+                        }
+                        batch.forEach(p -> singleCall.apply(p.portfolioName).contextWrite(p.priority::attachTo).subscribe(
+                                p.sink::success, p.sink::error, p.sink::success));
+                    } else {
+                        batch.forEach(p -> p.sink.error(error));
+                    }
+                });
+    }
+
+    private static final class Pending<V> {
+
+        private final String portfolioName;
+        private final UpstreamPriority priority;
+        private final MonoSink<V> sink;
+
+        Pending(String portfolioName, UpstreamPriority priority, MonoSink<V> sink) {
+            this.portfolioName = portfolioName;
+            this.priority = priority;
+            this.sink = sink;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.example.portfolio.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Creates the {@link UpstreamBatcher}s used by {@link PortfolioService}, configured under upstream.batch:
+ *  enabled, window (how long requests are collected), max-size (requests per bulk call) and
+ *  unsupported-retry-interval (how long to wait before probing again a bulk endpoint the remote API rejected).
+ */
+@Component
+public class UpstreamBatcherFactory {
+
+    private final boolean enabled;
+    private final Duration window;
+    private final int maxBatchSize;
+    private final Duration unsupportedRetryInterval;
+
+    @Autowired
+    public UpstreamBatcherFactory(@Value("${upstream.batch.enabled:false}") boolean enabled,
+                                  @Value("${upstream.batch.window:5ms}") Duration window,
+                                  @Value("${upstream.batch.max-size:100}") int maxBatchSize,
+                                  @Value("${upstream.batch.unsupported-retry-interval:5m}") Duration unsupportedRetryInterval) {
+        this.enabled = enabled;
+        this.window = window;
+        this.maxBatchSize = maxBatchSize;
+        this.unsupportedRetryInterval = unsupportedRetryInterval;
+    }
+
+    /**
+     * @return a factory whose batchers always send per-portfolio requests
+     */
+    public static UpstreamBatcherFactory disabled() {
+        return new UpstreamBatcherFactory(false, Duration.ZERO, 1, Duration.ZERO);
+    }
+
+    /**
+     * Creates the batcher of an endpoint.
+     *
+     * @param name       the endpoint name, used in error messages
+     * @param bulkCall   the bulk request for a list of portfolio names, returning the results by name
+     * @param singleCall the per-portfolio request, used when batching is disabled or not supported
+     * @return the batcher
+     */
+    public <V> UpstreamBatcher<V> create(String name, Function<List<String>, Mono<Map<String, V>>> bulkCall,
+                                         Function<String, Mono<V>> singleCall) {
+        return new UpstreamBatcher<>(name, enabled, window, maxBatchSize, unsupportedRetryInterval,
+                Schedulers.parallel(), System::currentTimeMillis, bulkCall, singleCall);
+    }
+}
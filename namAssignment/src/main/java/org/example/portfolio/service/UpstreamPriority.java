@@ -0,0 +1,36 @@
+package org.example.portfolio.service;
+
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.util.Locale;
+
+/**
+ * Priority class of a call to the remote API, carried in the Reactor context like {@link RequestDeadline}.
+ * Calls made on behalf of a controller request are interactive. Calls made outside of a request, e.g. background
+ * refreshes of the caches, the index and the view, carry no priority and are background.
+ * Constants are declared in the order their calls are served.
+ */
+public enum UpstreamPriority {
+
+    INTERACTIVE,
+    BACKGROUND;
+
+    /**
+     * @return the priority of the calls made in the context, background if none is set
+     */
+    public static UpstreamPriority current(ContextView context) {
+        return context.getOrDefault(UpstreamPriority.class, BACKGROUND);
+    }
+
+    public Context attachTo(Context context) {
+        return context.put(UpstreamPriority.class, this);
+    }
+
+    /**
+     * @return the name of the priority as used in metric tags
+     */
+    public String tag() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,318 @@
+package org.example.portfolio.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Token bucket in front of the calls to the remote API, refilled at a steady rate up to the burst size.
+ * A call that finds no token waits in the FIFO lane of its {@link UpstreamPriority}. The interactive lane is always
+ * served first, so background refreshes only get the tokens left over by interactive requests.
+ * Under pressure queued background calls are shed with an {@link UpstreamThrottledException}, they do not wait
+ * for the call timeout: when the lanes are full an interactive call takes the place of the last queued background
+ * call, and a background call waiting longer than the background max wait is dropped.
+ * Metrics, tagged by priority: upstream.rate-limit.queued (calls waiting for a token), upstream.rate-limit.wait
+ * (time spent waiting for a token) and upstream.rate-limit.shed (calls shed, also tagged by reason).
+ */
+@Component
+public class UpstreamRateLimiter {
+
+    public static final String SHED_QUEUE_FULL = "queue_full";
+    public static final String SHED_MAX_WAIT = "max_wait";
+
+    private static final int WAITING = 0;
+    private static final int GRANTED = 1;
+    private static final int DONE = 2;
+
+    private final boolean enabled;
+    private final double nanosPerPermit;
+    private final double burst;
+    private final int maxQueued;
+    private final long backgroundMaxWaitNanos;
+    private final Scheduler scheduler;
+    private final LongSupplier nanoClock;
+
+    private final MeterRegistry meterRegistry;
+    private final Map<UpstreamPriority, Timer> waitTimers = new EnumMap<>(UpstreamPriority.class);
+    private final Map<String, Counter> shedCounters = new ConcurrentHashMap<>();
+
+    /* guarded by this */
+    private double tokens;
+    private long refilledAtNanos;
+    private boolean drainScheduled;
+    private final Map<UpstreamPriority, Deque<Ticket>> lanes = new EnumMap<>(UpstreamPriority.class);
+
+    @Autowired
+    public UpstreamRateLimiter(@Value("${upstream.rate-limit.enabled:true}") boolean enabled,
+                               @Value("${upstream.rate-limit.permits-per-second:1000}") double permitsPerSecond,
+                               @Value("${upstream.rate-limit.burst:200}") int burst,
+                               @Value("${upstream.rate-limit.max-queued:1000}") int maxQueued,
+                               @Value("${upstream.rate-limit.background-max-wait:2s}") Duration backgroundMaxWait,
+                               MeterRegistry meterRegistry) {
+        this(enabled, permitsPerSecond, burst, maxQueued, backgroundMaxWait, meterRegistry,
+                Schedulers.parallel(), System::nanoTime);
+    }
+
+    UpstreamRateLimiter(boolean enabled, double permitsPerSecond, int burst, int maxQueued,
+                        Duration backgroundMaxWait, MeterRegistry meterRegistry,
+                        Scheduler scheduler, LongSupplier nanoClock) {
+        this.enabled = enabled;
+        this.nanosPerPermit = TimeUnit.SECONDS.toNanos(1) / permitsPerSecond;
+        this.burst = Math.max(1, burst);
+        this.maxQueued = maxQueued;
+        this.backgroundMaxWaitNanos = backgroundMaxWait.toNanos();
+        this.scheduler = scheduler;
+        this.nanoClock = nanoClock;
+        this.meterRegistry = meterRegistry;
+        this.tokens = this.burst;
+        this.refilledAtNanos = nanoClock.getAsLong();
+        for (UpstreamPriority priority : UpstreamPriority.values()) {
+            lanes.put(priority, new ArrayDeque<>());
+        }
+        if (enabled && meterRegistry != null) {
+            for (UpstreamPriority priority : UpstreamPriority.values()) {
+                Gauge.builder("upstream.rate-limit.queued", this, limiter -> limiter.getQueueDepth(priority))
+                        .description("Calls to the remote API waiting for a token")
+                        .tag("priority", priority.tag())
+                        .register(meterRegistry);
+                waitTimers.put(priority, Timer.builder("upstream.rate-limit.wait")
+                        .description("Time spent by calls to the remote API waiting for a token")
+                        .tag("priority", priority.tag())
+                        .publishPercentiles(0.5, 0.95, 0.99)
+                        .register(meterRegistry));
+            }
+        }
+    }
+
+    /**
+     * @return a limiter that never delays nor sheds calls
+     */
+    public static UpstreamRateLimiter disabled() {
+        return new UpstreamRateLimiter(false, 1, 1, 0, Duration.ZERO, null, Schedulers.immediate(), System::nanoTime);
+    }
+
+    /**
+     * Runs the call once a token is available, with the priority found in the subscriber's context.
+     *
+     * @param call the call to the remote API
+     * @return a Mono with the result of the call, failing with an {@link UpstreamThrottledException} if it is shed
+     */
+    public <T> Mono<T> run(Supplier<Mono<T>> call) {
+        if (!enabled) {
+            return Mono.defer(call);
+        }
+        return Mono.deferContextual(context -> Mono.<Void>create(sink -> acquire(UpstreamPriority.current(context), sink))
+                .then(Mono.defer(call)));
+    }
+
+    /**
+     * Runs a streaming call once a token is available, with the priority found in the subscriber's context.
+     *
+     * @param call the call to the remote API
+     * @return a Flux with the elements of the call, failing with an {@link UpstreamThrottledException} if it is shed
+     */
+    public <T> Flux<T> runMany(Supplier<Flux<T>> call) {
+        if (!enabled) {
+            return Flux.defer(call);
+        }
+        return Flux.deferContextual(context -> Mono.<Void>create(sink -> acquire(UpstreamPriority.current(context), sink))
+                .thenMany(Flux.defer(call)));
+    }
+
+    public synchronized int getQueueDepth(UpstreamPriority priority) {
+        return lanes.get(priority).size();
+    }
+
+    private void acquire(UpstreamPriority priority, MonoSink<Void> sink) {
+        Ticket ticket = new Ticket(priority, sink, nanoClock.getAsLong());
+        sink.onCancel(ticket::cancel);
+        enqueue(ticket);
+    }
+
+    private void enqueue(Ticket ticket) {
+        Ticket evicted = null;
+        boolean granted = false;
+        boolean rejected = false;
+        long drainDelay;
+        synchronized (this) {
+            refill(ticket.enqueuedAtNanos);
+            if (isServedNext(ticket.priority) && tokens >= 1) {
+                granted = ticket.grant();
+                if (granted) {
+                    tokens--;
+                }
+            } else if (queued() < maxQueued) {
+                lanes.get(ticket.priority).addLast(ticket);
+            } else if (ticket.priority == UpstreamPriority.INTERACTIVE
+                    && !lanes.get(UpstreamPriority.BACKGROUND).isEmpty()) {
+                evicted = lanes.get(UpstreamPriority.BACKGROUND).pollLast();
+                lanes.get(ticket.priority).addLast(ticket);
+            } else {
+                rejected = true;
+            }
+            drainDelay = nextDrainDelay(ticket.enqueuedAtNanos);
+        }
+        if (granted) {
+            ticket.signal(ticket.enqueuedAtNanos);
+        }
+        if (evicted != null) {
+            shed(evicted, SHED_QUEUE_FULL);
+        }
+        if (rejected) {
+            shed(ticket, SHED_QUEUE_FULL);
+        }
+        scheduleDrain(drainDelay);
+    }
+
+    /* grants the tokens refilled since the last drain, interactive lane first, then sheds expired background calls */
+    private void drain() {
+        List<Ticket> granted = new ArrayList<>();
+        List<Ticket> expired = new ArrayList<>();
+        long now = nanoClock.getAsLong();
+        long drainDelay;
+        synchronized (this) {
+            drainScheduled = false;
+            refill(now);
+            for (UpstreamPriority priority : UpstreamPriority.values()) {
+                Deque<Ticket> lane = lanes.get(priority);
+                while (tokens >= 1 && !lane.isEmpty()) {
+                    Ticket next = lane.poll();
+                    if (next.grant()) {
+                        tokens--;
+                        granted.add(next);
+                    }
+                }
+            }
+            Deque<Ticket> background = lanes.get(UpstreamPriority.BACKGROUND);
+            while (!background.isEmpty() && now - background.peek().enqueuedAtNanos >= backgroundMaxWaitNanos) {
+                expired.add(background.poll());
+            }
+            drainDelay = nextDrainDelay(now);
+        }
+        granted.forEach(ticket -> ticket.signal(now));
+        expired.forEach(ticket -> shed(ticket, SHED_MAX_WAIT));
+        scheduleDrain(drainDelay);
+    }
+
+    /* a call may take a token only if no call of its priority or of a higher one is already waiting */
+    private boolean isServedNext(UpstreamPriority priority) {
+        for (UpstreamPriority other : UpstreamPriority.values()) {
+            if (!lanes.get(other).isEmpty()) {
+                return false;
+            }
+            if (other == priority) {
+                break;
+            }
+        }
+        return true;
+    }
+
+    private int queued() {
+        int queued = 0;
+        for (Deque<Ticket> lane : lanes.values()) {
+            queued += lane.size();
+        }
+        return queued;
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(burst, tokens + (now - refilledAtNanos) / nanosPerPermit);
+        refilledAtNanos = now;
+    }
+
+    /**
+     * @return the delay until the next token or the next background expiry, -1 if no drain has to be scheduled
+     */
+    private long nextDrainDelay(long now) {
+        if (drainScheduled || queued() == 0) {
+            return -1;
+        }
+        drainScheduled = true;
+        long delay = tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) * nanosPerPermit);
+        Ticket oldestBackground = lanes.get(UpstreamPriority.BACKGROUND).peek();
+        if (oldestBackground != null) {
+            delay = Math.min(delay, Math.max(0, oldestBackground.enqueuedAtNanos + backgroundMaxWaitNanos - now));
+        }
+        return delay;
+    }
+
+    /* scheduled outside of the lock, a scheduler may run the drain right away on the calling thread */
+    private void scheduleDrain(long delayNanos) {
+        if (delayNanos >= 0) {
+            scheduler.schedule(this::drain, delayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private synchronized void removeWaiting(Ticket ticket) {
+        lanes.get(ticket.priority).remove(ticket);
+    }
+
+    private void shed(Ticket ticket, String reason) {
+        if (!ticket.state.compareAndSet(WAITING, DONE)) {
+            return;
+        }
+        if (meterRegistry != null) {
+            shedCounters.computeIfAbsent(ticket.priority.tag() + "/" + reason, key -> Counter.builder("upstream.rate-limit.shed")
+                    .description("Calls to the remote API shed by the rate limiter")
+                    .tag("priority", ticket.priority.tag())
+                    .tag("reason", reason)
+                    .register(meterRegistry)).increment();
+        }
+        ticket.sink.error(new UpstreamThrottledException("Call to the remote API shed by the rate limiter ("
+                + ticket.priority.tag() + " call, " + reason + ")"));
+    }
+
+    private final class Ticket {
+
+        private final UpstreamPriority priority;
+        private final MonoSink<Void> sink;
+        private final long enqueuedAtNanos;
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+
+        Ticket(UpstreamPriority priority, MonoSink<Void> sink, long enqueuedAtNanos) {
+            this.priority = priority;
+            this.sink = sink;
+            this.enqueuedAtNanos = enqueuedAtNanos;
+        }
+
+        boolean grant() {
+            return state.compareAndSet(WAITING, GRANTED);
+        }
+
+        void signal(long grantedAtNanos) {
+            Timer timer = waitTimers.get(priority);
+            if (timer != null) {
+                timer.record(grantedAtNanos - enqueuedAtNanos, TimeUnit.NANOSECONDS);
+            }
+            sink.success();
+        }
+
+        void cancel() {
+            if (state.compareAndSet(WAITING, DONE)) {
+                removeWaiting(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package org.example.portfolio.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+
+/**
+ * Creates the per-endpoint {@link RequestHedger}s and {@link CircuitBreaker}s used by {@link PortfolioService},
+ * configured under upstream.hedge (enabled, percentile, min-delay, budget-ratio, min-samples) and
+ * upstream.circuit-breaker (enabled, window-size, minimum-calls, failure-rate-threshold, open-duration, half-open-calls).
+ * Hedges sent are counted in upstream.hedge.sent and circuit states published in upstream.circuit.state
+ * (0 closed, 1 half-open, 2 open), both tagged by endpoint.
+ */
+@Component
+public class UpstreamResilienceFactory {
+
+    private final boolean hedgeEnabled;
+    private final double hedgePercentile;
+    private final Duration hedgeMinDelay;
+    private final double hedgeBudgetRatio;
+    private final int hedgeMinSamples;
+
+    private final boolean breakerEnabled;
+    private final int breakerWindowSize;
+    private final int breakerMinimumCalls;
+    private final double breakerFailureRateThreshold;
+    private final Duration breakerOpenDuration;
+    private final int breakerHalfOpenCalls;
+
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public UpstreamResilienceFactory(@Value("${upstream.hedge.enabled:true}") boolean hedgeEnabled,
+                                     @Value("${upstream.hedge.percentile:0.95}") double hedgePercentile,
+                                     @Value("${upstream.hedge.min-delay:10ms}") Duration hedgeMinDelay,
+                                     @Value("${upstream.hedge.budget-ratio:0.05}") double hedgeBudgetRatio,
+                                     @Value("${upstream.hedge.min-samples:100}") int hedgeMinSamples,
+                                     @Value("${upstream.circuit-breaker.enabled:true}") boolean breakerEnabled,
+                                     @Value("${upstream.circuit-breaker.window-size:50}") int breakerWindowSize,
+                                     @Value("${upstream.circuit-breaker.minimum-calls:20}") int breakerMinimumCalls,
+                                     @Value("${upstream.circuit-breaker.failure-rate-threshold:0.5}") double breakerFailureRateThreshold,
+                                     @Value("${upstream.circuit-breaker.open-duration:10s}") Duration breakerOpenDuration,
+                                     @Value("${upstream.circuit-breaker.half-open-calls:5}") int breakerHalfOpenCalls,
+                                     MeterRegistry meterRegistry) {
+        this.hedgeEnabled = hedgeEnabled;
+        this.hedgePercentile = hedgePercentile;
+        this.hedgeMinDelay = hedgeMinDelay;
+        this.hedgeBudgetRatio = hedgeBudgetRatio;
+        this.hedgeMinSamples = hedgeMinSamples;
+        this.breakerEnabled = breakerEnabled;
+        this.breakerWindowSize = breakerWindowSize;
+        this.breakerMinimumCalls = breakerMinimumCalls;
+        this.breakerFailureRateThreshold = breakerFailureRateThreshold;
+        this.breakerOpenDuration = breakerOpenDuration;
+        this.breakerHalfOpenCalls = breakerHalfOpenCalls;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * @return a factory whose hedgers never hedge and whose circuit breakers never open
+     */
+    public static UpstreamResilienceFactory disabled() {
+        return new UpstreamResilienceFactory(false, 1.0, Duration.ZERO, 0.0, 1,
+                false, 1, 1, 1.0, Duration.ZERO, 1, null);
+    }
+
+    /**
+     * Creates the hedger of an endpoint.
+     *
+     * @param endpoint the remote endpoint name, e.g. holdings
+     * @return the hedger
+     */
+    public RequestHedger createHedger(String endpoint) {
+        Runnable onHedge = () -> { };
+        if (meterRegistry != null && hedgeEnabled) {
+            Counter sent = Counter.builder("upstream.hedge.sent")
+                    .description("Duplicate calls sent to the remote API because the first one was slow")
+                    .tag("endpoint", endpoint)
+                    .register(meterRegistry);
+            onHedge = sent::increment;
+        }
+        return new RequestHedger(hedgeEnabled, hedgePercentile, hedgeMinDelay, hedgeBudgetRatio, hedgeMinSamples,
+                Schedulers.parallel(), System::nanoTime, onHedge);
+    }
+
+    /**
+     * Creates the circuit breaker of an endpoint.
+     *
+     * @param endpoint the remote endpoint name, e.g. holdings
+     * @return the circuit breaker
+     */
+    public CircuitBreaker createCircuitBreaker(String endpoint) {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(endpoint, breakerEnabled, breakerWindowSize,
+                breakerMinimumCalls, breakerFailureRateThreshold, breakerOpenDuration, breakerHalfOpenCalls,
+                System::nanoTime);
+        if (meterRegistry != null && breakerEnabled) {
+            Gauge.builder("upstream.circuit.state", circuitBreaker, breaker -> breaker.getState().ordinal())
+                    .description("State of the circuit breaker of a remote endpoint: 0 closed, 1 half-open, 2 open")
+                    .tag("endpoint", endpoint)
+                    .register(meterRegistry);
+        }
+        return circuitBreaker;
+    }
+}
@@ -0,0 +1,12 @@
+package org.example.portfolio.service;
+
+/**
+ * Signals that a call to the remote API was shed by the rate limiter instead of waiting for a token.
+ */
+public class UpstreamThrottledException extends PortfolioServiceException
+{
+    public UpstreamThrottledException(String message)
+    {
+        super(message);
+    }
+}
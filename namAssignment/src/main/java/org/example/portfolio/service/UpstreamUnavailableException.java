@@ -0,0 +1,12 @@
+package org.example.portfolio.service;
+
+/**
+ * Signals that a call to the remote API was not sent because the circuit breaker of its endpoint is open.
+ */
+public class UpstreamUnavailableException extends PortfolioServiceException
+{
+    public UpstreamUnavailableException(String message)
+    {
+        super(message);
+    }
+}
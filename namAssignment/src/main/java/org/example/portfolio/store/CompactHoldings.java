@@ -0,0 +1,231 @@
+package org.example.portfolio.store;
+
+import org.example.portfolio.model.Holding;
+import org.example.portfolio.valuation.Valuation;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Columnar, immutable holdings of one portfolio: the stock of each holding as an int symbol of a shared
+ * {@link StockSymbols} dictionary, and its value as a double, either in two primitive arrays on the heap or in
+ * one direct buffer off the heap. A holding costs 12 bytes instead of a Holding object, its stock id String
+ * and a list slot. Holdings keep the order they were received in.
+ * Sums, lookups and membership tests run over the primitive columns without allocating.
+ */
+public abstract class CompactHoldings {
+
+    private static final int HOLDING_BYTES = Integer.BYTES + Double.BYTES;
+
+    /**
+     * Receives the holdings of a portfolio one at a time, without any object per holding.
+     */
+    @FunctionalInterface
+    public interface HoldingVisitor {
+        void visit(int symbol, double value);
+    }
+
+    final StockSymbols symbols;
+
+    CompactHoldings(StockSymbols symbols) {
+        this.symbols = symbols;
+    }
+
+    /**
+     * @param holdings the holdings to store
+     * @param symbols  the dictionary the stock ids are interned into
+     * @param offHeap  true to store the columns in a direct buffer, outside of the Java heap
+     * @return the compact holdings
+     */
+    public static CompactHoldings of(List<Holding> holdings, StockSymbols symbols, boolean offHeap) {
+        int size = holdings.size();
+        if (offHeap) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(size * HOLDING_BYTES).order(ByteOrder.nativeOrder());
+            for (int i = 0; i < size; i++) {
+                Holding h = holdings.get(i);
+                buffer.putInt(i * Integer.BYTES, symbols.intern(h.getStockId()));
+                buffer.putDouble(size * Integer.BYTES + i * Double.BYTES, h.getValue());
+            }
+            return new OffHeap(symbols, buffer, size);
+        }
+        int[] stocks = new int[size];
+        double[] values = new double[size];
+        for (int i = 0; i < size; i++) {
+            Holding h = holdings.get(i);
+            stocks[i] = symbols.intern(h.getStockId());
+            values[i] = h.getValue();
+        }
+        return new Heap(symbols, stocks, values);
+    }
+
+    /* symbols already interned into the dictionary, e.g. when read back from a snapshot file */
+    static CompactHoldings of(int[] stocks, double[] values, StockSymbols symbols, boolean offHeap) {
+        if (offHeap) {
+            int size = stocks.length;
+            ByteBuffer buffer = ByteBuffer.allocateDirect(size * HOLDING_BYTES).order(ByteOrder.nativeOrder());
+            for (int i = 0; i < size; i++) {
+                buffer.putInt(i * Integer.BYTES, stocks[i]);
+                buffer.putDouble(size * Integer.BYTES + i * Double.BYTES, values[i]);
+            }
+            return new OffHeap(symbols, buffer, size);
+        }
+        return new Heap(symbols, stocks, values);
+    }
+
+    public abstract int size();
+
+    public abstract int symbolAt(int index);
+
+    public abstract double valueAt(int index);
+
+    public String stockIdAt(int index) {
+        return symbols.stockId(symbolAt(index));
+    }
+
+    /**
+     * @return the sum of the values of all holdings
+     */
+    public double totalValue() {
+        double total = 0;
+        for (int i = 0, n = size(); i < n; i++) {
+            total += valueAt(i);
+        }
+        return total;
+    }
+
+    /**
+     * @return the exact sum of the values of all holdings in micro-units, see {@link Valuation}
+     */
+    public long totalValueMicros() {
+        long total = 0;
+        for (int i = 0, n = size(); i < n; i++) {
+            total = Math.addExact(total, Valuation.toMicros(valueAt(i)));
+        }
+        return total;
+    }
+
+    /**
+     * @param stockId the stock id, case-sensitive
+     * @return true if the portfolio holds the stock
+     */
+    public boolean contains(String stockId) {
+        return contains(symbols.lookup(stockId));
+    }
+
+    public boolean contains(int symbol) {
+        if (symbol == StockSymbols.UNKNOWN) {
+            return false;
+        }
+        for (int i = 0, n = size(); i < n; i++) {
+            if (symbolAt(i) == symbol) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param stockId the stock id, case-sensitive
+     * @return the total value held in the stock, 0 if not held
+     */
+    public double valueOf(String stockId) {
+        int symbol = symbols.lookup(stockId);
+        double total = 0;
+        if (symbol != StockSymbols.UNKNOWN) {
+            for (int i = 0, n = size(); i < n; i++) {
+                if (symbolAt(i) == symbol) {
+                    total += valueAt(i);
+                }
+            }
+        }
+        return total;
+    }
+
+    public void forEach(HoldingVisitor visitor) {
+        for (int i = 0, n = size(); i < n; i++) {
+            visitor.visit(symbolAt(i), valueAt(i));
+        }
+    }
+
+    /**
+     * @return the holdings as Holding objects, in their original order
+     */
+    public List<Holding> toList() {
+        int size = size();
+        List<Holding> holdings = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            holdings.add(toHolding(i));
+        }
+        return holdings;
+    }
+
+    public Holding toHolding(int index) {
+        return new Holding(stockIdAt(index), valueAt(index));
+    }
+
+    public StockSymbols getSymbols() {
+        return symbols;
+    }
+
+    private static final class Heap extends CompactHoldings {
+
+        private final int[] stocks;
+        private final double[] values;
+
+        Heap(StockSymbols symbols, int[] stocks, double[] values) {
+            super(symbols);
+            this.stocks = stocks;
+            this.values = values;
+        }
+
+        @Override
+        public int size() {
+            return stocks.length;
+        }
+
+        @Override
+        public int symbolAt(int index) {
+            return stocks[index];
+        }
+
+        @Override
+        public double valueAt(int index) {
+            return values[index];
+        }
+
+        @Override
+        public long totalValueMicros() {
+            return Valuation.sumMicros(values);
+        }
+    }
+
+    /* the symbol column followed by the value column, in native byte order */
+    private static final class OffHeap extends CompactHoldings {
+
+        private final ByteBuffer buffer;
+        private final int size;
+
+        OffHeap(StockSymbols symbols, ByteBuffer buffer, int size) {
+            super(symbols);
+            this.buffer = buffer;
+            this.size = size;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public int symbolAt(int index) {
+            return buffer.getInt(index * Integer.BYTES);
+        }
+
+        @Override
+        public double valueAt(int index) {
+            return buffer.getDouble(size * Integer.BYTES + index * Double.BYTES);
+        }
+    }
+}
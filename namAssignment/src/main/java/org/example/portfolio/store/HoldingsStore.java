@@ -0,0 +1,47 @@
+package org.example.portfolio.store;
+
+import org.example.portfolio.model.Holding;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Converts holdings received from the remote API into {@link CompactHoldings}, interning their stock ids
+ * into one dictionary shared by all portfolios.
+ */
+@Component
+public class HoldingsStore {
+
+    private final StockSymbols symbols = new StockSymbols();
+    private final boolean offHeap;
+
+    @Autowired
+    public HoldingsStore(@Value("${portfolio.cache.holdings.off-heap:false}") boolean offHeap) {
+        this.offHeap = offHeap;
+    }
+
+    /**
+     * @return a store keeping holdings on the heap
+     */
+    public static HoldingsStore onHeap() {
+        return new HoldingsStore(false);
+    }
+
+    public CompactHoldings compact(List<Holding> holdings) {
+        return CompactHoldings.of(holdings, symbols, offHeap);
+    }
+
+    CompactHoldings compact(int[] stocks, double[] values) {
+        return CompactHoldings.of(stocks, values, symbols, offHeap);
+    }
+
+    public StockSymbols getSymbols() {
+        return symbols;
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+}
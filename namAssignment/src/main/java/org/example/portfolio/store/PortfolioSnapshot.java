@@ -0,0 +1,50 @@
+package org.example.portfolio.store;
+
+import org.example.portfolio.model.Cash;
+import org.example.portfolio.model.Portfolio;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The last known portfolios, holdings and cash of the service at a point in time, as written to and read from
+ * a {@link SnapshotFile}.
+ */
+public class PortfolioSnapshot {
+
+    private final long takenAtMillis;
+    private final List<Portfolio> portfolios;
+    private final Map<String, CompactHoldings> holdings;
+    private final Map<String, Cash> cash;
+
+    public PortfolioSnapshot(long takenAtMillis, List<Portfolio> portfolios, Map<String, CompactHoldings> holdings,
+                             Map<String, Cash> cash) {
+        this.takenAtMillis = takenAtMillis;
+        this.portfolios = portfolios;
+        this.holdings = holdings;
+        this.cash = cash;
+    }
+
+    public long getTakenAtMillis() {
+        return takenAtMillis;
+    }
+
+    /**
+     * @return the portfolio list, null if it was not known when the snapshot was taken
+     */
+    public List<Portfolio> getPortfolios() {
+        return portfolios;
+    }
+
+    public Map<String, CompactHoldings> getHoldings() {
+        return holdings;
+    }
+
+    public Map<String, Cash> getCash() {
+        return cash;
+    }
+
+    public boolean isEmpty() {
+        return portfolios == null && holdings.isEmpty() && cash.isEmpty();
+    }
+}
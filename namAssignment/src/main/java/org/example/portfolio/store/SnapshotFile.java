@@ -0,0 +1,232 @@
+package org.example.portfolio.store;
+
+import org.example.portfolio.model.Cash;
+import org.example.portfolio.model.Portfolio;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Binary file format of a {@link PortfolioSnapshot}, big-endian:
+ * <pre>
+ * header   magic (int) | format version (int) | taken at, epoch millis (long) | payload length (int) | CRC32 of payload (long)
+ * payload  portfolios: count (int, -1 if unknown), then name (string) | disabled (byte) for each
+ *          stock ids: count (int), then stock id (string) for each, referred to by index below
+ *          holdings: count (int), then name (string) | n (int) | n stock indexes (int) | n values (double) for each
+ *          cash: count (int), then name (string) | present (byte) | value (double) for each
+ * </pre>
+ * Strings are an int length followed by UTF-8 bytes. Files are written to a temporary file and atomically
+ * moved into place, so a crash while writing never leaves a truncated snapshot behind, and are read through
+ * a memory mapping. A file of another format version or whose checksum does not match is rejected.
+ */
+public final class SnapshotFile {
+
+    static final int MAGIC = 0x50465331; // "PFS1"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = Integer.BYTES + Integer.BYTES + Long.BYTES + Integer.BYTES + Long.BYTES;
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * Writes the snapshot to the file, replacing it atomically.
+     *
+     * @param path     the snapshot file
+     * @param snapshot the snapshot to write
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Path path, PortfolioSnapshot snapshot) throws IOException {
+        byte[] payload = encode(snapshot);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+                .putInt(MAGIC)
+                .putInt(VERSION)
+                .putLong(snapshot.getTakenAtMillis())
+                .putInt(payload.length)
+                .putLong(crc.getValue())
+                .flip();
+
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer body = ByteBuffer.wrap(payload);
+            while (header.hasRemaining() || body.hasRemaining()) {
+                channel.write(new ByteBuffer[]{header, body});
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a snapshot from the file, interning its stock ids into the store.
+     *
+     * @param path  the snapshot file
+     * @param store the store creating the compact holdings
+     * @return the snapshot
+     * @throws IOException if the file cannot be read, is of another format version or is corrupted
+     */
+    public static PortfolioSnapshot read(Path path, HoldingsStore store) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException("Not a portfolio snapshot, size " + size + ": " + path);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a portfolio snapshot: " + path);
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported portfolio snapshot version " + version + ": " + path);
+            }
+            long takenAtMillis = buffer.getLong();
+            int length = buffer.getInt();
+            long checksum = buffer.getLong();
+            if (length != size - HEADER_BYTES) {
+                throw new IOException("Truncated portfolio snapshot: " + path);
+            }
+            ByteBuffer payload = buffer.slice(HEADER_BYTES, length);
+            CRC32 crc = new CRC32();
+            crc.update(payload.duplicate());
+            if (crc.getValue() != checksum) {
+                throw new IOException("Corrupted portfolio snapshot, checksum mismatch: " + path);
+            }
+            return decode(payload, takenAtMillis, store);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new IOException("Malformed portfolio snapshot: " + path, e);
+        }
+    }
+
+    private static byte[] encode(PortfolioSnapshot snapshot) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        List<Portfolio> portfolios = snapshot.getPortfolios();
+        if (portfolios == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(portfolios.size());
+            for (Portfolio p : portfolios) {
+                writeString(out, p.getName());
+                out.writeByte(p.isDisabled() ? 1 : 0);
+            }
+        }
+
+        Map<String, Integer> stockIndexes = new HashMap<>();
+        List<String> stockIds = new ArrayList<>();
+        for (CompactHoldings holdings : snapshot.getHoldings().values()) {
+            for (int i = 0; i < holdings.size(); i++) {
+                String stockId = holdings.stockIdAt(i);
+                if (stockIndexes.putIfAbsent(stockId, stockIds.size()) == null) {
+                    stockIds.add(stockId);
+                }
+            }
+        }
+        out.writeInt(stockIds.size());
+        for (String stockId : stockIds) {
+            writeString(out, stockId);
+        }
+
+        out.writeInt(snapshot.getHoldings().size());
+        for (Map.Entry<String, CompactHoldings> entry : snapshot.getHoldings().entrySet()) {
+            CompactHoldings holdings = entry.getValue();
+            writeString(out, entry.getKey());
+            out.writeInt(holdings.size());
+            for (int i = 0; i < holdings.size(); i++) {
+                out.writeInt(stockIndexes.get(holdings.stockIdAt(i)));
+            }
+            for (int i = 0; i < holdings.size(); i++) {
+                out.writeDouble(holdings.valueAt(i));
+            }
+        }
+
+        out.writeInt(snapshot.getCash().size());
+        for (Map.Entry<String, Cash> entry : snapshot.getCash().entrySet()) {
+            Double value = entry.getValue().getValue();
+            writeString(out, entry.getKey());
+            out.writeByte(value != null ? 1 : 0);
+            out.writeDouble(value != null ? value : 0.0);
+        }
+
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static PortfolioSnapshot decode(ByteBuffer in, long takenAtMillis, HoldingsStore store) {
+        List<Portfolio> portfolios = null;
+        int portfolioCount = in.getInt();
+        if (portfolioCount >= 0) {
+            portfolios = new ArrayList<>(portfolioCount);
+            for (int i = 0; i < portfolioCount; i++) {
+                String name = readString(in);
+                portfolios.add(new Portfolio(name, in.get() != 0));
+            }
+        }
+
+        // stock indexes of the file are translated to the symbols of the running process
+        int[] symbolOfIndex = new int[in.getInt()];
+        for (int i = 0; i < symbolOfIndex.length; i++) {
+            symbolOfIndex[i] = store.getSymbols().intern(readString(in));
+        }
+
+        int holdingsCount = in.getInt();
+        Map<String, CompactHoldings> holdings = new HashMap<>(holdingsCount * 2);
+        for (int i = 0; i < holdingsCount; i++) {
+            String name = readString(in);
+            int n = in.getInt();
+            int[] stocks = new int[n];
+            double[] values = new double[n];
+            for (int j = 0; j < n; j++) {
+                stocks[j] = symbolOfIndex[in.getInt()];
+            }
+            for (int j = 0; j < n; j++) {
+                values[j] = in.getDouble();
+            }
+            holdings.put(name, store.compact(stocks, values));
+        }
+
+        int cashCount = in.getInt();
+        Map<String, Cash> cash = new HashMap<>(cashCount * 2);
+        for (int i = 0; i < cashCount; i++) {
+            String name = readString(in);
+            boolean present = in.get() != 0;
+            double value = in.getDouble();
+            cash.put(name, new Cash(present ? value : null));
+        }
+        return new PortfolioSnapshot(takenAtMillis, portfolios, holdings, cash);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,63 @@
+package org.example.portfolio.store;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionary interning stock ids to dense int symbols, shared by every {@link CompactHoldings}
+ * so that each distinct stock id is stored once however many portfolios hold it.
+ * Symbols are never released: the number of distinct stock ids is small and stable compared with holdings.
+ * Stock ids are interned as received, case included.
+ */
+public final class StockSymbols {
+
+    public static final int UNKNOWN = -1;
+
+    private final Map<String, Integer> symbols = new ConcurrentHashMap<>();
+
+    /* guarded by this for writes, published through the volatile reference */
+    private volatile String[] stockIds = new String[1024];
+    private int size;
+
+    /**
+     * @param stockId the stock id
+     * @return the symbol of the stock id, assigned on first use
+     */
+    public int intern(String stockId) {
+        Integer symbol = symbols.get(stockId);
+        return symbol != null ? symbol : symbols.computeIfAbsent(stockId, this::assign);
+    }
+
+    /**
+     * @param stockId the stock id
+     * @return the symbol of the stock id, or {@link #UNKNOWN} if no holding of it was ever interned
+     */
+    public int lookup(String stockId) {
+        Integer symbol = symbols.get(stockId);
+        return symbol != null ? symbol : UNKNOWN;
+    }
+
+    /**
+     * @param symbol a symbol returned by {@link #intern}
+     * @return the stock id of the symbol
+     */
+    public String stockId(int symbol) {
+        return stockIds[symbol];
+    }
+
+    public int size() {
+        return symbols.size();
+    }
+
+    private synchronized int assign(String stockId) {
+        String[] current = stockIds;
+        if (size == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[size] = stockId;
+        // the new array, or the new slot, is published before the symbol is visible in the map
+        stockIds = current;
+        return size++;
+    }
+}
@@ -0,0 +1,120 @@
+package org.example.portfolio.valuation;
+
+import org.example.portfolio.model.Cash;
+import org.example.portfolio.model.Holding;
+
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Fixed-point arithmetic for cash and holding values: amounts are rounded once to micro-units (1e-6) and summed as
+ * longs, which is exact and associative. A sum is therefore the same whatever the order its values arrive in, e.g.
+ * from the rails of a parallel reduce or the inner publishers of a merge, and the same on every run, where a sum of
+ * doubles drifts with the order of its terms. The only other rounding is the final division of a fraction.
+ * Sums run over primitive arrays or the primitive getter of a holding, without boxing, in fixed chunks summed one
+ * after the other on the calling thread. Sums are reached from event-loop and reactive scheduler threads, which must
+ * not wait on work handed to another pool; parallelism comes from the reactive layer running portfolios side by side.
+ * A value or a sum beyond the range of a long, about 9.2e12 units, fails with an ArithmeticException.
+ */
+public final class Valuation {
+
+    public static final long MICROS_PER_UNIT = 1_000_000L;
+
+    static final int CHUNK_SIZE = 1 << 14;
+
+    private static final double MAX_UNITS = Long.MAX_VALUE / (double) MICROS_PER_UNIT;
+
+    private Valuation() {
+    }
+
+    /**
+     * @param value an amount in units
+     * @return the amount in micro-units, rounded half up
+     * @throws ArithmeticException if the value is not finite or out of the range of a long in micro-units
+     */
+    public static long toMicros(double value) {
+        if (!(Math.abs(value) < MAX_UNITS)) {
+            throw new ArithmeticException("Value " + value + " out of the range of a fixed-point amount");
+        }
+        return Math.round(value * MICROS_PER_UNIT);
+    }
+
+    public static double toUnits(long micros) {
+        return (double) micros / MICROS_PER_UNIT;
+    }
+
+    /**
+     * @param cash the cash of a portfolio, possibly without a value
+     * @return the cash in micro-units, 0 without a value
+     */
+    public static long cashMicros(Cash cash) {
+        Double value = cash != null ? cash.getValue() : null;
+        return value != null ? toMicros(value) : 0;
+    }
+
+    /**
+     * @param values amounts in units
+     * @return the sum of the amounts in micro-units
+     */
+    public static long sumMicros(double[] values) {
+        return sum(values.length, (from, to) -> sumMicros(values, from, to));
+    }
+
+    /**
+     * @param values amounts in units
+     * @param from   the index of the first amount, inclusive
+     * @param to     the index of the last amount, exclusive
+     * @return the sum of the amounts in micro-units
+     */
+    public static long sumMicros(double[] values, int from, int to) {
+        long sum = 0;
+        for (int i = from; i < to; i++) {
+            sum = Math.addExact(sum, toMicros(values[i]));
+        }
+        return sum;
+    }
+
+    /**
+     * @param holdings the holdings of a portfolio
+     * @return the sum of their values in micro-units
+     */
+    public static long sumMicros(List<Holding> holdings) {
+        if (!(holdings instanceof RandomAccess)) {
+            long sum = 0;
+            for (Holding h : holdings) {
+                sum = Math.addExact(sum, toMicros(h.getValue()));
+            }
+            return sum;
+        }
+        return sum(holdings.size(), (from, to) -> {
+            long sum = 0;
+            for (int i = from; i < to; i++) {
+                sum = Math.addExact(sum, toMicros(holdings.get(i).getValue()));
+            }
+            return sum;
+        });
+    }
+
+    /**
+     * @param partMicros  an amount in micro-units, e.g. the cash of a portfolio
+     * @param otherMicros the rest of the total in micro-units, e.g. the value of its holdings
+     * @return the fraction of the total the part stands for, 0.0 when the part or the total is not positive
+     */
+    public static double fraction(long partMicros, long otherMicros) {
+        long total = Math.addExact(partMicros, otherMicros);
+        return partMicros > 0 && total > 0 ? (double) partMicros / total : 0.0;
+    }
+
+    private static long sum(int size, RangeSum rangeSum) {
+        long sum = 0;
+        for (int from = 0; from < size; from += CHUNK_SIZE) {
+            sum = Math.addExact(sum, rangeSum.sum(from, Math.min(size, from + CHUNK_SIZE)));
+        }
+        return sum;
+    }
+
+    @FunctionalInterface
+    private interface RangeSum {
+        long sum(int from, int to);
+    }
+}
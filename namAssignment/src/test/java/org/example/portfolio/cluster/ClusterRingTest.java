@@ -0,0 +1,82 @@
+package org.example.portfolio.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ClusterRingTest {
+
+    private static final String A = "http://127.0.0.1:8081";
+    private static final String B = "http://127.0.0.1:8082";
+    private static final String C = "http://127.0.0.1:8083";
+
+    @Test
+    public void testEveryInstanceAgreesOnTheOwners() {
+        ClusterRing a = new ClusterRing(true, A, List.of(A, B, C), 128);
+        ClusterRing b = new ClusterRing(true, B + "/", List.of(C, A), 128);
+        ClusterRing c = new ClusterRing(true, C, List.of(B, A, C), 128);
+
+        assertEquals(List.of(A, B, C), b.getMembers());
+        for (String name : names(1000)) {
+            String owner = a.ownerOf(name);
+            assertEquals(owner, b.ownerOf(name));
+            assertEquals(owner, c.ownerOf(name));
+            // exactly one instance owns each portfolio
+            assertEquals(1, (a.owns(name) ? 1 : 0) + (b.owns(name) ? 1 : 0) + (c.owns(name) ? 1 : 0));
+        }
+    }
+
+    @Test
+    public void testPortfoliosAreSpreadOverTheInstances() {
+        ClusterRing ring = new ClusterRing(true, A, List.of(A, B, C), 128);
+
+        Map<String, List<String>> slices = ring.partition(names(3000), name -> name);
+
+        assertEquals(3, slices.size());
+        slices.forEach((member, slice) -> assertTrue(slice.size() > 700 && slice.size() < 1300,
+                member + " owns " + slice.size()));
+    }
+
+    @Test
+    public void testRemovingAnInstanceOnlyMovesItsPortfolios() {
+        ClusterRing three = new ClusterRing(true, A, List.of(B, C), 128);
+        ClusterRing two = new ClusterRing(true, A, List.of(B), 128);
+
+        for (String name : names(1000)) {
+            if (!three.ownerOf(name).equals(C)) {
+                assertEquals(three.ownerOf(name), two.ownerOf(name), name);
+            }
+        }
+    }
+
+    @Test
+    public void testStandaloneRingOwnsEveryPortfolio() {
+        ClusterRing ring = ClusterRing.standalone();
+
+        assertFalse(ring.isEnabled());
+        assertEquals(1, ring.getMembers().size());
+        names(100).forEach(name -> assertTrue(ring.owns(name)));
+        assertEquals(1, ring.partition(names(100), name -> name).size());
+    }
+
+    @Test
+    public void testClusterModeRequiresTheBaseUrlOfThisInstance() {
+        assertThrows(IllegalStateException.class, () -> new ClusterRing(true, "", Collections.singletonList(B), 128));
+    }
+
+    private static List<String> names(int count) {
+        List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            names.add("PORTFOLIO_" + i);
+        }
+        return names;
+    }
+}
@@ -0,0 +1,142 @@
+package org.example.portfolio.cluster;
+
+import org.example.portfolio.service.RequestDeadline;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PeerClientTest {
+
+    private static final String PEER = "http://127.0.0.1:8082";
+
+    private MutableClock clock;
+
+    @BeforeEach
+    public void setUp() {
+        clock = new MutableClock();
+    }
+
+    private PeerClient client(ExchangeFunction exchange) {
+        return new PeerClient(WebClient.builder().exchangeFunction(exchange), Duration.ofMillis(200),
+                Duration.ofSeconds(10), 0.5, null, clock);
+    }
+
+    private static ExchangeFunction status(HttpStatus status) {
+        return request -> Mono.just(ClientResponse.create(status).build());
+    }
+
+    private static ExchangeFunction unreachable() {
+        return request -> Mono.error(new WebClientRequestException(new IOException("Connection refused"),
+                HttpMethod.POST, URI.create(PEER), new HttpHeaders()));
+    }
+
+    @Test
+    public void testPeerIsGivenAShareOfTheRemainingDeadline() {
+        PeerClient client = client(status(HttpStatus.OK));
+
+        assertEquals(Duration.ofMillis(400), client.peerBudget(Duration.ofMillis(800)));
+        assertEquals(Duration.ofMillis(1), client.peerBudget(Duration.ZERO));
+    }
+
+    @Test
+    public void testDeadlineShareMustBeAFraction() {
+        assertThrows(IllegalArgumentException.class, () -> new PeerClient(WebClient.builder(), Duration.ofSeconds(3),
+                Duration.ofSeconds(10), 1.5, null, Clock.systemUTC()));
+    }
+
+    @Test
+    public void testUnreachablePeerIsDownUntilTheRetryInterval() {
+        PeerClient client = client(unreachable());
+
+        StepVerifier.create(client.cashFractions(PEER, List.of("PORTFOLIO_A")))
+                .expectError(WebClientRequestException.class)
+                .verify();
+        assertFalse(client.isAvailable(PEER));
+
+        clock.advance(Duration.ofSeconds(9));
+        assertFalse(client.isAvailable(PEER));
+        clock.advance(Duration.ofSeconds(1));
+        assertTrue(client.isAvailable(PEER));
+    }
+
+    @Test
+    public void testServerErrorMarksThePeerDown() {
+        PeerClient client = client(status(HttpStatus.SERVICE_UNAVAILABLE));
+
+        StepVerifier.create(client.cashFractions(PEER, List.of("PORTFOLIO_A"))).expectError().verify();
+        assertFalse(client.isAvailable(PEER));
+    }
+
+    @Test
+    public void testClientErrorDoesNotMarkThePeerDown() {
+        PeerClient client = client(status(HttpStatus.BAD_REQUEST));
+
+        StepVerifier.create(client.cashFractions(PEER, List.of("PORTFOLIO_A"))).expectError().verify();
+        assertTrue(client.isAvailable(PEER));
+    }
+
+    @Test
+    public void testTimeoutAtThePeerTimeoutMarksThePeerDown() {
+        PeerClient client = client(request -> Mono.never());
+
+        StepVerifier.create(client.cashFractions(PEER, List.of("PORTFOLIO_A"))).expectError().verify();
+        assertFalse(client.isAvailable(PEER));
+    }
+
+    @Test
+    public void testTimeoutCutShortByTheRequestDeadlineDoesNotMarkThePeerDown() {
+        PeerClient client = client(request -> Mono.never());
+
+        StepVerifier.create(client.cashFractions(PEER, List.of("PORTFOLIO_A"))
+                        .contextWrite(RequestDeadline.after(Duration.ofMillis(20))::attachTo))
+                .expectError()
+                .verify();
+        assertTrue(client.isAvailable(PEER));
+    }
+
+    private static class MutableClock extends Clock {
+
+        private Instant now = Instant.parse("2024-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -1,26 +1,57 @@
 package org.example.portfolio.controller;
 
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import io.netty.handler.timeout.TimeoutException;
+import org.example.portfolio.cluster.ClusterRing;
+import org.example.portfolio.cluster.PeerClient;
+import org.example.portfolio.metrics.PortfolioMetrics;
 import org.example.portfolio.model.Cash;
+import org.example.portfolio.model.CashFractionReport;
 import org.example.portfolio.model.Holding;
 import org.example.portfolio.model.Portfolio;
+import org.example.portfolio.model.PortfolioCashFraction;
+import org.example.portfolio.model.PortfolioMatch;
+import org.example.portfolio.service.CashFractionView;
+import org.example.portfolio.service.DeadlineExceededException;
+import org.example.portfolio.service.ExposureAggregator;
+import org.example.portfolio.service.PerPortfolioExecutor;
 import org.example.portfolio.service.PortfolioService;
+import org.example.portfolio.service.PortfolioServiceException;
+import org.example.portfolio.service.PortfolioStockIndex;
+import org.example.portfolio.store.CompactHoldings;
+import org.example.portfolio.store.HoldingsStore;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class PortfolioControllerTest {
@@ -28,12 +59,39 @@ public class PortfolioControllerTest {
     @Mock
     private PortfolioService portfolioService;
 
+    @Mock
+    private PortfolioStockIndex stockIndex;
+
+    @Mock
+    private CashFractionView cashFractionView;
+
+    @Mock
+    private ExposureAggregator exposureAggregator;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Spy
+    private PortfolioMetrics metrics = new PortfolioMetrics(meterRegistry);
+
+    @Spy
+    private PerPortfolioExecutor executor = PerPortfolioExecutor.reactive();
+
+    @Spy
+    private ClusterRing ring = ClusterRing.standalone();
+
+    @Mock
+    private PeerClient peerClient;
+
     @InjectMocks
     private PortfolioController portfolioController;
 
     @Value("${timeout.duration.seconds}")
     private int TIMEOUT_IN_SECONDS;
 
+    private static CompactHoldings compact(Holding... holdings) {
+        return HoldingsStore.onHeap().compact(Arrays.asList(holdings));
+    }
+
     @BeforeEach
     public void setUp() {
         MockitoAnnotations.openMocks(this);
@@ -53,26 +111,88 @@ public class PortfolioControllerTest {
         Holding h3 = new Holding("MSFT", 1000);
 
         when(portfolioService.getAllPortfolios()).thenReturn(Mono.just(portfolios));
-        when(portfolioService.getHoldings("PORTFOLIO_A")).thenReturn(Mono.just(Arrays.asList(h1)));
-        when(portfolioService.getHoldings("PORTFOLIO_B")).thenReturn(Mono.just(Arrays.asList(h2)));
-        when(portfolioService.getHoldings("PORTFOLIO_C")).thenReturn(Mono.just(Arrays.asList(h2, h3)));
+        when(portfolioService.streamHoldings("PORTFOLIO_A")).thenReturn(Flux.just(h1));
+        when(portfolioService.streamHoldings("PORTFOLIO_B")).thenReturn(Flux.just(h2));
+        when(portfolioService.streamHoldings("PORTFOLIO_C")).thenReturn(Flux.just(h2, h3));
 
-        Mono<List<String>> resultMono = portfolioController.getPortfoliosByStock("AMZN");
+        Mono<List<String>> resultMono = portfolioController.getPortfoliosByStock("AMZN", null, null, false);
 
         // Verify results
         StepVerifier.create(resultMono)
                 .expectNextMatches(result -> result.size() == 1 && result.contains("PORTFOLIO_A"))
                 .verifyComplete();
 
-        Mono<List<String>> resultMono2 = portfolioController.getPortfoliosByStock("GOOGL");
+        // PORTFOLIO_C is disabled, left out unless asked for
+        Mono<List<String>> resultMono2 = portfolioController.getPortfoliosByStock("GOOGL", null, null, false);
 
         // Verify results
         StepVerifier.create(resultMono2)
+                .expectNextMatches(result -> result.size() == 1 && result.contains("PORTFOLIO_B"))
+                .verifyComplete();
+
+        Mono<List<String>> resultMono3 = portfolioController.getPortfoliosByStock("GOOGL", null, null, true);
+
+        StepVerifier.create(resultMono3)
                 .expectNextMatches(result -> result.size() == 2 &&
                         result.contains("PORTFOLIO_B") && result.contains("PORTFOLIO_C"))
                 .verifyComplete();
     }
 
+    @Test
+    public void testPortfoliosAreFilteredBeforeAnyCall() {
+        Portfolio p1 = new Portfolio("EQ_PORTFOLIO_A", false);
+        Portfolio p2 = new Portfolio("EQ_PORTFOLIO_B", true);
+        Portfolio p3 = new Portfolio("FI_PORTFOLIO_C", false);
+
+        when(portfolioService.getAllPortfolios()).thenReturn(Mono.just(Arrays.asList(p1, p2, p3)));
+        when(portfolioService.getCash("EQ_PORTFOLIO_A")).thenReturn(Mono.just(new Cash(0.0)));
+
+        StepVerifier.create(portfolioController.getCashFraction(null, "EQ_", false))
+                .expectNext(Map.of("EQ_PORTFOLIO_A", 0.0))
+                .verifyComplete();
+
+        verify(portfolioService, never()).getCash("EQ_PORTFOLIO_B");
+        verify(portfolioService, never()).getCash("FI_PORTFOLIO_C");
+        assertEquals(1.0, meterRegistry.get("portfolio.fanout.dropped")
+                .tags("endpoint", "cash_fraction", "reason", "disabled").counter().count());
+        assertEquals(1.0, meterRegistry.get("portfolio.fanout.dropped")
+                .tags("endpoint", "cash_fraction", "reason", "prefix").counter().count());
+    }
+
+    @Test
+    public void testFreshIndexIsOnlyUsedForEnabledPortfolios() {
+        when(stockIndex.isFresh()).thenReturn(true);
+        when(stockIndex.lookup("AMZN")).thenReturn(Arrays.asList("PORTFOLIO_A", "PORTFOLIO_B"));
+
+        StepVerifier.create(portfolioController.getPortfoliosByStock("AMZN", List.of("PORTFOLIO_B"), null, false))
+                .expectNext(List.of("PORTFOLIO_B"))
+                .verifyComplete();
+        verify(portfolioService, never()).getAllPortfolios();
+
+        when(portfolioService.getAllPortfolios()).thenReturn(Mono.just(List.of(new Portfolio("PORTFOLIO_C", true))));
+        when(portfolioService.streamHoldings("PORTFOLIO_C")).thenReturn(Flux.just(new Holding("AMZN", 1000)));
+
+        StepVerifier.create(portfolioController.getPortfoliosByStock("AMZN", null, null, true))
+                .expectNext(List.of("PORTFOLIO_C"))
+                .verifyComplete();
+    }
+
+    @Test
+    public void testGetPortfoliosByStockFromFreshIndex() {
+        when(stockIndex.isFresh()).thenReturn(true);
+        when(stockIndex.lookup("AMZN")).thenReturn(Arrays.asList("PORTFOLIO_A"));
+
+        Mono<List<String>> resultMono = portfolioController.getPortfoliosByStock("AMZN", null, null, false);
+
+        StepVerifier.create(resultMono)
+                .expectNext(Arrays.asList("PORTFOLIO_A"))
+                .verifyComplete();
+
+        // no upstream call when the index can answer
+        verify(portfolioService, never()).getAllPortfolios();
+        verify(portfolioService, never()).streamHoldings(anyString());
+    }
+
     @Test
     public void testGetCashFraction() {
         // Dummy data
@@ -90,8 +210,8 @@ public class PortfolioControllerTest {
         when(portfolioService.getCash("PORTFOLIO_A")).thenReturn(Mono.just(cash1));
         when(portfolioService.getCash("PORTFOLIO_B")).thenReturn(Mono.just(cash2));
 
-        when(portfolioService.getHoldings("PORTFOLIO_A")).thenReturn(Mono.just(Arrays.asList(h1, h2)));
-        when(portfolioService.getHoldings("PORTFOLIO_B")).thenReturn(Mono.just(Arrays.asList(h1)));
+        when(portfolioService.getCompactHoldings("PORTFOLIO_A")).thenReturn(Mono.just(compact(h1, h2)));
+        when(portfolioService.getCompactHoldings("PORTFOLIO_B")).thenReturn(Mono.just(compact(h1)));
 
         // Expected values
         double totalValueA = 100.0 + 1000 + 2000;
@@ -101,7 +221,7 @@ public class PortfolioControllerTest {
         double fractionB = 0.0; // Cash value is null, treated as 0
 
         // Call the controller method
-        Mono<Map<String, Double>> resultMono = portfolioController.getCashFraction();
+        Mono<Map<String, Double>> resultMono = portfolioController.getCashFraction(null, null, false);
 
         // Verify results
         StepVerifier.create(resultMono)
@@ -113,6 +233,39 @@ public class PortfolioControllerTest {
                 .verifyComplete();
     }
 
+    @Test
+    public void testStreamPortfoliosByStock() {
+        Portfolio p1 = new Portfolio("PORTFOLIO_A", false);
+        Portfolio p2 = new Portfolio("PORTFOLIO_B", false);
+
+        when(portfolioService.getAllPortfolios()).thenReturn(Mono.just(Arrays.asList(p1, p2)));
+        when(portfolioService.streamHoldings("PORTFOLIO_A")).thenReturn(Flux.just(new Holding("AMZN", 1000)));
+        when(portfolioService.streamHoldings("PORTFOLIO_B")).thenReturn(Flux.just(new Holding("GOOGL", 2000)));
+
+        Flux<PortfolioMatch> result = portfolioController.streamPortfoliosByStock("AMZN", null, null, false);
+
+        StepVerifier.create(result)
+                .expectNext(new PortfolioMatch("PORTFOLIO_A", "AMZN"))
+                .verifyComplete();
+    }
+
+    @Test
+    public void testStreamCashFraction() {
+        Portfolio p1 = new Portfolio("PORTFOLIO_A", false);
+
+        when(portfolioService.getAllPortfolios()).thenReturn(Mono.just(Arrays.asList(p1)));
+        when(portfolioService.getCash("PORTFOLIO_A")).thenReturn(Mono.just(new Cash(100.0)));
+        when(portfolioService.getCompactHoldings("PORTFOLIO_A")).thenReturn(Mono.just(compact(new Holding("AMZN", 300))));
+
+        Flux<PortfolioCashFraction> result = portfolioController.streamCashFraction(null, null, false);
+
+        // emitted one element at a time, honouring the subscriber's demand
+        StepVerifier.create(result, 0)
+                .thenRequest(1)
+                .expectNext(new PortfolioCashFraction("PORTFOLIO_A", 0.25))
+                .verifyComplete();
+    }
+
     @Test
     public void testGetPortfoliosByStockNoMatchingPortfolios() {
         // dummy data
@@ -122,9 +275,9 @@ public class PortfolioControllerTest {
         Holding h1 = new Holding("GOOGL", 2000);
 
         when(portfolioService.getAllPortfolios()).thenReturn(Mono.just(portfolios));
-        when(portfolioService.getHoldings("PORTFOLIO_A")).thenReturn(Mono.just(Arrays.asList(h1)));
+        when(portfolioService.streamHoldings("PORTFOLIO_A")).thenReturn(Flux.just(h1));
 
-        Mono<List<String>> resultMono = portfolioController.getPortfoliosByStock("AMZN");
+        Mono<List<String>> resultMono = portfolioController.getPortfoliosByStock("AMZN", null, null, false);
 
         StepVerifier.create(resultMono)
                 .expectNext(Collections.emptyList())
@@ -136,7 +289,7 @@ public class PortfolioControllerTest {
     public void testGetCashFractionNoPortfolios() {
         when(portfolioService.getAllPortfolios()).thenReturn(Mono.just(Collections.emptyList()));
 
-        Mono<Map<String, Double>> resultMono = portfolioController.getCashFraction();
+        Mono<Map<String, Double>> resultMono = portfolioController.getCashFraction(null, null, false);
 
         // Verify results
         StepVerifier.create(resultMono)
@@ -144,4 +297,208 @@ public class PortfolioControllerTest {
                 .verifyComplete();
     }
 
+    @Test
+    public void testCashFractionReportListsMissingAndDefaultedPortfolios() {
+        Portfolio p1 = new Portfolio("PORTFOLIO_A", false);
+        Portfolio p2 = new Portfolio("PORTFOLIO_B", false);
+        Portfolio p3 = new Portfolio("PORTFOLIO_C", false);
+
+        when(portfolioService.getAllPortfolios()).thenReturn(Mono.just(Arrays.asList(p1, p2, p3)));
+        when(portfolioService.getCash("PORTFOLIO_A")).thenReturn(Mono.just(new Cash(100.0)));
+        when(portfolioService.getCompactHoldings("PORTFOLIO_A")).thenReturn(Mono.just(compact(new Holding("AMZN", 300))));
+        when(portfolioService.getCash("PORTFOLIO_B"))
+                .thenReturn(Mono.error(new DeadlineExceededException("Deadline of 100ms exceeded while retrieving cash of PORTFOLIO_B")));
+        when(portfolioService.getCash("PORTFOLIO_C")).thenReturn(Mono.error(new IllegalStateException("Connection reset")));
+
+        StepVerifier.create(portfolioController.getCashFractionReport(null, null, false))
+                .expectNext(new CashFractionReport(Map.of("PORTFOLIO_A", 0.25, "PORTFOLIO_C", 0.0), false,
+                        List.of("PORTFOLIO_B"), List.of("PORTFOLIO_C")))
+                .verifyComplete();
+    }
+
+    @Test
+    public void testCashFractionDefaultsPortfoliosPastDeadline() {
+        Portfolio p1 = new Portfolio("PORTFOLIO_A", false);
+        Portfolio p2 = new Portfolio("PORTFOLIO_B", false);
+
+        when(portfolioService.getAllPortfolios()).thenReturn(Mono.just(Arrays.asList(p1, p2)));
+        when(portfolioService.getCash("PORTFOLIO_A")).thenReturn(Mono.just(new Cash(100.0)));
+        when(portfolioService.getCompactHoldings("PORTFOLIO_A")).thenReturn(Mono.just(compact(new Holding("AMZN", 300))));
+        when(portfolioService.getCash("PORTFOLIO_B"))
+                .thenReturn(Mono.error(new DeadlineExceededException("Deadline of 100ms exceeded while retrieving cash of PORTFOLIO_B")));
+
+        // without completeness metadata a portfolio past the deadline is not silently left out
+        StepVerifier.create(portfolioController.getCashFraction(null, null, false))
+                .expectNext(Map.of("PORTFOLIO_A", 0.25, "PORTFOLIO_B", 0.0))
+                .verifyComplete();
+    }
+
+    @Test
+    public void testGetPortfoliosByStockKeepsMatchesFoundBeforeDeadline() {
+        Portfolio p1 = new Portfolio("PORTFOLIO_A", false);
+        Portfolio p2 = new Portfolio("PORTFOLIO_B", false);
+
+        when(portfolioService.getAllPortfolios()).thenReturn(Mono.just(Arrays.asList(p1, p2)));
+        when(portfolioService.streamHoldings("PORTFOLIO_A")).thenReturn(Flux.just(new Holding("AMZN", 1000)));
+        when(portfolioService.streamHoldings("PORTFOLIO_B"))
+                .thenReturn(Flux.error(new DeadlineExceededException("Deadline of 100ms exceeded while retrieving holdings of PORTFOLIO_B")));
+
+        StepVerifier.create(portfolioController.getPortfoliosByStock("AMZN", null, null, false))
+                .expectNext(Arrays.asList("PORTFOLIO_A"))
+                .verifyComplete();
+    }
+
+    @Test
+    public void testCashFractionFromFreshView() {
+        when(cashFractionView.isFresh()).thenReturn(true);
+        when(cashFractionView.getFractions()).thenReturn(Map.of("PORTFOLIO_A", 0.25));
+        when(cashFractionView.getDataAge()).thenReturn(Duration.ofSeconds(3));
+
+        StepVerifier.create(portfolioController.getCashFraction(null, null, false))
+                .expectNext(Map.of("PORTFOLIO_A", 0.25))
+                .verifyComplete();
+        StepVerifier.create(portfolioController.getCashFractionReport(null, null, false))
+                .expectNext(new CashFractionReport(Map.of("PORTFOLIO_A", 0.25), true,
+                        Collections.emptyList(), Collections.emptyList(), 3000))
+                .verifyComplete();
+
+        // no upstream call when the view can answer
+        verify(portfolioService, never()).getAllPortfolios();
+    }
+
+    @Test
+    public void testGetPortfoliosByStocksFetchesHoldingsOncePerPortfolio() {
+        Portfolio p1 = new Portfolio("PORTFOLIO_A", false);
+        Portfolio p2 = new Portfolio("PORTFOLIO_B", false);
+
+        when(portfolioService.getAllPortfolios()).thenReturn(Mono.just(Arrays.asList(p1, p2)));
+        when(portfolioService.getCompactHoldings("PORTFOLIO_A"))
+                .thenReturn(Mono.just(compact(new Holding("AMZN", 1000), new Holding("GOOGL", 2000))));
+        when(portfolioService.getCompactHoldings("PORTFOLIO_B")).thenReturn(Mono.just(compact(new Holding("googl", 500))));
+
+        StepVerifier.create(portfolioController.getPortfoliosByStocks(Arrays.asList("AMZN", "GOOGL", "MSFT"), null, null, false))
+                .expectNext(Map.of("AMZN", List.of("PORTFOLIO_A"),
+                        "GOOGL", List.of("PORTFOLIO_A", "PORTFOLIO_B"),
+                        "MSFT", List.of()))
+                .verifyComplete();
+
+        verify(portfolioService, times(1)).getCompactHoldings("PORTFOLIO_A");
+        verify(portfolioService, times(1)).getCompactHoldings("PORTFOLIO_B");
+    }
+
+    @Test
+    public void testGetPortfoliosByStocksRejectsEmptyRequest() {
+        StepVerifier.create(portfolioController.postPortfoliosByStocks(Collections.emptyList(), null, null, false))
+                .expectError(ResponseStatusException.class)
+                .verify();
+    }
+
+    @Test
+    public void testExposureLeavesOutDisabledPortfoliosUnlessIncluded() {
+        when(portfolioService.getAllPortfolios()).thenReturn(Mono.just(Arrays.asList(
+                new Portfolio("PORTFOLIO_A", false), new Portfolio("PORTFOLIO_B", true))));
+        List<Integer> aggregated = new ArrayList<>();
+        when(exposureAggregator.exposureByStock(any())).thenAnswer(invocation -> invocation.<Mono<List<Portfolio>>>getArgument(0)
+                .doOnNext(portfolios -> aggregated.add(portfolios.size()))
+                .thenReturn(Map.of("AMZN", 1000.0)));
+
+        StepVerifier.create(portfolioController.getExposure(null, null, false)).expectNextCount(1).verifyComplete();
+        StepVerifier.create(portfolioController.getExposure(null, null, true)).expectNextCount(1).verifyComplete();
+
+        assertEquals(List.of(1, 2), aggregated);
+        assertEquals(1.0, meterRegistry.get("portfolio.fanout.dropped").tag("endpoint", "exposure").counter().count());
+        assertEquals(2, meterRegistry.get("portfolio.fanout.width").tag("endpoint", "exposure").summary().count());
+    }
+
+    @Test
+    public void testExposureOfNoPortfolioWhenThePortfolioListFails() {
+        when(portfolioService.getAllPortfolios()).thenReturn(Mono.error(new PortfolioServiceException("Error while retrieving portfolios.")));
+        when(exposureAggregator.exposureByStock(any())).thenAnswer(invocation -> invocation.<Mono<List<Portfolio>>>getArgument(0)
+                .map(portfolios -> portfolios.isEmpty() ? Map.<String, Double>of() : Map.of("AMZN", 1000.0)));
+
+        StepVerifier.create(portfolioController.getExposure(null, null, false))
+                .expectNext(Map.of())
+                .verifyComplete();
+    }
+
+    @Test
+    public void testCashFractionsAreScatteredToTheOwnerOfEachPortfolio() {
+        ClusterRing cluster = clusterOf20Portfolios();
+        when(peerClient.isAvailable(PEER)).thenReturn(true);
+        when(peerClient.cashFractions(eq(PEER), anyList())).thenAnswer(invocation -> {
+            Map<String, Double> fractions = new HashMap<>();
+            for (String name : invocation.<List<String>>getArgument(1)) {
+                fractions.put(name, 0.5);
+            }
+            return Mono.just(new CashFractionReport(fractions, true, List.of(), List.of()));
+        });
+
+        Map<String, Double> result = portfolioController.getCashFraction(null, null, false).block();
+
+        assertEquals(20, result.size());
+        result.forEach((name, fraction) -> assertEquals(cluster.owns(name) ? 0.0 : 0.5, fraction, name));
+        result.keySet().stream().filter(name -> !cluster.owns(name))
+                .forEach(name -> verify(portfolioService, never()).getCash(name));
+    }
+
+    @Test
+    public void testGetOwnedCashFractionsIsNotFoundOutsideClusterMode() {
+        StepVerifier.create(portfolioController.getOwnedCashFractions(List.of("PORTFOLIO_A")))
+                .expectErrorMatches(error -> error instanceof ResponseStatusException
+                        && ((ResponseStatusException) error).getStatusCode() == HttpStatus.NOT_FOUND)
+                .verify();
+    }
+
+    @Test
+    public void testGetOwnedCashFractionsRejectsPortfoliosOwnedByAnotherInstance() {
+        ClusterRing cluster = clusterOf20Portfolios();
+        String notOwned = IntStream.range(0, 100).mapToObj(i -> "PORTFOLIO_" + i)
+                .filter(name -> !cluster.owns(name))
+                .findFirst().orElseThrow();
+
+        StepVerifier.create(portfolioController.getOwnedCashFractions(List.of(notOwned)))
+                .expectErrorMatches(error -> error instanceof ResponseStatusException
+                        && ((ResponseStatusException) error).getStatusCode() == HttpStatus.BAD_REQUEST)
+                .verify();
+        verify(portfolioService, never()).getCash(anyString());
+    }
+
+    @Test
+    public void testGetOwnedCashFractionsRejectsTooManyPortfolios() {
+        clusterOf20Portfolios();
+        List<String> portfolios = Collections.nCopies(PeerClient.MAX_PORTFOLIOS_PER_CALL + 1, "PORTFOLIO_A");
+        StepVerifier.create(portfolioController.getOwnedCashFractions(portfolios))
+                .expectError(ResponseStatusException.class)
+                .verify();
+    }
+
+    @Test
+    public void testSliceOfAFailingPeerIsComputedLocally() {
+        clusterOf20Portfolios();
+        when(peerClient.isAvailable(PEER)).thenReturn(true);
+        when(peerClient.cashFractions(eq(PEER), anyList())).thenReturn(Mono.error(new IllegalStateException("peer down")));
+
+        Map<String, Double> result = portfolioController.getCashFraction(null, null, false).block();
+
+        assertEquals(20, result.size());
+        verify(portfolioService, times(20)).getCash(anyString());
+    }
+
+    private static final String PEER = "http://127.0.0.1:8082";
+
+    /* this instance and one peer, the portfolios owned here have no cash, so a fraction of 0.0 */
+    private ClusterRing clusterOf20Portfolios() {
+        ClusterRing cluster = new ClusterRing(true, "http://127.0.0.1:8081", List.of("http://127.0.0.1:8081", PEER), 128);
+        ReflectionTestUtils.setField(portfolioController, "ring", cluster);
+        List<Portfolio> portfolios = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            portfolios.add(new Portfolio("PORTFOLIO_" + i, false));
+        }
+        assertEquals(2, cluster.partition(portfolios, Portfolio::getName).size());
+        when(portfolioService.getAllPortfolios()).thenReturn(Mono.just(portfolios));
+        when(portfolioService.getCash(anyString())).thenReturn(Mono.just(new Cash(0.0)));
+        when(cashFractionView.isFresh()).thenReturn(false);
+        return cluster;
+    }
+
 }
@@ -0,0 +1,184 @@
+package org.example.portfolio.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.portfolio.cluster.ClusterRing;
+import org.example.portfolio.config.JacksonFormats;
+import org.example.portfolio.metrics.PortfolioMetrics;
+import org.example.portfolio.service.CashFractionView;
+import org.example.portfolio.service.PortfolioStockIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SerializedResponseFilterTest {
+
+    @Mock
+    private CashFractionView cashFractionView;
+
+    @Mock
+    private PortfolioStockIndex stockIndex;
+
+    private final JacksonFormats formats = new JacksonFormats(new ObjectMapper());
+    private SerializedResponseFilter filter;
+    private final AtomicInteger passedThrough = new AtomicInteger();
+    private final WebFilterChain chain = exchange -> {
+        passedThrough.incrementAndGet();
+        return Mono.empty();
+    };
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        filter = new SerializedResponseFilter(cashFractionView, stockIndex, ClusterRing.standalone(), formats,
+                new PortfolioMetrics(new SimpleMeterRegistry()), null, true, 100);
+    }
+
+    @Test
+    public void testResponseIsSerialisedOncePerVersion() {
+        when(cashFractionView.isFresh()).thenReturn(true);
+        when(cashFractionView.getVersion()).thenReturn(1L);
+        when(cashFractionView.getFractions()).thenReturn(Map.of("PORTFOLIO_A", 0.25));
+
+        MockServerWebExchange first = get("/portfolios/portfolio-cash-fraction");
+        MockServerWebExchange second = get("/portfolios/portfolio-cash-fraction");
+
+        assertEquals("{\"PORTFOLIO_A\":0.25}", first.getResponse().getBodyAsString().block());
+        assertEquals(MediaType.APPLICATION_JSON, first.getResponse().getHeaders().getContentType());
+        assertEquals("{\"PORTFOLIO_A\":0.25}", second.getResponse().getBodyAsString().block());
+        assertEquals(first.getResponse().getHeaders().getETag(), second.getResponse().getHeaders().getETag());
+        verify(cashFractionView, times(1)).getFractions();
+        assertEquals(0, passedThrough.get());
+    }
+
+    @Test
+    public void testMatchingETagGetsNotModified() {
+        when(cashFractionView.isFresh()).thenReturn(true);
+        when(cashFractionView.getFractions()).thenReturn(Map.of("PORTFOLIO_A", 0.25));
+        String etag = get("/portfolios/portfolio-cash-fraction").getResponse().getHeaders().getETag();
+
+        MockServerWebExchange revalidated = exchange(MockServerHttpRequest.get("/portfolios/portfolio-cash-fraction")
+                .header(HttpHeaders.IF_NONE_MATCH, etag));
+
+        assertEquals(HttpStatus.NOT_MODIFIED, revalidated.getResponse().getStatusCode());
+        assertEquals("", revalidated.getResponse().getBodyAsString().block());
+    }
+
+    @Test
+    public void testNewVersionIsSerialisedAgain() {
+        when(cashFractionView.isFresh()).thenReturn(true);
+        when(cashFractionView.getVersion()).thenReturn(1L, 2L);
+        when(cashFractionView.getFractions()).thenReturn(Map.of("PORTFOLIO_A", 0.25), Map.of("PORTFOLIO_A", 0.5));
+
+        String before = get("/portfolios/portfolio-cash-fraction").getResponse().getHeaders().getETag();
+        MockServerWebExchange after = get("/portfolios/portfolio-cash-fraction");
+
+        assertEquals("{\"PORTFOLIO_A\":0.5}", after.getResponse().getBodyAsString().block());
+        assertNotEquals(before, after.getResponse().getHeaders().getETag());
+    }
+
+    @Test
+    public void testStockLookupsAreCachedCaseInsensitively() {
+        when(stockIndex.isFresh()).thenReturn(true);
+        when(stockIndex.lookup("AMZN")).thenReturn(List.of("PORTFOLIO_A"));
+
+        assertEquals("[\"PORTFOLIO_A\"]", get("/portfolios/stock/AMZN").getResponse().getBodyAsString().block());
+        assertEquals("[\"PORTFOLIO_A\"]", get("/portfolios/stock/amzn").getResponse().getBodyAsString().block());
+        verify(stockIndex, times(1)).lookup("AMZN");
+    }
+
+    @Test
+    public void testRequestsTheViewCannotServeGoToTheController() {
+        when(cashFractionView.isFresh()).thenReturn(false);
+        when(stockIndex.isFresh()).thenReturn(true);
+
+        get("/portfolios/portfolio-cash-fraction");
+        get("/portfolios/stock/AMZN/stream");
+        MockServerWebExchange xml = exchange(MockServerHttpRequest.get("/portfolios/stock/AMZN")
+                .accept(MediaType.APPLICATION_XML));
+
+        assertEquals(3, passedThrough.get());
+        assertNull(xml.getResponse().getHeaders().getETag());
+    }
+
+    @Test
+    public void testBinaryFormatsAreSerialisedAndCachedSeparately() throws IOException {
+        when(cashFractionView.isFresh()).thenReturn(true);
+        when(cashFractionView.getVersion()).thenReturn(1L);
+        when(cashFractionView.getFractions()).thenReturn(Map.of("PORTFOLIO_A", 0.25));
+
+        MockServerWebExchange json = get("/portfolios/portfolio-cash-fraction");
+        MockServerWebExchange cbor = exchange(MockServerHttpRequest.get("/portfolios/portfolio-cash-fraction")
+                .accept(MediaType.APPLICATION_CBOR));
+        MockServerWebExchange smile = exchange(MockServerHttpRequest.get("/portfolios/portfolio-cash-fraction")
+                .accept(JacksonFormats.APPLICATION_SMILE, MediaType.APPLICATION_JSON));
+
+        assertEquals(MediaType.APPLICATION_CBOR, cbor.getResponse().getHeaders().getContentType());
+        assertEquals(Map.of("PORTFOLIO_A", 0.25), formats.getCborMapper().readValue(body(cbor), Map.class));
+        assertEquals(JacksonFormats.APPLICATION_SMILE, smile.getResponse().getHeaders().getContentType());
+        assertEquals(Map.of("PORTFOLIO_A", 0.25), formats.getSmileMapper().readValue(body(smile), Map.class));
+        assertNotEquals(json.getResponse().getHeaders().getETag(), cbor.getResponse().getHeaders().getETag());
+        assertEquals(List.of(HttpHeaders.ACCEPT), cbor.getResponse().getHeaders().getVary());
+        verify(cashFractionView, times(3)).getFractions();
+    }
+
+    @Test
+    public void testFormatIsNegotiatedByQuality() {
+        assertEquals(MediaType.APPLICATION_JSON, formats.negotiate(List.of()));
+        assertEquals(MediaType.APPLICATION_JSON, formats.negotiate(List.of(MediaType.ALL)));
+        assertEquals(MediaType.APPLICATION_CBOR, formats.negotiate(
+                MediaType.parseMediaTypes("application/json;q=0.5, application/cbor")));
+        assertNull(formats.negotiate(List.of(MediaType.APPLICATION_XML)));
+    }
+
+    @Test
+    public void testETagIsSentWithTheBody() {
+        when(stockIndex.isFresh()).thenReturn(true);
+        when(stockIndex.lookup("AMZN")).thenReturn(List.of());
+
+        assertNotNull(get("/portfolios/stock/AMZN").getResponse().getHeaders().getETag());
+    }
+
+    private static byte[] body(MockServerWebExchange exchange) {
+        return DataBufferUtils.join(exchange.getResponse().getBody())
+                .map(buffer -> {
+                    byte[] bytes = new byte[buffer.readableByteCount()];
+                    buffer.read(bytes);
+                    DataBufferUtils.release(buffer);
+                    return bytes;
+                })
+                .block();
+    }
+
+    private MockServerWebExchange get(String path) {
+        return exchange(MockServerHttpRequest.get(path));
+    }
+
+    private MockServerWebExchange exchange(MockServerHttpRequest.BaseBuilder<?> request) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(request);
+        filter.filter(exchange, chain).block();
+        return exchange;
+    }
+}
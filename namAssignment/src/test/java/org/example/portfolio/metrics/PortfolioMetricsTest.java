@@ -0,0 +1,50 @@
+package org.example.portfolio.metrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.portfolio.service.PortfolioServiceException;
+import org.example.portfolio.service.UpstreamThrottledException;
+import org.example.portfolio.service.UpstreamUnavailableException;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class PortfolioMetricsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final PortfolioMetrics metrics = new PortfolioMetrics(registry);
+
+    @Test
+    public void testUpstreamOutcomesAreTagged() {
+        StepVerifier.create(metrics.timeUpstream("cash", Mono.just(1.0))).expectNext(1.0).verifyComplete();
+        StepVerifier.create(metrics.timeUpstream("cash", Mono.error(new TimeoutException())))
+                .expectError(TimeoutException.class).verify();
+        StepVerifier.create(metrics.timeUpstream("cash", Mono.error(new PortfolioServiceException("Error while retrieving cash for A"))))
+                .expectError(PortfolioServiceException.class).verify();
+
+        assertEquals(1, registry.get("portfolio.upstream.requests").tags("endpoint", "cash", "outcome", "success").timer().count());
+        assertEquals(1, registry.get("portfolio.upstream.requests").tags("endpoint", "cash", "outcome", "timeout").timer().count());
+        assertEquals(1, registry.get("portfolio.upstream.requests").tags("endpoint", "cash", "outcome", "client_error").timer().count());
+    }
+
+    @Test
+    public void testCallsNotSentAreNotClientErrors() {
+        assertEquals(PortfolioMetrics.OUTCOME_UNAVAILABLE,
+                PortfolioMetrics.outcomeOf(new UpstreamUnavailableException("Remote endpoint cash is unavailable")));
+        assertEquals(PortfolioMetrics.OUTCOME_THROTTLED,
+                PortfolioMetrics.outcomeOf(new UpstreamThrottledException("Call to the remote API shed by the rate limiter")));
+        assertEquals(PortfolioMetrics.OUTCOME_CLIENT_ERROR,
+                PortfolioMetrics.outcomeOf(new PortfolioServiceException("Error while retrieving cash for A")));
+    }
+
+    @Test
+    public void testFanOutWidthIsRecorded() {
+        metrics.recordFanOut("cash_fraction", 10);
+        metrics.recordFanOut("cash_fraction", 20);
+
+        assertEquals(30, registry.get("portfolio.fanout.width").tag("endpoint", "cash_fraction").summary().totalAmount());
+    }
+}
@@ -0,0 +1,78 @@
+package org.example.portfolio.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+    @Test
+    public void testCallsOverTheLimitAreQueued() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 2, 2,
+                Duration.ofSeconds(1), 0.5, new SimpleMeterRegistry());
+        Sinks.One<String> first = Sinks.one();
+        Sinks.One<String> second = Sinks.one();
+        AtomicInteger started = new AtomicInteger();
+
+        limiter.run(() -> first.asMono().doOnSubscribe(s -> started.incrementAndGet())).subscribe();
+        limiter.run(() -> second.asMono().doOnSubscribe(s -> started.incrementAndGet())).subscribe();
+        limiter.run(() -> Mono.just("third").doOnSubscribe(s -> started.incrementAndGet())).subscribe();
+
+        assertEquals(2, started.get());
+        assertEquals(1, limiter.getQueueDepth());
+
+        first.tryEmitValue("first");
+
+        assertEquals(3, started.get());
+        assertEquals(0, limiter.getQueueDepth());
+        assertEquals(1, limiter.getInFlight());
+    }
+
+    @Test
+    public void testLimitBacksOffOnTimeoutAndStaysAboveFloor() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 64, 10,
+                Duration.ofSeconds(1), 0.5, new SimpleMeterRegistry());
+
+        limiter.run(() -> Mono.error(new TimeoutException())).subscribe(null, error -> { });
+        assertEquals(5, limiter.getLimit());
+
+        limiter.run(() -> Mono.error(new TimeoutException())).subscribe(null, error -> { });
+        assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    public void testClientErrorsDoNotReduceTheLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 64, 10,
+                Duration.ofSeconds(1), 0.5, new SimpleMeterRegistry());
+
+        limiter.run(() -> Mono.error(new PortfolioServiceException("Error while retrieving cash for PORTFOLIO_A")))
+                .subscribe(null, error -> { });
+
+        assertTrue(limiter.getLimit() >= 10);
+    }
+
+    @Test
+    public void testCancelledWaitingCallReleasesItsPlace() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1,
+                Duration.ofSeconds(1), 0.5, new SimpleMeterRegistry());
+        Sinks.One<String> first = Sinks.one();
+
+        limiter.run(first::asMono).subscribe();
+        Disposable waiting = limiter.run(() -> Mono.just("second")).subscribe();
+        assertEquals(1, limiter.getQueueDepth());
+
+        waiting.dispose();
+
+        assertEquals(0, limiter.getQueueDepth());
+        assertEquals(1, limiter.getInFlight());
+    }
+}
@@ -0,0 +1,87 @@
+package org.example.portfolio.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.example.portfolio.model.Cash;
+import org.example.portfolio.model.Holding;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local stub of the remote portfolio API serving the per-portfolio endpoints and the bulk endpoints
+ * POST /holdings:batch and POST /cash:batch, which take a JSON list of portfolio names and return
+ * a JSON object of results keyed by portfolio name.
+ */
+public class BulkUpstreamStub extends Dispatcher {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final Map<String, List<Holding>> holdings = new ConcurrentHashMap<>();
+    private final Map<String, Cash> cash = new ConcurrentHashMap<>();
+    private final boolean bulkSupported;
+
+    private final AtomicInteger bulkRequests = new AtomicInteger();
+    private final AtomicInteger singleRequests = new AtomicInteger();
+
+    public BulkUpstreamStub(boolean bulkSupported) {
+        this.bulkSupported = bulkSupported;
+    }
+
+    public BulkUpstreamStub withPortfolio(String name, Cash portfolioCash, List<Holding> portfolioHoldings) {
+        cash.put(name, portfolioCash);
+        holdings.put(name, portfolioHoldings);
+        return this;
+    }
+
+    public int getBulkRequests() {
+        return bulkRequests.get();
+    }
+
+    public int getSingleRequests() {
+        return singleRequests.get();
+    }
+
+    @Override
+    public MockResponse dispatch(RecordedRequest request) {
+        String path = request.getPath();
+        try {
+            if ("POST".equals(request.getMethod()) && path.endsWith(":batch")) {
+                if (!bulkSupported) {
+                    return new MockResponse().setResponseCode(404);
+                }
+                bulkRequests.incrementAndGet();
+                List<String> names = mapper.readValue(request.getBody().readUtf8(), new TypeReference<List<String>>() {
+                });
+                Map<String, Object> results = new LinkedHashMap<>();
+                Map<String, ?> source = path.startsWith("/holdings") ? holdings : cash;
+                names.stream().filter(source::containsKey).forEach(name -> results.put(name, source.get(name)));
+                return json(results);
+            }
+
+            singleRequests.incrementAndGet();
+            String[] segments = path.split("/");
+            String name = segments[1];
+            Object result = "holdings".equals(segments[2]) ? holdings.get(name) : cash.get(name);
+            return result == null ? new MockResponse().setResponseCode(404) : json(result);
+        } catch (JsonProcessingException e) {
+            return new MockResponse().setResponseCode(500);
+        }
+    }
+
+    private static MockResponse json(Object body) throws JsonProcessingException {
+        return new MockResponse()
+                .setResponseCode(200)
+                .setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON)
+                .setBody(mapper.writeValueAsString(body));
+    }
+}
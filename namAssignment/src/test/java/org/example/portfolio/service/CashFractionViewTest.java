@@ -0,0 +1,160 @@
+package org.example.portfolio.service;
+
+import org.example.portfolio.cluster.ClusterRing;
+import org.example.portfolio.model.Cash;
+import org.example.portfolio.model.Holding;
+import org.example.portfolio.model.Portfolio;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CashFractionViewTest {
+
+    private static final ConditionalResult.Validators NONE = ConditionalResult.Validators.NONE;
+
+    @Mock
+    private PortfolioService portfolioService;
+
+    private MutableClock clock;
+    private CashFractionView view;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        clock = new MutableClock();
+        view = new CashFractionView(portfolioService, ClusterRing.standalone(), true, Duration.ofSeconds(15), 0.5, Duration.ofSeconds(30),
+                Duration.ofSeconds(60), 4, Duration.ofSeconds(2), clock, new Random(42));
+
+        when(portfolioService.getAllPortfolios()).thenReturn(Mono.just(Arrays.asList(
+                new Portfolio("PORTFOLIO_A", false), new Portfolio("PORTFOLIO_B", false))));
+        when(portfolioService.getCashIfModified(eq("PORTFOLIO_A"), any()))
+                .thenReturn(Mono.just(ConditionalResult.modified(new Cash(100.0), NONE)));
+        when(portfolioService.getHoldingsIfModified(eq("PORTFOLIO_A"), any()))
+                .thenReturn(Mono.just(ConditionalResult.modified(Arrays.asList(new Holding("AMZN", 300)), NONE)));
+        when(portfolioService.getCashIfModified(eq("PORTFOLIO_B"), any()))
+                .thenReturn(Mono.just(ConditionalResult.modified(new Cash(0.0), NONE)));
+    }
+
+    @Test
+    public void testColdViewIsNotFresh() {
+        assertFalse(view.isFresh());
+        assertEquals(Collections.emptyMap(), view.getFractions());
+    }
+
+    @Test
+    public void testRefreshComputesEveryPortfolio() {
+        StepVerifier.create(view.refreshDue()).verifyComplete();
+
+        assertTrue(view.isFresh());
+        assertEquals(Map.of("PORTFOLIO_A", 0.25, "PORTFOLIO_B", 0.0), view.getFractions());
+        // no holdings needed for a portfolio without cash
+        verify(portfolioService, never()).getHoldingsIfModified(eq("PORTFOLIO_B"), any());
+    }
+
+    @Test
+    public void testUnchangedPortfoliosKeepTheirFraction() {
+        StepVerifier.create(view.refreshDue()).verifyComplete();
+        when(portfolioService.getCashIfModified(eq("PORTFOLIO_A"), any()))
+                .thenReturn(Mono.just(ConditionalResult.notModified(NONE)));
+        when(portfolioService.getHoldingsIfModified(eq("PORTFOLIO_A"), any()))
+                .thenReturn(Mono.just(ConditionalResult.notModified(NONE)));
+
+        clock.advance(Duration.ofSeconds(23));
+        StepVerifier.create(view.refreshDue()).verifyComplete();
+
+        assertEquals(0.25, view.getFractions().get("PORTFOLIO_A"));
+        assertEquals(Duration.ZERO, view.getDataAge());
+        verify(portfolioService, times(2)).getHoldingsIfModified(eq("PORTFOLIO_A"), any());
+    }
+
+    @Test
+    public void testPortfoliosAreOnlyRefreshedWhenDue() {
+        StepVerifier.create(view.refreshDue()).verifyComplete();
+
+        clock.advance(Duration.ofSeconds(5));
+        StepVerifier.create(view.refreshDue()).verifyComplete();
+
+        verify(portfolioService, times(1)).getCashIfModified(eq("PORTFOLIO_A"), any());
+        assertEquals(Duration.ofSeconds(5), view.getDataAge());
+    }
+
+    @Test
+    public void testViewIsStaleWhenRefreshesFail() {
+        StepVerifier.create(view.refreshDue()).verifyComplete();
+        when(portfolioService.getCashIfModified(eq("PORTFOLIO_A"), any()))
+                .thenReturn(Mono.error(new PortfolioServiceException("Error while retrieving cash for PORTFOLIO_A")));
+
+        clock.advance(Duration.ofSeconds(61));
+        StepVerifier.create(view.refreshDue()).verifyComplete();
+
+        assertFalse(view.isFresh());
+        assertEquals(0.25, view.getFractions().get("PORTFOLIO_A"));
+    }
+
+    @Test
+    public void testFailedRefreshIsRetriedAfterBackoff() {
+        StepVerifier.create(view.refreshDue()).verifyComplete();
+        when(portfolioService.getCashIfModified(eq("PORTFOLIO_A"), any()))
+                .thenReturn(Mono.error(new PortfolioServiceException("Error while retrieving cash for PORTFOLIO_A")));
+
+        clock.advance(Duration.ofSeconds(23));
+        StepVerifier.create(view.refreshDue()).verifyComplete();
+        verify(portfolioService, times(2)).getCashIfModified(eq("PORTFOLIO_A"), any());
+
+        // not retried on every tick
+        clock.advance(Duration.ofMillis(500));
+        StepVerifier.create(view.refreshDue()).verifyComplete();
+        verify(portfolioService, times(2)).getCashIfModified(eq("PORTFOLIO_A"), any());
+
+        clock.advance(Duration.ofMillis(2500));
+        StepVerifier.create(view.refreshDue()).verifyComplete();
+        verify(portfolioService, times(3)).getCashIfModified(eq("PORTFOLIO_A"), any());
+    }
+
+    private static class MutableClock extends Clock {
+
+        private Instant now = Instant.parse("2024-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
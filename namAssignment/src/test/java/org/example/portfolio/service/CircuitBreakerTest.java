@@ -0,0 +1,98 @@
+package org.example.portfolio.service;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class CircuitBreakerTest {
+
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicInteger calls = new AtomicInteger();
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker("cash", true, 10, 4, 0.5,
+            Duration.ofSeconds(10), 2, clock::get);
+
+    private Mono<String> call(Mono<String> result) {
+        return circuitBreaker.run(() -> result.doOnSubscribe(s -> calls.incrementAndGet()));
+    }
+
+    private void fail(int times) {
+        for (int i = 0; i < times; i++) {
+            call(Mono.error(new TimeoutException())).subscribe(null, error -> { });
+        }
+    }
+
+    @Test
+    public void testOpensAtFailureRateAndFailsFast() {
+        for (int i = 0; i < 4; i++) {
+            call(Mono.just("100.0")).block();
+        }
+        fail(3);
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+
+        fail(1);
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+        StepVerifier.create(call(Mono.just("100.0")))
+                .expectError(UpstreamUnavailableException.class)
+                .verify();
+        assertEquals(8, calls.get());
+    }
+
+    @Test
+    public void testClientErrorsDoNotOpenTheCircuit() {
+        for (int i = 0; i < 10; i++) {
+            call(Mono.error(new PortfolioServiceException("Error while retrieving cash for PORTFOLIO_A")))
+                    .subscribe(null, error -> { });
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    public void testClosesAfterSuccessfulTrialCalls() {
+        fail(4);
+        clock.addAndGet(Duration.ofSeconds(10).toNanos());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+
+        call(Mono.just("100.0")).block();
+        call(Mono.just("100.0")).block();
+
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    public void testShedCallsAreNotTrialCalls() {
+        fail(4);
+        clock.addAndGet(Duration.ofSeconds(10).toNanos());
+
+        for (int i = 0; i < 2; i++) {
+            call(Mono.error(new UpstreamThrottledException("Call to the remote API shed by the rate limiter")))
+                    .subscribe(null, error -> { });
+        }
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+
+        call(Mono.just("100.0")).block();
+        call(Mono.just("100.0")).block();
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    public void testReopensOnFailedTrialCall() {
+        fail(4);
+        clock.addAndGet(Duration.ofSeconds(10).toNanos());
+
+        fail(1);
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        StepVerifier.create(call(Mono.just("100.0")))
+                .expectError(UpstreamUnavailableException.class)
+                .verify();
+    }
+}
@@ -0,0 +1,134 @@
+package org.example.portfolio.service;
+
+import org.example.portfolio.model.Holding;
+import org.example.portfolio.model.Portfolio;
+import org.example.portfolio.model.PortfolioHolding;
+import org.example.portfolio.store.CompactHoldings;
+import org.example.portfolio.store.HoldingsStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.mockito.Mockito.when;
+
+public class ExposureAggregatorTest {
+
+    @Mock
+    private PortfolioService portfolioService;
+
+    private ExposureAggregator aggregator;
+
+    private static CompactHoldings compact(Holding... holdings) {
+        return HoldingsStore.onHeap().compact(Arrays.asList(holdings));
+    }
+
+    private Mono<List<Portfolio>> selected(PortfolioFilter filter) {
+        return portfolioService.getAllPortfolios()
+                .map(portfolios -> portfolios.stream().filter(filter).collect(Collectors.toList()));
+    }
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        aggregator = new ExposureAggregator(portfolioService, 4, Schedulers.parallel());
+
+        when(portfolioService.getAllPortfolios()).thenReturn(Mono.just(Arrays.asList(
+                new Portfolio("PORTFOLIO_A", false), new Portfolio("PORTFOLIO_B", false),
+                new Portfolio("PORTFOLIO_C", true))));
+        when(portfolioService.getCompactHoldings("PORTFOLIO_A")).thenReturn(Mono.just(compact(
+                new Holding("AMZN", 1000), new Holding("GOOGL", 2000))));
+        when(portfolioService.getCompactHoldings("PORTFOLIO_B")).thenReturn(Mono.just(compact(
+                new Holding("googl", 500), new Holding("MSFT", 3000))));
+        when(portfolioService.getCompactHoldings("PORTFOLIO_C")).thenReturn(Mono.just(compact(
+                new Holding("AMZN", 4000))));
+    }
+
+    @Test
+    public void testExposureSumsEveryPortfolio() {
+        StepVerifier.create(aggregator.exposureByStock(selected(PortfolioFilter.ALL)))
+                .expectNext(Map.of("AMZN", 5000.0, "GOOGL", 2500.0, "MSFT", 3000.0))
+                .verifyComplete();
+    }
+
+    @Test
+    public void testExposureExcludesDisabledPortfolios() {
+        StepVerifier.create(aggregator.exposureByStock(selected(PortfolioFilter.of(null, true))))
+                .expectNext(Map.of("AMZN", 1000.0, "GOOGL", 2500.0, "MSFT", 3000.0))
+                .verifyComplete();
+    }
+
+    @Test
+    public void testExposureOfSelectedPortfoliosSkipsFailures() {
+        when(portfolioService.getCompactHoldings("PORTFOLIO_B"))
+                .thenReturn(Mono.error(new PortfolioServiceException("Error while retrieving Holding for PORTFOLIO_B")));
+
+        StepVerifier.create(aggregator.exposureByStock(selected(PortfolioFilter.of(Arrays.asList("PORTFOLIO_A", "PORTFOLIO_B"), false))))
+                .expectNext(Map.of("AMZN", 1000.0, "GOOGL", 2000.0))
+                .verifyComplete();
+    }
+
+    @Test
+    public void testExposureSkipsPortfolioWithValueThatIsNotFinite() {
+        when(portfolioService.getCompactHoldings("PORTFOLIO_B")).thenReturn(Mono.just(compact(
+                new Holding("googl", 500), new Holding("MSFT", Double.NaN))));
+
+        StepVerifier.create(aggregator.exposureByStock(selected(PortfolioFilter.ALL)))
+                .expectNext(Map.of("AMZN", 5000.0, "GOOGL", 2000.0))
+                .verifyComplete();
+    }
+
+    @Test
+    public void testExposureBeyondTheRangeOfALongIsTheSameForAnyParallelism() {
+        List<Portfolio> portfolios = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            String name = "PORTFOLIO_" + i;
+            portfolios.add(new Portfolio(name, false));
+            // close to the largest fixed-point amount, so that any two of them overflow a long
+            when(portfolioService.getCompactHoldings(name)).thenReturn(Mono.just(compact(
+                    new Holding("AMZN", 9e12), new Holding("MSFT", i))));
+        }
+        // a total of its own beyond the range of a fixed-point amount, left out whatever the rail it lands on
+        portfolios.add(new Portfolio("PORTFOLIO_OVERFLOWING", false));
+        when(portfolioService.getCompactHoldings("PORTFOLIO_OVERFLOWING")).thenReturn(Mono.just(compact(
+                new Holding("AMZN", 5e12), new Holding("MSFT", 5e12))));
+        when(portfolioService.getAllPortfolios()).thenReturn(Mono.just(portfolios));
+
+        Map<String, Double> expected = Map.of("AMZN", 7.2e13, "MSFT", 28.0);
+        for (int parallelism : new int[]{1, 2, 4, 8}) {
+            aggregator = new ExposureAggregator(portfolioService, parallelism, Schedulers.parallel());
+            StepVerifier.create(aggregator.exposureByStock(selected(PortfolioFilter.ALL)))
+                    .expectNext(expected)
+                    .verifyComplete();
+        }
+    }
+
+    @Test
+    public void testTopHoldingsLargestFirst() {
+        StepVerifier.create(aggregator.topHoldings(selected(PortfolioFilter.ALL), 3))
+                .expectNext(Arrays.asList(
+                        new PortfolioHolding("PORTFOLIO_C", "AMZN", 4000),
+                        new PortfolioHolding("PORTFOLIO_B", "MSFT", 3000),
+                        new PortfolioHolding("PORTFOLIO_A", "GOOGL", 2000)))
+                .verifyComplete();
+    }
+
+    @Test
+    public void testTopHoldingsOfNoPortfolio() {
+        when(portfolioService.getAllPortfolios()).thenReturn(Mono.just(Collections.emptyList()));
+
+        StepVerifier.create(aggregator.topHoldings(selected(PortfolioFilter.ALL), 3))
+                .expectNext(List.of())
+                .verifyComplete();
+    }
+}
@@ -0,0 +1,69 @@
+package org.example.portfolio.service;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class PerPortfolioExecutorTest {
+
+    private static boolean hasVirtualThreads() {
+        return Runtime.version().feature() >= 21;
+    }
+
+    @Test
+    public void testModeIsParsedFromItsPropertyValue() {
+        assertEquals(PerPortfolioExecutor.Mode.REACTIVE, new PerPortfolioExecutor("reactive").getMode());
+        assertThrows(IllegalArgumentException.class, () -> new PerPortfolioExecutor("threads"));
+    }
+
+    @Test
+    public void testVirtualThreadModeRequiresJava21() {
+        assumeTrue(!hasVirtualThreads());
+
+        assertThrows(IllegalStateException.class, () -> new PerPortfolioExecutor("virtual-threads"));
+    }
+
+    @Test
+    public void testWorkRunsOnAVirtualThreadWithTheCallerContext() {
+        assumeTrue(hasVirtualThreads());
+        PerPortfolioExecutor executor = new PerPortfolioExecutor(PerPortfolioExecutor.Mode.VIRTUAL_THREADS);
+
+        Mono<String> work = executor.run(() -> Mono.deferContextual(context ->
+                Mono.just(context.get("deadline") + " on " + Thread.currentThread().getName())));
+
+        StepVerifier.create(work.contextWrite(context -> context.put("deadline", "5s")))
+                .expectNextMatches(result -> result.startsWith("5s on "))
+                .verifyComplete();
+        executor.dispose();
+    }
+
+    @Test
+    public void testVirtualThreadModeReportsErrorsUnwrapped() {
+        assumeTrue(hasVirtualThreads());
+        PerPortfolioExecutor executor = new PerPortfolioExecutor(PerPortfolioExecutor.Mode.VIRTUAL_THREADS);
+
+        StepVerifier.create(executor.run(() -> Mono.error(new TimeoutException())))
+                .expectError(TimeoutException.class)
+                .verify();
+        StepVerifier.create(executor.runMany(() -> Flux.just("AMZN", "GOOGL")))
+                .expectNext("AMZN", "GOOGL")
+                .verifyComplete();
+        executor.dispose();
+    }
+
+    @Test
+    public void testReactiveModeRunsOnTheSubscribingThread() {
+        Thread caller = Thread.currentThread();
+
+        StepVerifier.create(PerPortfolioExecutor.reactive().run(() -> Mono.fromSupplier(Thread::currentThread)))
+                .expectNext(caller)
+                .verifyComplete();
+    }
+}
@@ -0,0 +1,99 @@
+package org.example.portfolio.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.mockwebserver.MockWebServer;
+import org.example.portfolio.metrics.PortfolioMetrics;
+import org.example.portfolio.model.Cash;
+import org.example.portfolio.model.Holding;
+import org.example.portfolio.store.HoldingsStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class PortfolioServiceBatchTest {
+
+    private MockWebServer mockWebServer;
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        mockWebServer.shutdown();
+    }
+
+    @Test
+    public void testConcurrentRequestsAreSentAsOneBulkRequest() throws IOException {
+        BulkUpstreamStub stub = stubWithPortfolios(true);
+        PortfolioService portfolioService = startService(stub);
+
+        StepVerifier.create(Mono.zip(
+                        portfolioService.getCash("PORTFOLIO_A"),
+                        portfolioService.getCash("PORTFOLIO_B"),
+                        portfolioService.getHoldings("PORTFOLIO_A")))
+                .assertNext(result -> {
+                    assertEquals(new Cash(100.0), result.getT1());
+                    assertEquals(new Cash(200.0), result.getT2());
+                    assertEquals(Arrays.asList(new Holding("AMZN", 1000)), result.getT3());
+                })
+                .verifyComplete();
+
+        assertEquals(2, stub.getBulkRequests());
+        assertEquals(0, stub.getSingleRequests());
+    }
+
+    @Test
+    public void testPortfolioMissingFromBulkResponseFails() throws IOException {
+        PortfolioService portfolioService = startService(stubWithPortfolios(true));
+
+        StepVerifier.create(portfolioService.getCash("PORTFOLIO_UNKNOWN"))
+                .expectError(PortfolioServiceException.class)
+                .verify();
+    }
+
+    @Test
+    public void testFallsBackToPerPortfolioRequestsWhenBulkIsNotSupported() throws IOException {
+        BulkUpstreamStub stub = stubWithPortfolios(false);
+        PortfolioService portfolioService = startService(stub);
+
+        StepVerifier.create(Mono.zip(portfolioService.getCash("PORTFOLIO_A"), portfolioService.getCash("PORTFOLIO_B")))
+                .assertNext(result -> {
+                    assertEquals(new Cash(100.0), result.getT1());
+                    assertEquals(new Cash(200.0), result.getT2());
+                })
+                .verifyComplete();
+        StepVerifier.create(portfolioService.getCash("PORTFOLIO_A"))
+                .expectNext(new Cash(100.0))
+                .verifyComplete();
+
+        assertEquals(0, stub.getBulkRequests());
+        assertEquals(3, stub.getSingleRequests());
+    }
+
+    private BulkUpstreamStub stubWithPortfolios(boolean bulkSupported) {
+        return new BulkUpstreamStub(bulkSupported)
+                .withPortfolio("PORTFOLIO_A", new Cash(100.0), Arrays.asList(new Holding("AMZN", 1000)))
+                .withPortfolio("PORTFOLIO_B", new Cash(200.0), Collections.emptyList());
+    }
+
+    private PortfolioService startService(BulkUpstreamStub stub) throws IOException {
+        mockWebServer = new MockWebServer();
+        mockWebServer.setDispatcher(stub);
+        mockWebServer.start();
+
+        UpstreamBatcherFactory batcherFactory = new UpstreamBatcherFactory(true, Duration.ofMillis(50), 100,
+                Duration.ofMinutes(5));
+        PortfolioService portfolioService = new PortfolioService(WebClient.builder(), SnapshotCacheFactory.disabled(),
+                AdaptiveConcurrencyLimiter.unlimited(), UpstreamRateLimiter.disabled(), batcherFactory,
+                UpstreamResilienceFactory.disabled(), HoldingsStore.onHeap(), new PortfolioMetrics(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(portfolioService, "SERVER_API_URL", mockWebServer.url("").toString().replaceAll("/$", ""));
+        return portfolioService;
+    }
+}
@@ -0,0 +1,113 @@
+package org.example.portfolio.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.example.portfolio.metrics.PortfolioMetrics;
+import org.example.portfolio.model.Holding;
+import org.example.portfolio.store.HoldingsStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class PortfolioServiceStreamTest {
+
+    private MockWebServer mockWebServer;
+    private PortfolioService portfolioService;
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+        MockEnvironment environment = new MockEnvironment();
+        environment.setConversionService(new ApplicationConversionService());
+        SnapshotCacheFactory cacheFactory = new SnapshotCacheFactory(true, environment, null, System::nanoTime, Runnable::run);
+        portfolioService = new PortfolioService(WebClient.builder(), cacheFactory, AdaptiveConcurrencyLimiter.unlimited(),
+                UpstreamRateLimiter.disabled(), UpstreamBatcherFactory.disabled(), UpstreamResilienceFactory.disabled(),
+                HoldingsStore.onHeap(), new PortfolioMetrics(registry));
+        ReflectionTestUtils.setField(portfolioService, "SERVER_API_URL", mockWebServer.url("").toString().replaceAll("/$", ""));
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        mockWebServer.shutdown();
+    }
+
+    @Test
+    public void testHoldingsAreEmittedOneByOne() {
+        mockWebServer.enqueue(jsonResponse("[{\"stock_id\":\"AMZN\",\"value\":1000.0},{\"stock_id\":\"GOOGL\",\"value\":2000.0}]"));
+
+        StepVerifier.create(portfolioService.streamHoldings("PORTFOLIO_A"))
+                .expectNext(new Holding("AMZN", 1000))
+                .expectNext(new Holding("GOOGL", 2000))
+                .verifyComplete();
+    }
+
+    @Test
+    public void testStreamStopsAtFirstMatch() {
+        StringBuilder body = new StringBuilder("[{\"stock_id\":\"AMZN\",\"value\":1000.0}");
+        for (int i = 0; i < 10_000; i++) {
+            body.append(",{\"stock_id\":\"STOCK").append(i).append("\",\"value\":1.0}");
+        }
+        body.append(']');
+        mockWebServer.enqueue(jsonResponse(body.toString()));
+
+        StepVerifier.create(portfolioService.streamHoldings("PORTFOLIO_A")
+                        .filter(h -> h.getStockId().equals("AMZN"))
+                        .take(1))
+                .expectNext(new Holding("AMZN", 1000))
+                .verifyComplete();
+
+        // the rest of the body is not read, and the holdings are not cached from the part that was
+        assertEquals(1, registry.get("portfolio.upstream.requests")
+                .tags("endpoint", "holdings_stream", "outcome", PortfolioMetrics.OUTCOME_CANCELLED).timer().count());
+        mockWebServer.enqueue(jsonResponse("[{\"stock_id\":\"AMZN\",\"value\":1000.0}]"));
+        StepVerifier.create(portfolioService.streamHoldings("PORTFOLIO_A")).expectNextCount(1).verifyComplete();
+        assertEquals(2, mockWebServer.getRequestCount());
+    }
+
+    @Test
+    public void testConcurrentStreamsShareOneDownloadAndFillTheCache() {
+        mockWebServer.enqueue(jsonResponse("[{\"stock_id\":\"AMZN\",\"value\":1000.0},{\"stock_id\":\"GOOGL\",\"value\":2000.0}]"));
+        List<Holding> expected = List.of(new Holding("AMZN", 1000), new Holding("GOOGL", 2000));
+
+        StepVerifier.create(Mono.zip(portfolioService.streamHoldings("PORTFOLIO_A").collectList(),
+                        portfolioService.streamHoldings("PORTFOLIO_A").collectList()))
+                .expectNextMatches(both -> both.getT1().equals(expected) && both.getT2().equals(expected))
+                .verifyComplete();
+
+        StepVerifier.create(portfolioService.streamHoldings("PORTFOLIO_A").collectList()).expectNext(expected).verifyComplete();
+        StepVerifier.create(portfolioService.getHoldings("PORTFOLIO_A")).expectNext(expected).verifyComplete();
+        assertEquals(1, mockWebServer.getRequestCount());
+    }
+
+    @Test
+    public void testClientErrorIsReported() {
+        mockWebServer.enqueue(new MockResponse().setResponseCode(404));
+
+        StepVerifier.create(portfolioService.streamHoldings("PORTFOLIO_A"))
+                .expectError(PortfolioServiceException.class)
+                .verify();
+    }
+
+    private static MockResponse jsonResponse(String body) {
+        return new MockResponse()
+                .setResponseCode(200)
+                .setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON)
+                .setBody(body);
+    }
+}
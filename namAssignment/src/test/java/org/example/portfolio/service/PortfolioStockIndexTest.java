@@ -0,0 +1,171 @@
+package org.example.portfolio.service;
+
+import org.example.portfolio.model.Holding;
+import org.example.portfolio.model.Portfolio;
+import org.example.portfolio.store.CompactHoldings;
+import org.example.portfolio.store.HoldingsStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+public class PortfolioStockIndexTest {
+
+    @Mock
+    private PortfolioService portfolioService;
+
+    private MutableClock clock;
+    private PortfolioStockIndex stockIndex;
+
+    private static CompactHoldings compact(Holding... holdings) {
+        return HoldingsStore.onHeap().compact(Arrays.asList(holdings));
+    }
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        clock = new MutableClock();
+        stockIndex = new PortfolioStockIndex(portfolioService, true, Duration.ofSeconds(60), 4, clock);
+    }
+
+    @Test
+    public void testColdIndexIsNotFresh() {
+        assertFalse(stockIndex.isFresh());
+        assertEquals(Collections.emptyList(), stockIndex.lookup("AMZN"));
+    }
+
+    @Test
+    public void testRefreshBuildsIndex() {
+        when(portfolioService.getAllPortfolios()).thenReturn(Mono.just(Arrays.asList(
+                new Portfolio("PORTFOLIO_A", false), new Portfolio("PORTFOLIO_B", false))));
+        when(portfolioService.getCompactHoldings("PORTFOLIO_A")).thenReturn(Mono.just(compact(
+                new Holding("AMZN", 1000), new Holding("GOOGL", 2000))));
+        when(portfolioService.getCompactHoldings("PORTFOLIO_B")).thenReturn(Mono.just(compact(
+                new Holding("googl", 500))));
+
+        StepVerifier.create(stockIndex.refresh()).verifyComplete();
+
+        assertTrue(stockIndex.isFresh());
+        assertEquals(Arrays.asList("PORTFOLIO_A"), stockIndex.lookup("amzn"));
+        assertEquals(new HashSet<>(Arrays.asList("PORTFOLIO_A", "PORTFOLIO_B")),
+                new HashSet<>(stockIndex.lookup("GOOGL")));
+    }
+
+    @Test
+    public void testRefreshIsIncremental() {
+        when(portfolioService.getAllPortfolios()).thenReturn(Mono.just(Arrays.asList(
+                new Portfolio("PORTFOLIO_A", false), new Portfolio("PORTFOLIO_B", false))));
+        when(portfolioService.getCompactHoldings("PORTFOLIO_A")).thenReturn(Mono.just(compact(new Holding("AMZN", 1000))));
+        when(portfolioService.getCompactHoldings("PORTFOLIO_B")).thenReturn(Mono.just(compact(new Holding("MSFT", 1000))));
+        StepVerifier.create(stockIndex.refresh()).verifyComplete();
+
+        // PORTFOLIO_A sold AMZN for MSFT, PORTFOLIO_B was removed upstream
+        when(portfolioService.getAllPortfolios()).thenReturn(Mono.just(Arrays.asList(new Portfolio("PORTFOLIO_A", false))));
+        when(portfolioService.getCompactHoldings("PORTFOLIO_A")).thenReturn(Mono.just(compact(new Holding("MSFT", 1000))));
+        StepVerifier.create(stockIndex.refresh()).verifyComplete();
+
+        assertEquals(Collections.emptyList(), stockIndex.lookup("AMZN"));
+        assertEquals(Arrays.asList("PORTFOLIO_A"), stockIndex.lookup("MSFT"));
+    }
+
+    @Test
+    public void testVersionChangesOnlyWithTheIndex() {
+        when(portfolioService.getAllPortfolios()).thenReturn(Mono.just(Arrays.asList(new Portfolio("PORTFOLIO_A", false))));
+        when(portfolioService.getCompactHoldings("PORTFOLIO_A")).thenReturn(Mono.just(compact(new Holding("AMZN", 1000))));
+        StepVerifier.create(stockIndex.refresh()).verifyComplete();
+        long version = stockIndex.getVersion();
+
+        // same stocks, other values
+        when(portfolioService.getCompactHoldings("PORTFOLIO_A")).thenReturn(Mono.just(compact(new Holding("AMZN", 2000))));
+        StepVerifier.create(stockIndex.refresh()).verifyComplete();
+        assertEquals(version, stockIndex.getVersion());
+
+        when(portfolioService.getCompactHoldings("PORTFOLIO_A")).thenReturn(Mono.just(compact(new Holding("MSFT", 2000))));
+        StepVerifier.create(stockIndex.refresh()).verifyComplete();
+        assertTrue(stockIndex.getVersion() > version);
+    }
+
+    @Test
+    public void testIndexStaysColdWhenAPortfolioFails() {
+        when(portfolioService.getAllPortfolios()).thenReturn(Mono.just(Arrays.asList(
+                new Portfolio("PORTFOLIO_A", false), new Portfolio("PORTFOLIO_B", false))));
+        when(portfolioService.getCompactHoldings("PORTFOLIO_A")).thenReturn(Mono.just(compact(new Holding("AMZN", 1000))));
+        when(portfolioService.getCompactHoldings("PORTFOLIO_B"))
+                .thenReturn(Mono.error(new PortfolioServiceException("Error while retrieving Holding for PORTFOLIO_B")));
+
+        StepVerifier.create(stockIndex.refresh()).verifyComplete();
+
+        assertFalse(stockIndex.isFresh());
+    }
+
+    @Test
+    public void testIndexAgesOutWhileAPortfolioKeepsFailing() {
+        when(portfolioService.getAllPortfolios()).thenReturn(Mono.just(Arrays.asList(
+                new Portfolio("PORTFOLIO_A", false), new Portfolio("PORTFOLIO_B", false))));
+        when(portfolioService.getCompactHoldings("PORTFOLIO_A")).thenReturn(Mono.just(compact(new Holding("AMZN", 1000))));
+        when(portfolioService.getCompactHoldings("PORTFOLIO_B")).thenReturn(Mono.just(compact(new Holding("MSFT", 1000))),
+                Mono.error(new PortfolioServiceException("Error while retrieving Holding for PORTFOLIO_B")));
+        StepVerifier.create(stockIndex.refresh()).verifyComplete();
+
+        // the entries of PORTFOLIO_B are kept, but a run that could not re-read them does not make the index fresher
+        clock.advance(Duration.ofSeconds(40));
+        StepVerifier.create(stockIndex.refresh()).verifyComplete();
+        clock.advance(Duration.ofSeconds(21));
+
+        assertEquals(List.of("PORTFOLIO_B"), stockIndex.lookup("MSFT"));
+        assertFalse(stockIndex.isFresh());
+    }
+
+    @Test
+    public void testIndexBecomesStale() {
+        when(portfolioService.getAllPortfolios()).thenReturn(Mono.just(Arrays.asList(new Portfolio("PORTFOLIO_A", false))));
+        when(portfolioService.getCompactHoldings("PORTFOLIO_A")).thenReturn(Mono.just(compact(new Holding("AMZN", 1000))));
+        StepVerifier.create(stockIndex.refresh()).verifyComplete();
+        assertTrue(stockIndex.isFresh());
+
+        clock.advance(Duration.ofSeconds(61));
+
+        assertFalse(stockIndex.isFresh());
+    }
+
+    private static class MutableClock extends Clock {
+
+        private Instant now = Instant.parse("2024-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package org.example.portfolio.service;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+public class RequestDeadlineTest {
+
+    @Test
+    public void testCallWithoutDeadlineIsNotBounded() {
+        StepVerifier.create(RequestDeadline.bound("cash of PORTFOLIO_A", Mono.just("100.0")))
+                .expectNext("100.0")
+                .verifyComplete();
+    }
+
+    @Test
+    public void testCallFailsOnceDeadlineExpires() {
+        RequestDeadline deadline = RequestDeadline.after(Duration.ofMillis(50));
+
+        StepVerifier.create(RequestDeadline.bound("cash of PORTFOLIO_A", Mono.never())
+                        .contextWrite(deadline::attachTo))
+                .expectError(DeadlineExceededException.class)
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    public void testStreamEmitsWhatArrivedBeforeDeadline() {
+        RequestDeadline deadline = RequestDeadline.after(Duration.ofMillis(100));
+        Flux<String> slowStream = Flux.concat(Mono.just("AMZN"), Mono.never());
+
+        StepVerifier.create(RequestDeadline.boundMany("holdings of PORTFOLIO_A", slowStream)
+                        .contextWrite(deadline::attachTo))
+                .expectNext("AMZN")
+                .expectError(DeadlineExceededException.class)
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    public void testStreamCompletingInTimeIsUnchanged() {
+        RequestDeadline deadline = RequestDeadline.after(Duration.ofSeconds(5));
+
+        StepVerifier.create(RequestDeadline.boundMany("holdings of PORTFOLIO_A", Flux.just("AMZN", "GOOGL"))
+                        .contextWrite(deadline::attachTo))
+                .expectNext("AMZN", "GOOGL")
+                .verifyComplete();
+    }
+}
@@ -0,0 +1,141 @@
+package org.example.portfolio.service;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RequestHedgerTest {
+
+    private final VirtualTimeScheduler scheduler = VirtualTimeScheduler.create();
+    private final AtomicInteger hedges = new AtomicInteger();
+
+    private RequestHedger hedger(double budgetRatio) {
+        return new RequestHedger(true, 0.5, Duration.ofMillis(10), budgetRatio, 1,
+                scheduler, () -> scheduler.now(TimeUnit.NANOSECONDS), hedges::incrementAndGet);
+    }
+
+    @SafeVarargs
+    private static <T> Supplier<Mono<T>> responses(Mono<T>... responses) {
+        Queue<Mono<T>> queue = new ArrayDeque<>(Arrays.asList(responses));
+        return queue::poll;
+    }
+
+    @Test
+    public void testSlowCallIsHedgedAndFirstSuccessWins() {
+        RequestHedger hedger = hedger(1.0);
+        hedger.run(() -> Mono.just("warm-up")).block();
+        assertEquals(Duration.ofMillis(10), hedger.getHedgeDelay());
+
+        AtomicReference<String> result = new AtomicReference<>();
+        Sinks.One<String> slow = Sinks.one();
+        hedger.run(responses(slow.asMono(), Mono.just("hedged"))).subscribe(result::set);
+
+        scheduler.advanceTimeBy(Duration.ofMillis(9));
+        assertNull(result.get());
+
+        scheduler.advanceTimeBy(Duration.ofMillis(1));
+        assertEquals("hedged", result.get());
+        assertEquals(1, hedges.get());
+        assertEquals(0, slow.currentSubscriberCount());
+    }
+
+    @Test
+    public void testCallWaitingToBeSentIsNotHedged() {
+        RequestHedger hedger = hedger(1.0);
+        hedger.run(() -> Mono.just("warm-up")).block();
+
+        AtomicReference<String> result = new AtomicReference<>();
+        Sinks.Empty<Void> permit = Sinks.empty();
+        Sinks.One<String> slow = Sinks.one();
+        Supplier<Mono<String>> responses = responses(slow.asMono(), Mono.just("hedged"));
+        hedger.<String>run(send -> permit.asMono().then(Mono.defer(() -> send.apply(responses.get()))))
+                .subscribe(result::set);
+        scheduler.advanceTimeBy(Duration.ofSeconds(1));
+        assertEquals(0, hedges.get());
+
+        // the hedge delay starts once the call is sent
+        permit.tryEmitEmpty();
+        scheduler.advanceTimeBy(Duration.ofMillis(9));
+        assertNull(result.get());
+        scheduler.advanceTimeBy(Duration.ofMillis(1));
+        assertEquals("hedged", result.get());
+        assertEquals(1, hedges.get());
+    }
+
+    @Test
+    public void testNoHedgeBeyondBudget() {
+        RequestHedger hedger = hedger(0.0);
+        hedger.run(() -> Mono.just("warm-up")).block();
+
+        AtomicReference<String> result = new AtomicReference<>();
+        Sinks.One<String> slow = Sinks.one();
+        hedger.run(responses(slow.asMono(), Mono.just("hedged"))).subscribe(result::set);
+        scheduler.advanceTimeBy(Duration.ofSeconds(1));
+
+        assertNull(result.get());
+        assertEquals(0, hedges.get());
+        slow.tryEmitValue("slow");
+        assertEquals("slow", result.get());
+    }
+
+    @Test
+    public void testErrorOfPrimaryCallIsNotMasked() {
+        RequestHedger hedger = hedger(1.0);
+        hedger.run(() -> Mono.just("warm-up")).block();
+
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        hedger.run(responses(Mono.<String>error(new PortfolioServiceException("Error while retrieving cash for PORTFOLIO_A")),
+                Mono.just("hedged"))).subscribe(null, error::set);
+        scheduler.advanceTimeBy(Duration.ofSeconds(1));
+
+        assertTrue(error.get() instanceof PortfolioServiceException);
+        assertEquals(0, hedges.get());
+    }
+
+    @Test
+    public void testFailedHedgeDoesNotCancelThePrimaryCall() {
+        RequestHedger hedger = hedger(1.0);
+        hedger.run(() -> Mono.just("warm-up")).block();
+
+        AtomicReference<String> result = new AtomicReference<>();
+        Sinks.One<String> slow = Sinks.one();
+        hedger.run(responses(slow.asMono(), Mono.<String>error(new IllegalStateException("hedge failed"))))
+                .subscribe(result::set);
+        scheduler.advanceTimeBy(Duration.ofMillis(10));
+
+        assertEquals(1, hedges.get());
+        assertEquals(1, slow.currentSubscriberCount());
+        slow.tryEmitValue("slow");
+        assertEquals("slow", result.get());
+    }
+
+    @Test
+    public void testHedgedCallFailsOnceBothCallsFailed() {
+        RequestHedger hedger = hedger(1.0);
+        hedger.run(() -> Mono.just("warm-up")).block();
+
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Sinks.One<String> slow = Sinks.one();
+        hedger.run(responses(slow.asMono(), Mono.<String>error(new IllegalStateException("hedge failed"))))
+                .subscribe(null, error::set);
+        scheduler.advanceTimeBy(Duration.ofMillis(10));
+        assertNull(error.get());
+
+        slow.tryEmitError(new PortfolioServiceException("Error while retrieving cash for PORTFOLIO_A"));
+        assertTrue(error.get() instanceof PortfolioServiceException);
+    }
+}
@@ -0,0 +1,97 @@
+package org.example.portfolio.service;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SingleFlightTest {
+
+    private final SingleFlight<String, String> singleFlight = new SingleFlight<>();
+    private final AtomicInteger calls = new AtomicInteger();
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+    private final Sinks.One<String> upstream = Sinks.one();
+
+    private Mono<String> call() {
+        return upstream.asMono()
+                .doOnSubscribe(s -> calls.incrementAndGet())
+                .doOnCancel(() -> cancelled.set(true));
+    }
+
+    @Test
+    public void testConcurrentCallsShareOneUpstreamCall() {
+        AtomicReference<String> first = new AtomicReference<>();
+        AtomicReference<String> second = new AtomicReference<>();
+
+        singleFlight.execute("cash/PORTFOLIO_A", this::call).subscribe(first::set);
+        singleFlight.execute("cash/PORTFOLIO_A", this::call).subscribe(second::set);
+        upstream.tryEmitValue("100.0");
+
+        assertEquals(1, calls.get());
+        assertEquals("100.0", first.get());
+        assertEquals("100.0", second.get());
+        assertEquals(0, singleFlight.inFlightCount());
+    }
+
+    @Test
+    public void testInteractiveCallDoesNotWaitBehindBackgroundCall() {
+        Sinks.One<String> interactive = Sinks.one();
+        singleFlight.execute("cash/PORTFOLIO_A", this::call).subscribe();
+        singleFlight.execute("cash/PORTFOLIO_A", () -> interactive.asMono().doOnSubscribe(s -> calls.incrementAndGet()))
+                .contextWrite(UpstreamPriority.INTERACTIVE::attachTo)
+                .subscribe();
+        assertEquals(2, calls.get());
+
+        // a background call joins the interactive one
+        AtomicReference<String> background = new AtomicReference<>();
+        singleFlight.execute("cash/PORTFOLIO_A", this::call).subscribe(background::set);
+        interactive.tryEmitValue("100.0");
+
+        assertEquals(2, calls.get());
+        assertEquals("100.0", background.get());
+    }
+
+    @Test
+    public void testDifferentKeysAreNotShared() {
+        singleFlight.execute("cash/PORTFOLIO_A", this::call).subscribe();
+        singleFlight.execute("cash/PORTFOLIO_B", this::call).subscribe();
+
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testUpstreamCancelledOnlyWhenAllSubscribersCancel() {
+        Disposable first = singleFlight.execute("cash/PORTFOLIO_A", this::call).subscribe();
+        Disposable second = singleFlight.execute("cash/PORTFOLIO_A", this::call).subscribe();
+
+        first.dispose();
+        assertFalse(cancelled.get());
+
+        second.dispose();
+        assertTrue(cancelled.get());
+        assertEquals(0, singleFlight.inFlightCount());
+    }
+
+    @Test
+    public void testErrorIsSharedAndKeyReleased() {
+        Mono<String> first = singleFlight.execute("cash/PORTFOLIO_A", this::call);
+        Mono<String> second = singleFlight.execute("cash/PORTFOLIO_A", this::call);
+
+        StepVerifier.create(Mono.zip(first, second))
+                .then(() -> upstream.tryEmitError(new PortfolioServiceException("Error while retrieving cash for PORTFOLIO_A")))
+                .expectError(PortfolioServiceException.class)
+                .verify();
+
+        assertEquals(1, calls.get());
+        assertEquals(0, singleFlight.inFlightCount());
+    }
+}
@@ -0,0 +1,148 @@
+package org.example.portfolio.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.mock.env.MockEnvironment;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SnapshotCacheTest {
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final AtomicInteger loads = new AtomicInteger();
+    private SnapshotCacheFactory factory;
+    private SnapshotCache<String, String> cache;
+
+    @BeforeEach
+    public void setUp() {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("portfolio.cache.cash.soft-ttl", "10s")
+                .withProperty("portfolio.cache.cash.hard-ttl", "60s")
+                .withProperty("portfolio.cache.cash.max-entries", "100");
+        environment.setConversionService(new ApplicationConversionService());
+        factory = new SnapshotCacheFactory(true, environment, new SimpleMeterRegistry(),
+                nanos::get, Runnable::run);
+        cache = factory.create("cash", key -> Mono.fromSupplier(() -> key + "-" + loads.incrementAndGet()), value -> 1);
+    }
+
+    @Test
+    public void testValueIsLoadedOnce() {
+        StepVerifier.create(cache.get("PORTFOLIO_A")).expectNext("PORTFOLIO_A-1").verifyComplete();
+        StepVerifier.create(cache.get("PORTFOLIO_A")).expectNext("PORTFOLIO_A-1").verifyComplete();
+
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.stats().hitCount());
+        assertEquals(1, cache.stats().missCount());
+    }
+
+    @Test
+    public void testStaleValueIsServedWhileRefreshing() {
+        // the refresh only completes when released, as a call to the remote API would
+        CompletableFuture<String> refreshed = new CompletableFuture<>();
+        cache = factory.create("cash",
+                key -> loads.incrementAndGet() == 1 ? Mono.just(key + "-1") : Mono.fromFuture(refreshed), value -> 1);
+        StepVerifier.create(cache.get("PORTFOLIO_A")).expectNext("PORTFOLIO_A-1").verifyComplete();
+
+        advance(Duration.ofSeconds(11));
+
+        // past the soft TTL the stale value is returned and a refresh is triggered
+        StepVerifier.create(cache.get("PORTFOLIO_A")).expectNext("PORTFOLIO_A-1").verifyComplete();
+        assertEquals(2, loads.get());
+        refreshed.complete("PORTFOLIO_A-2");
+        StepVerifier.create(cache.get("PORTFOLIO_A")).expectNext("PORTFOLIO_A-2").verifyComplete();
+    }
+
+    @Test
+    public void testInteractiveCallerReloadsABackgroundMiss() {
+        // the background load is queued behind other background calls and never answers in this test
+        CompletableFuture<String> background = new CompletableFuture<>();
+        cache = factory.create("cash", key -> Mono.deferContextual(context -> {
+            loads.incrementAndGet();
+            return UpstreamPriority.current(context) == UpstreamPriority.BACKGROUND
+                    ? Mono.fromFuture(background)
+                    : Mono.just(key + "-interactive");
+        }), value -> 1);
+
+        cache.get("PORTFOLIO_A").subscribe();
+        StepVerifier.create(cache.get("PORTFOLIO_A").contextWrite(UpstreamPriority.INTERACTIVE::attachTo))
+                .expectNext("PORTFOLIO_A-interactive")
+                .verifyComplete();
+        assertEquals(2, loads.get());
+
+        // later callers are served by the interactive load
+        StepVerifier.create(cache.get("PORTFOLIO_A")).expectNext("PORTFOLIO_A-interactive").verifyComplete();
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testExpiredValueIsReloaded() {
+        StepVerifier.create(cache.get("PORTFOLIO_A")).expectNext("PORTFOLIO_A-1").verifyComplete();
+
+        advance(Duration.ofSeconds(61));
+
+        StepVerifier.create(cache.get("PORTFOLIO_A")).expectNext("PORTFOLIO_A-2").verifyComplete();
+    }
+
+    @Test
+    public void testRestoredValueIsServedUntilRefreshed() {
+        assertEquals(1, cache.restore(Map.of("PORTFOLIO_A", "PORTFOLIO_A-restored")));
+
+        StepVerifier.create(cache.get("PORTFOLIO_A")).expectNext("PORTFOLIO_A-restored").verifyComplete();
+        assertEquals(Set.of("PORTFOLIO_A"), cache.restoredKeys());
+        assertEquals(0, loads.get());
+
+        StepVerifier.create(cache.refresh("PORTFOLIO_A")).expectNext("PORTFOLIO_A-1").verifyComplete();
+
+        StepVerifier.create(cache.get("PORTFOLIO_A")).expectNext("PORTFOLIO_A-1").verifyComplete();
+        assertTrue(cache.restoredKeys().isEmpty());
+    }
+
+    @Test
+    public void testRestoredKeyIsClearedWhenReplacedInTheBackground() {
+        assertEquals(2, cache.restore(Map.of("PORTFOLIO_A", "PORTFOLIO_A-restored", "PORTFOLIO_B", "PORTFOLIO_B-restored")));
+
+        // past the soft TTL the read triggers a background refresh, past the hard TTL the value expires
+        advance(Duration.ofSeconds(11));
+        StepVerifier.create(cache.get("PORTFOLIO_A")).expectNextCount(1).verifyComplete();
+        assertEquals(Set.of("PORTFOLIO_B"), cache.restoredKeys());
+
+        advance(Duration.ofSeconds(50));
+        StepVerifier.create(cache.get("PORTFOLIO_B")).expectNext("PORTFOLIO_B-2").verifyComplete();
+        assertTrue(cache.restoredKeys().isEmpty());
+    }
+
+    @Test
+    public void testRestoreKeepsLoadedValues() {
+        StepVerifier.create(cache.get("PORTFOLIO_A")).expectNext("PORTFOLIO_A-1").verifyComplete();
+
+        assertEquals(0, cache.restore(Map.of("PORTFOLIO_A", "PORTFOLIO_A-restored")));
+
+        assertEquals(Map.of("PORTFOLIO_A", "PORTFOLIO_A-1"), cache.snapshot());
+        assertTrue(cache.restoredKeys().isEmpty());
+    }
+
+    @Test
+    public void testDisabledCacheDelegatesToLoader() {
+        SnapshotCache<String, String> disabled = SnapshotCacheFactory.disabled()
+                .create("cash", key -> Mono.fromSupplier(() -> key + "-" + loads.incrementAndGet()), value -> 1);
+
+        StepVerifier.create(disabled.get("PORTFOLIO_A")).expectNext("PORTFOLIO_A-1").verifyComplete();
+        StepVerifier.create(disabled.get("PORTFOLIO_A")).expectNext("PORTFOLIO_A-2").verifyComplete();
+    }
+
+    private void advance(Duration duration) {
+        nanos.addAndGet(duration.toNanos());
+    }
+}
@@ -0,0 +1,117 @@
+package org.example.portfolio.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class UpstreamRateLimiterTest {
+
+    private final VirtualTimeScheduler scheduler = VirtualTimeScheduler.create();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    /* one token per second, a burst of one */
+    private UpstreamRateLimiter limiter(int maxQueued, Duration backgroundMaxWait) {
+        return new UpstreamRateLimiter(true, 1, 1, maxQueued, backgroundMaxWait, meterRegistry,
+                scheduler, () -> scheduler.now(TimeUnit.NANOSECONDS));
+    }
+
+    private static Mono<String> call(UpstreamRateLimiter limiter, String value, UpstreamPriority priority) {
+        return limiter.run(() -> Mono.just(value)).contextWrite(priority::attachTo);
+    }
+
+    private double shedCount(String priority, String reason) {
+        return meterRegistry.get("upstream.rate-limit.shed").tag("priority", priority).tag("reason", reason)
+                .counter().count();
+    }
+
+    @Test
+    public void testInteractiveCallsAreServedBeforeQueuedBackgroundCalls() {
+        UpstreamRateLimiter limiter = limiter(10, Duration.ofMinutes(1));
+        AtomicReference<String> background = new AtomicReference<>();
+        AtomicReference<String> interactive = new AtomicReference<>();
+
+        call(limiter, "first", UpstreamPriority.BACKGROUND).subscribe();
+        call(limiter, "background", UpstreamPriority.BACKGROUND).subscribe(background::set);
+        call(limiter, "interactive", UpstreamPriority.INTERACTIVE).subscribe(interactive::set);
+        assertEquals(1, limiter.getQueueDepth(UpstreamPriority.INTERACTIVE));
+        assertEquals(1, limiter.getQueueDepth(UpstreamPriority.BACKGROUND));
+
+        scheduler.advanceTimeBy(Duration.ofSeconds(1));
+        assertEquals("interactive", interactive.get());
+        assertNull(background.get());
+
+        scheduler.advanceTimeBy(Duration.ofSeconds(1));
+        assertEquals("background", background.get());
+        assertEquals(0, limiter.getQueueDepth(UpstreamPriority.BACKGROUND));
+    }
+
+    @Test
+    public void testInteractiveCallTakesThePlaceOfABackgroundCallWhenTheQueueIsFull() {
+        UpstreamRateLimiter limiter = limiter(1, Duration.ofMinutes(1));
+        AtomicReference<Throwable> backgroundError = new AtomicReference<>();
+        AtomicReference<String> interactive = new AtomicReference<>();
+
+        call(limiter, "first", UpstreamPriority.INTERACTIVE).subscribe();
+        call(limiter, "background", UpstreamPriority.BACKGROUND).subscribe(null, backgroundError::set);
+        call(limiter, "interactive", UpstreamPriority.INTERACTIVE).subscribe(interactive::set);
+
+        assertInstanceOf(UpstreamThrottledException.class, backgroundError.get());
+        assertEquals(1, shedCount("background", UpstreamRateLimiter.SHED_QUEUE_FULL));
+
+        scheduler.advanceTimeBy(Duration.ofSeconds(1));
+        assertEquals("interactive", interactive.get());
+    }
+
+    @Test
+    public void testBackgroundCallIsShedAfterItsMaxWait() {
+        UpstreamRateLimiter limiter = limiter(10, Duration.ofMillis(500));
+        AtomicReference<Throwable> backgroundError = new AtomicReference<>();
+        AtomicReference<String> interactive = new AtomicReference<>();
+
+        call(limiter, "first", UpstreamPriority.INTERACTIVE).subscribe();
+        call(limiter, "background", UpstreamPriority.BACKGROUND).subscribe(null, backgroundError::set);
+        call(limiter, "interactive", UpstreamPriority.INTERACTIVE).subscribe(interactive::set);
+
+        scheduler.advanceTimeBy(Duration.ofMillis(500));
+        assertInstanceOf(UpstreamThrottledException.class, backgroundError.get());
+        assertEquals(1, shedCount("background", UpstreamRateLimiter.SHED_MAX_WAIT));
+        assertNull(interactive.get());
+
+        scheduler.advanceTimeBy(Duration.ofMillis(500));
+        assertEquals("interactive", interactive.get());
+    }
+
+    @Test
+    public void testCancelledWaitingCallLeavesTheQueue() {
+        UpstreamRateLimiter limiter = limiter(10, Duration.ofMinutes(1));
+
+        call(limiter, "first", UpstreamPriority.BACKGROUND).subscribe();
+        Disposable waiting = call(limiter, "second", UpstreamPriority.BACKGROUND).subscribe();
+        assertEquals(1, limiter.getQueueDepth(UpstreamPriority.BACKGROUND));
+
+        waiting.dispose();
+
+        assertEquals(0, limiter.getQueueDepth(UpstreamPriority.BACKGROUND));
+    }
+
+    @Test
+    public void testCallsWithoutPriorityAreBackground() {
+        UpstreamRateLimiter limiter = limiter(10, Duration.ofMinutes(1));
+
+        limiter.run(() -> Mono.just("first")).subscribe();
+        limiter.run(() -> Mono.just("second")).subscribe();
+
+        assertEquals(1, limiter.getQueueDepth(UpstreamPriority.BACKGROUND));
+        assertEquals(1, meterRegistry.get("upstream.rate-limit.queued").tag("priority", "background").gauge().value());
+    }
+}
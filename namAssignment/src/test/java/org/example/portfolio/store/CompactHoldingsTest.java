@@ -0,0 +1,85 @@
+package org.example.portfolio.store;
+
+import org.example.portfolio.model.Holding;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CompactHoldingsTest {
+
+    private final StockSymbols symbols = new StockSymbols();
+    private final List<Holding> holdings = Arrays.asList(
+            new Holding("AMZN", 1000), new Holding("GOOGL", 2000), new Holding("AMZN", 500));
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void testHoldingsAreKeptInOrder(boolean offHeap) {
+        CompactHoldings compact = CompactHoldings.of(holdings, symbols, offHeap);
+
+        assertEquals(3, compact.size());
+        assertEquals(holdings, compact.toList());
+        assertEquals("GOOGL", compact.stockIdAt(1));
+        assertEquals(2000, compact.valueAt(1));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void testSumsAndLookups(boolean offHeap) {
+        CompactHoldings compact = CompactHoldings.of(holdings, symbols, offHeap);
+
+        assertEquals(3500, compact.totalValue());
+        assertEquals(3_500_000_000L, compact.totalValueMicros());
+        assertEquals(1500, compact.valueOf("AMZN"));
+        assertEquals(0, compact.valueOf("MSFT"));
+        assertTrue(compact.contains("GOOGL"));
+        assertFalse(compact.contains("googl"));
+        assertFalse(compact.contains("MSFT"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void testVisitorSeesEveryHolding(boolean offHeap) {
+        CompactHoldings compact = CompactHoldings.of(holdings, symbols, offHeap);
+        List<Holding> visited = new ArrayList<>();
+
+        compact.forEach((symbol, value) -> visited.add(new Holding(symbols.stockId(symbol), value)));
+
+        assertEquals(holdings, visited);
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void testEmptyHoldings(boolean offHeap) {
+        CompactHoldings compact = CompactHoldings.of(List.of(), symbols, offHeap);
+
+        assertEquals(0, compact.size());
+        assertEquals(0, compact.totalValue());
+        assertTrue(compact.toList().isEmpty());
+    }
+
+    @Test
+    public void testStockIdsAreInternedOnceAcrossPortfolios() {
+        CompactHoldings first = CompactHoldings.of(holdings, symbols, false);
+        CompactHoldings second = CompactHoldings.of(List.of(new Holding("GOOGL", 1), new Holding("MSFT", 2)), symbols, false);
+
+        assertEquals(3, symbols.size());
+        assertEquals(first.symbolAt(1), second.symbolAt(0));
+        assertEquals(StockSymbols.UNKNOWN, symbols.lookup("TSLA"));
+    }
+
+    @Test
+    public void testDictionaryGrowsPastItsInitialCapacity() {
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(i, symbols.intern("STK" + i));
+        }
+        assertEquals("STK4321", symbols.stockId(4321));
+    }
+}
@@ -0,0 +1,111 @@
+package org.example.portfolio.store;
+
+import org.example.portfolio.model.Cash;
+import org.example.portfolio.model.Holding;
+import org.example.portfolio.model.Portfolio;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SnapshotFileTest {
+
+    @TempDir
+    Path dir;
+
+    private final HoldingsStore writer = HoldingsStore.onHeap();
+
+    private PortfolioSnapshot snapshot() {
+        Map<String, CompactHoldings> holdings = new HashMap<>();
+        holdings.put("PORTFOLIO_A", writer.compact(Arrays.asList(new Holding("AMZN", 1000), new Holding("GOOGL", 2000))));
+        holdings.put("PORTFOLIO_B", writer.compact(List.of(new Holding("GOOGL", 500))));
+        Map<String, Cash> cash = new HashMap<>();
+        cash.put("PORTFOLIO_A", new Cash(300.0));
+        cash.put("PORTFOLIO_B", new Cash(null));
+        return new PortfolioSnapshot(1_700_000_000_000L,
+                Arrays.asList(new Portfolio("PORTFOLIO_A", false), new Portfolio("PORTFOLIO_B", true)), holdings, cash);
+    }
+
+    @Test
+    public void testSnapshotRoundTrip() throws IOException {
+        Path path = dir.resolve("snapshot.bin");
+        SnapshotFile.write(path, snapshot());
+
+        // stock ids are interned again on read, in a dictionary with other symbols already assigned
+        HoldingsStore reader = new HoldingsStore(true);
+        reader.getSymbols().intern("MSFT");
+        PortfolioSnapshot read = SnapshotFile.read(path, reader);
+
+        assertEquals(1_700_000_000_000L, read.getTakenAtMillis());
+        assertEquals(2, read.getPortfolios().size());
+        assertEquals("PORTFOLIO_B", read.getPortfolios().get(1).getName());
+        assertTrue(read.getPortfolios().get(1).isDisabled());
+        assertEquals(Arrays.asList(new Holding("AMZN", 1000), new Holding("GOOGL", 2000)),
+                read.getHoldings().get("PORTFOLIO_A").toList());
+        assertEquals(List.of(new Holding("GOOGL", 500)), read.getHoldings().get("PORTFOLIO_B").toList());
+        assertEquals(new Cash(300.0), read.getCash().get("PORTFOLIO_A"));
+        assertNull(read.getCash().get("PORTFOLIO_B").getValue());
+        assertFalse(Files.exists(dir.resolve("snapshot.bin.tmp")));
+    }
+
+    @Test
+    public void testUnknownPortfolioListIsKept() throws IOException {
+        Path path = dir.resolve("snapshot.bin");
+        SnapshotFile.write(path, new PortfolioSnapshot(0, null, Map.of(), Map.of("PORTFOLIO_A", new Cash(1.0))));
+
+        PortfolioSnapshot read = SnapshotFile.read(path, HoldingsStore.onHeap());
+
+        assertNull(read.getPortfolios());
+        assertEquals(new Cash(1.0), read.getCash().get("PORTFOLIO_A"));
+    }
+
+    @Test
+    public void testCorruptedSnapshotIsRejected() throws IOException {
+        Path path = dir.resolve("snapshot.bin");
+        SnapshotFile.write(path, snapshot());
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{42}), channel.size() - 1);
+        }
+
+        IOException e = assertThrows(IOException.class, () -> SnapshotFile.read(path, HoldingsStore.onHeap()));
+        assertTrue(e.getMessage().contains("checksum"));
+    }
+
+    @Test
+    public void testTruncatedSnapshotIsRejected() throws IOException {
+        Path path = dir.resolve("snapshot.bin");
+        SnapshotFile.write(path, snapshot());
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 4);
+        }
+
+        assertThrows(IOException.class, () -> SnapshotFile.read(path, HoldingsStore.onHeap()));
+    }
+
+    @Test
+    public void testOtherFormatVersionIsRejected() throws IOException {
+        Path path = dir.resolve("snapshot.bin");
+        SnapshotFile.write(path, snapshot());
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, SnapshotFile.VERSION + 1), Integer.BYTES);
+        }
+
+        IOException e = assertThrows(IOException.class, () -> SnapshotFile.read(path, HoldingsStore.onHeap()));
+        assertTrue(e.getMessage().contains("version"));
+    }
+}
@@ -0,0 +1,80 @@
+package org.example.portfolio.valuation;
+
+import org.example.portfolio.model.Cash;
+import org.example.portfolio.model.Holding;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ValuationTest {
+
+    @Test
+    public void testAmountsAreRoundedToMicroUnits() {
+        assertEquals(100_000, Valuation.toMicros(0.1));
+        assertEquals(1_234_568, Valuation.toMicros(1.234567891));
+        assertEquals(-2_500_000, Valuation.toMicros(-2.5));
+        assertEquals(0.3, Valuation.toUnits(Valuation.toMicros(0.1) + Valuation.toMicros(0.2)));
+        assertEquals(0, Valuation.cashMicros(new Cash(null)));
+        assertEquals(1_000_000_000, Valuation.cashMicros(new Cash(1000.0)));
+    }
+
+    @Test
+    public void testSumDoesNotDependOnTheOrderOfTheHoldings() {
+        List<Holding> holdings = holdings(10_000, 42);
+        long expected = Valuation.sumMicros(holdings);
+
+        Random random = new Random(7);
+        for (int i = 0; i < 10; i++) {
+            List<Holding> shuffled = new ArrayList<>(holdings);
+            Collections.shuffle(shuffled, random);
+            assertEquals(expected, Valuation.sumMicros(shuffled));
+            assertEquals(expected, Valuation.sumMicros(new LinkedList<>(shuffled)));
+        }
+    }
+
+    @Test
+    public void testChunkedSumIsTheSequentialSum() {
+        int size = Valuation.CHUNK_SIZE * 3 + 17;
+        double[] values = new double[size];
+        List<Holding> holdings = holdings(size, 3);
+        for (int i = 0; i < size; i++) {
+            values[i] = holdings.get(i).getValue();
+        }
+
+        long sequential = Valuation.sumMicros(values, 0, size);
+
+        assertEquals(sequential, Valuation.sumMicros(values));
+        assertEquals(sequential, Valuation.sumMicros(holdings));
+    }
+
+    @Test
+    public void testFraction() {
+        assertEquals(0.25, Valuation.fraction(Valuation.toMicros(100), Valuation.toMicros(300)));
+        assertEquals(1.0, Valuation.fraction(Valuation.toMicros(100), 0));
+        assertEquals(0.0, Valuation.fraction(0, Valuation.toMicros(300)));
+        assertEquals(0.0, Valuation.fraction(Valuation.toMicros(100), Valuation.toMicros(-100)));
+    }
+
+    @Test
+    public void testAmountsOutOfRangeAreRejected() {
+        assertThrows(ArithmeticException.class, () -> Valuation.toMicros(1e13));
+        assertThrows(ArithmeticException.class, () -> Valuation.toMicros(Double.NaN));
+        assertThrows(ArithmeticException.class, () -> Valuation.sumMicros(new double[]{9e12, 9e12}));
+    }
+
+    private static List<Holding> holdings(int count, long seed) {
+        Random random = new Random(seed);
+        List<Holding> holdings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            holdings.add(new Holding("STK" + i, random.nextInt(10_000_000) / 100.0 + 0.01 * random.nextInt(3)));
+        }
+        return holdings;
+    }
+}